@@ -8,6 +8,7 @@ import android.preference.PreferenceManager;
 import com.stardust.app.GlobalAppContext;
 import com.stardust.autojs.runtime.accessibility.AccessibilityConfig;
 
+import org.autojs.autojs.autojs.AutoJs;
 import org.autojs.autojs.autojs.key.GlobalKeyObserver;
 
 import java.io.File;
@@ -34,6 +35,8 @@ public class Pref {
                 AccessibilityConfig.setIsUnintendedGuardEnabled(p.getBoolean(getString(R.string.key_guard_mode), false));
             } else if ((key.equals(getString(R.string.key_use_volume_control_record)) || key.equals(getString(R.string.key_use_volume_control_running))) && p.getBoolean(key, false)) {
                 GlobalKeyObserver.init();
+            } else if (key.equals(getString(R.string.key_engine_pool))) {
+                AutoJs.getInstance().applyEnginePoolPreference();
             }
         }
     };
@@ -123,6 +126,10 @@ public class Pref {
         return def().getBoolean(getString(R.string.key_enable_observe_key), false);
     }
 
+    public static boolean isEnginePoolEnabled() {
+        return def().getBoolean(getString(R.string.key_engine_pool), false);
+    }
+
     public static boolean isStableModeEnabled() {
         return def().getBoolean(getString(R.string.key_stable_mode), false);
     }
@@ -40,6 +40,8 @@ import org.autojs.autojs.ui.settings.SettingsActivity;
 
 public class AutoJs extends com.stardust.autojs.AutoJs {
 
+    private static final int ENGINE_POOL_SIZE = 1;
+
     private static AutoJs instance;
 
     public static AutoJs getInstance() {
@@ -84,6 +86,14 @@ public class AutoJs extends com.stardust.autojs.AutoJs {
         intentFilter.addAction(LayoutBoundsFloatyWindow.class.getName());
         intentFilter.addAction(LayoutHierarchyFloatyWindow.class.getName());
         LocalBroadcastManager.getInstance(application).registerReceiver(mLayoutInspectBroadcastReceiver, intentFilter);
+        applyEnginePoolPreference();
+    }
+
+    /**
+     * 按设置开启或关闭预热引擎池，默认关闭
+     */
+    public void applyEnginePoolPreference() {
+        getScriptEngineService().setEnginePoolSize(Pref.isEnginePoolEnabled() ? ENGINE_POOL_SIZE : 0);
     }
 
     private void capture(LayoutInspectFloatyWindow window) {
@@ -110,14 +120,9 @@ public class AutoJs extends com.stardust.autojs.AutoJs {
 
     @Override
     protected GlobalConsole createGlobalConsole() {
-        return new GlobalConsole(getUiHandler()) {
-            @Override
-            public String println(int level, CharSequence charSequence) {
-                String log = super.println(level, charSequence);
-                DevPluginService.getInstance().log(log);
-                return log;
-            }
-        };
+        GlobalConsole console = new GlobalConsole(getUiHandler());
+        console.getLogPipeline().addSink(records -> DevPluginService.getInstance().log(records));
+        return console;
     }
 
     public void ensureAccessibilityServiceEnabled() {
@@ -13,6 +13,7 @@ import com.stardust.autojs.script.StringScriptSource;
 import org.autojs.autojs.Pref;
 import org.autojs.autojs.autojs.AutoJs;
 import org.autojs.autojs.model.script.PathChecker;
+import org.autojs.autojs.timing.TaskReceiver;
 
 import java.io.File;
 
@@ -44,6 +45,10 @@ public class ScriptIntents {
         config.setLoopTimes(loopTimes);
         config.setInterval(interval);
         config.setArgument("intent", intent);
+        if (intent.hasExtra(TaskReceiver.EXTRA_TASK_ID)) {
+            // 定时任务不需要立即响应，繁忙时让位于用户手动运行的脚本
+            config.setPriority(ExecutionConfig.PRIORITY_BACKGROUND);
+        }
         if (path == null && script != null) {
             source = new StringScriptSource(script);
         } else if (path != null && new PathChecker(context).checkAndToastError(path)) {
@@ -15,6 +15,7 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonPrimitive;
 import com.stardust.app.GlobalAppContext;
+import com.stardust.autojs.core.console.LogPipeline;
 import com.stardust.util.MapBuilder;
 
 import org.autojs.autojs.BuildConfig;
@@ -23,6 +24,7 @@ import org.autojs.autojs.Pref;
 import java.io.File;
 import java.net.SocketTimeoutException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
@@ -303,4 +305,21 @@ public class DevPluginService {
             return;
         writePair(mSocket, "log", new Pair<>("log", log));
     }
+
+    /**
+     * 由日志管道批量调用，一批日志合并为一条消息发送
+     */
+    @WorkerThread
+    public void log(List<LogPipeline.Record> records) {
+        if (!isConnected() || records.isEmpty())
+            return;
+        StringBuilder sb = new StringBuilder();
+        for (LogPipeline.Record record : records) {
+            if (sb.length() > 0) {
+                sb.append('\n');
+            }
+            sb.append(record.message);
+        }
+        writePair(mSocket, "log", new Pair<>("log", sb.toString()));
+    }
 }
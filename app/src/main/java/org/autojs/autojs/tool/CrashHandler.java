@@ -11,8 +11,10 @@ import android.os.Looper;
 import android.util.Log;
 
 import com.stardust.app.GlobalAppContext;
+import com.stardust.autojs.core.console.LogPipeline;
 
 import org.autojs.autojs.BuildConfig;
+import org.autojs.autojs.autojs.AutoJs;
 import org.mozilla.javascript.RhinoException;
 
 import com.stardust.view.accessibility.AccessibilityService;
@@ -47,6 +49,7 @@ public class CrashHandler extends CrashReport.CrashHandleCallback implements Unc
             }
             return;
         }
+        flushLogs();
         AccessibilityService service = AccessibilityService.Companion.getInstance();
         if (service != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
             Log.d(TAG, "disable service: " + service);
@@ -61,6 +64,19 @@ public class CrashHandler extends CrashReport.CrashHandleCallback implements Unc
         }
     }
 
+    private void flushLogs() {
+        // 进程即将退出，把还在队列中的日志写入文件
+        AutoJs autoJs = AutoJs.getInstance();
+        if (autoJs == null) {
+            return;
+        }
+        try {
+            autoJs.getGlobalConsole().getLogPipeline().flush(LogPipeline.EXIT_FLUSH_TIMEOUT_MILLIS);
+        } catch (Throwable e) {
+            Log.e(TAG, "failed to flush logs", e);
+        }
+    }
+
     @Override
     public synchronized Map<String, String> onCrashHandleStart(int crashType, String errorType,
                                                                String errorMessage, String errorStack) {
@@ -64,14 +64,85 @@ runtime.init();
     require("__globals__")(runtime, global);
     //初始化一般模块
     (function (scope) {
-        var modules = ['app', 'automator', 'console', 'dialogs', 'io', 'selector', 'shell', 'web', 'ui',
-            "images", "threads", "events", "engines", "RootAutomator", "http", "storages", "floaty",
-            "sensors", "media", "plugins", "continuation"];
+        var trace = scope.runtime.getStartupTrace();
+        var __require__ = require;
+        function loadModule(m) {
+            var start = java.lang.System.nanoTime();
+            var module = __require__('__' + m + '__')(scope.runtime, scope);
+            trace.record('js:' + m, start);
+            return module;
+        }
+        function defineValue(name, value) {
+            Object.defineProperty(scope, name, {
+                value: value,
+                writable: true,
+                enumerable: true,
+                configurable: true
+            });
+        }
+        //在第一次访问模块或它导出的全局函数时才加载模块
+        function defineLazyModule(m, globals) {
+            var loaded = false;
+            function load() {
+                if (loaded) {
+                    return;
+                }
+                loaded = true;
+                defineValue(m, loadModule(m));
+            }
+            [m].concat(globals).forEach(function (name) {
+                Object.defineProperty(scope, name, {
+                    get: function () {
+                        load();
+                        var descriptor = Object.getOwnPropertyDescriptor(scope, name);
+                        return descriptor && !descriptor.get ? descriptor.value : undefined;
+                    },
+                    //模块加载时对全局变量的赋值，或脚本在加载前覆盖了该变量
+                    set: function (value) {
+                        defineValue(name, value);
+                    },
+                    enumerable: true,
+                    configurable: true
+                });
+            });
+        }
+        var modules = ['app', 'automator', 'console', 'io', 'selector', 'shell', 'ui',
+            "threads", "events", "engines", "continuation"];
         var len = modules.length;
         for (var i = 0; i < len; i++) {
             var m = modules[i];
-            scope[m] = require('__' + m + '__')(scope.runtime, scope);
+            scope[m] = loadModule(m);
+        }
+        var lazyModules = {
+            dialogs: ['rawInput', 'alert', 'confirm', 'prompt'],
+            images: ['colors', 'requestScreenCapture', 'captureScreen', 'findImage', 'findImageInRegion', 'findColor',
+                'findColorInRegion', 'findColorEquals', 'findMultiColors'],
+            web: ['newInjectableWebClient', 'newInjectableWebView'],
+            RootAutomator: [],
+            http: [],
+            storages: [],
+            floaty: [],
+            sensors: [],
+            media: [],
+            plugins: []
+        };
+        for (var m in lazyModules) {
+            defineLazyModule(m, lazyModules[m]);
         }
+        ['yolo', 'mlkit'].forEach(function (name) {
+            Object.defineProperty(scope, name, {
+                get: function () {
+                    var module = scope.runtime[name];
+                    defineValue(name, module);
+                    return module;
+                },
+                set: function (value) {
+                    defineValue(name, value);
+                },
+                enumerable: true,
+                configurable: true
+            });
+        });
     })(global);
 
     importClass(android.view.KeyEvent);
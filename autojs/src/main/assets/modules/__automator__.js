@@ -112,7 +112,9 @@ module.exports = function(runtime, global){
     const flagsMap = {
         "findOnUiThread": 1,
         "useUsageStats": 2,
-        "useShell": 4
+        "useShell": 4,
+        "useTreeCache": 8,
+        "waitForEvents": 16
     };
 
     var auto = function(mode){
@@ -157,6 +159,28 @@ module.exports = function(runtime, global){
         runtime.accessibilityBridge.setFlags(flagsInt);
     }
 
+    auto.setWaitPollInterval = function(interval){
+        runtime.accessibilityBridge.setWaitPollInterval(interval);
+    }
+
+    auto.waitForAny = function(selectors, timeout){
+        if(!Array.isArray(selectors)){
+            throw new TypeError("selectors should be an array");
+        }
+        var result = com.stardust.autojs.core.accessibility.SelectorWaiter.waitForAny(selectors, timeout || -1);
+        if(result == null){
+            return null;
+        }
+        return {
+            index: result.getIndex(),
+            target: result.getObject()
+        };
+    }
+
+    auto.__defineGetter__("treeCache", function() {
+        return runtime.accessibilityBridge.getTreeCache();
+    });
+
     auto.__defineGetter__("service", function() {
         return runtime.accessibilityBridge.getService();
     });
@@ -71,6 +71,56 @@ module.exports = function (runtime, scope) {
         logConfigurator.setMaxBackupSize(option(config.maxBackupSize, 5));
         logConfigurator.setResetConfiguration(option(config.resetConfiguration, true));
         logConfigurator.configure();
+        configureLogPipeline(config);
+    }
+
+    var BACKPRESSURE = {
+        drop_oldest: com.stardust.autojs.core.console.LogPipeline.BACKPRESSURE_DROP_OLDEST,
+        block: com.stardust.autojs.core.console.LogPipeline.BACKPRESSURE_BLOCK,
+        sample: com.stardust.autojs.core.console.LogPipeline.BACKPRESSURE_SAMPLE
+    };
+
+    function configureLogPipeline(config) {
+        let pipeline = rtConsole.getGlobalLogPipeline();
+        if (!pipeline) {
+            return;
+        }
+        if (config.queueCapacity) {
+            pipeline.setCapacity(config.queueCapacity);
+        }
+        if (config.backpressure) {
+            let policy = BACKPRESSURE[config.backpressure.toLowerCase()];
+            if (policy === undefined) {
+                throw new Error("unknown backpressure: " + config.backpressure);
+            }
+            pipeline.setBackpressure(policy);
+        }
+        // 例如 {error: 20, debug: 100}，表示每个级别每秒最多写入的日志数
+        if (config.rateLimits) {
+            for (let level in config.rateLimits) {
+                pipeline.setRateLimit(android.util.Log[level.toUpperCase()], config.rateLimits[level]);
+            }
+        }
+    }
+
+    console.getGlobalLogStats = function () {
+        let pipeline = rtConsole.getGlobalLogPipeline();
+        if (!pipeline) {
+            return null;
+        }
+        return {
+            enqueued: pipeline.getEnqueuedCount(),
+            written: pipeline.getWrittenCount(),
+            queued: pipeline.getQueuedCount(),
+            dropped: pipeline.getDroppedCount(),
+            rateLimited: pipeline.getRateLimitedCount()
+        };
+    }
+
+    console.setLogStoreConfig = function (config) {
+        config = config || {};
+        rtConsole.setLogStoreConfig(option(config.maxEntries, 0), option(config.maxBytes, 0),
+            config.spillFile ? files.path(config.spillFile) : null, option(config.spillFileSize, 0));
     }
 
     function option(value, def) {
@@ -28,6 +28,17 @@ module.exports = function(__runtime__, scope){
     engines.stopAll = rtEngines.stopAll.bind(rtEngines);
     engines.stopAllAndToast = rtEngines.stopAllAndToast.bind(rtEngines);
 
+    engines.getScriptCacheStats = function(){
+        var stats = rtEngines.getScriptCacheStats();
+        return {
+            size: stats.size,
+            hitCount: stats.hitCount,
+            missCount: stats.missCount,
+            evictionCount: stats.evictionCount,
+            compileTimeMillis: stats.compileTimeMillis
+        };
+    }
+
     function fillConfig(c){
         var config = new com.stardust.autojs.execution.ExecutionConfig();
         c = c || {};
@@ -38,6 +49,18 @@ module.exports = function(__runtime__, scope){
         config.delay = c.delay || 0;
         config.interval = c.interval || 0;
         config.loopTimes = (c.loopTimes === undefined)? 1 : c.loopTimes;
+        if(c.compile){
+            //在已有的特性上加上compile，保留continuation等其他特性和uiMode
+            var scriptConfig = config.scriptConfig;
+            var features = new java.util.ArrayList(scriptConfig.features);
+            if(!features.contains("compile")){
+                features.add("compile");
+            }
+            config.scriptConfig = new com.stardust.autojs.project.ScriptConfig(features, scriptConfig.uiMode);
+        }
+        if(c.priority !== undefined){
+            config.priority = parsePriority(c.priority);
+        }
         if(c.arguments){
             var arguments = c.arguments;
             for(var key in arguments){
@@ -49,14 +72,68 @@ module.exports = function(__runtime__, scope){
         return config;
     }
 
+    function parsePriority(priority){
+        if(typeof(priority) == 'number'){
+            return priority;
+        }
+        switch(priority){
+            case 'interactive':
+                return com.stardust.autojs.execution.ExecutionConfig.PRIORITY_INTERACTIVE;
+            case 'background':
+                return com.stardust.autojs.execution.ExecutionConfig.PRIORITY_BACKGROUND;
+        }
+        throw new Error("unknown priority: " + priority);
+    }
+
+    engines.getSchedulerStats = function(){
+        var stats = rtEngines.getSchedulerStats();
+        return {
+            running: stats.running,
+            queued: stats.queued,
+            interactiveQueued: stats.interactiveQueued,
+            backgroundQueued: stats.backgroundQueued,
+            peakQueued: stats.peakQueued,
+            startedCount: stats.startedCount,
+            rejectedCount: stats.rejectedCount,
+            averageWaitMillis: stats.averageWaitMillis,
+            maxWaitMillis: stats.maxWaitMillis
+        };
+    }
+
+    //预热引擎池的大小，为0时不预热引擎
+    engines.setEnginePoolSize = function(size){
+        rtEngines.setEnginePoolSize(size);
+    }
+
+    engines.getEnginePoolSize = function(){
+        return rtEngines.getEnginePoolSize();
+    }
+
+    engines.getStartupStats = function(){
+        var stats = rtEngines.getStartupStats();
+        return {
+            count: stats.count,
+            warmCount: stats.warmCount,
+            coldCount: stats.coldCount,
+            p50: stats.p50,
+            p90: stats.p90,
+            p99: stats.p99,
+            max: stats.max
+        };
+    }
+
     var engine = engines.myEngine();
-    var execArgv = {};
-    var iterator = engine.getTag("execution.config").arguments.entrySet().iterator();
-    while(iterator.hasNext()){
-        var entry = iterator.next();
-        execArgv[entry.getKey()] = entry.getValue();
+    function initExecArgv(){
+        var execArgv = {};
+        var iterator = engine.getTag("execution.config").arguments.entrySet().iterator();
+        while(iterator.hasNext()){
+            var entry = iterator.next();
+            execArgv[entry.getKey()] = entry.getValue();
+        }
+        engine.execArgv = execArgv;
     }
-    engine.execArgv = execArgv;
+    //预热的引擎在交给执行后才有执行配置
+    engine.doOnAcquired(initExecArgv);
 
     return engines;
 }
\ No newline at end of file
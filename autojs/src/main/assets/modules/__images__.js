@@ -165,6 +165,49 @@ module.exports = function (runtime, scope) {
             return ResultAdapter.wait(javaImages.requestScreenCapture(orientation));
         }
 
+        images.captureScreenWith = function (options) {
+            options = options || {};
+            var timeout = options.timeout === undefined ? -1 : options.timeout;
+            return javaImages.captureScreen(timeout, options.latest === true);
+        }
+
+        images.captureScreenRegions = function (regions, options) {
+            options = options || {};
+            var timeout = options.timeout === undefined ? -1 : options.timeout;
+            var rects = regions.map(region => new org.opencv.core.Rect(region[0], region[1], region[2], region[3]));
+            var result = javaImages.captureScreenRegions(rects, timeout, options.latest === true);
+            return result == null ? null : toPointArray(result);
+        }
+
+        images.createDirtyRegionDetector = function (options) {
+            options = options || {};
+            var tileSize = options.tileSize || 64;
+            var region = null;
+            if (options.region) {
+                region = new org.opencv.core.Rect(options.region[0], options.region[1], options.region[2], options.region[3]);
+            }
+            var detector = new com.stardust.autojs.core.image.DirtyRegionDetector(tileSize, region);
+            return {
+                detect: function (detectOptions) {
+                    detectOptions = detectOptions || {};
+                    var timeout = detectOptions.timeout === undefined ? -1 : detectOptions.timeout;
+                    var tiles = javaImages.detectChangedTiles(detector, timeout, detectOptions.latest === true);
+                    return tiles == null ? null : util.java.toJsArray(tiles, false);
+                },
+                reset: function () {
+                    detector.reset();
+                }
+            };
+        }
+
+        images.getCaptureStats = function () {
+            return {
+                frameAge: javaImages.getCaptureFrameAge(),
+                frameCount: javaImages.getCaptureFrameCount(),
+                droppedFrameCount: javaImages.getCaptureDroppedFrameCount()
+            };
+        }
+
         images.save = function (img, path, format, quality) {
             format = format || "png";
             quality = quality == undefined ? 100 : quality;
@@ -381,10 +424,7 @@ module.exports = function (runtime, scope) {
             }
         }
 
-        images.findMultiColors = function (img, firstColor, paths, options) {
-            initIfNeeded();
-            options = options || {};
-            firstColor = parseColor(firstColor);
+        function buildColorPaths(paths) {
             var list = java.lang.reflect.Array.newInstance(java.lang.Integer.TYPE, paths.length * 3);
             for (var i = 0; i < paths.length; i++) {
                 var p = paths[i];
@@ -392,9 +432,52 @@ module.exports = function (runtime, scope) {
                 list[i * 3 + 1] = p[1];
                 list[i * 3 + 2] = parseColor(p[2]);
             }
+            return list;
+        }
+
+        images.findMultiColors = function (img, firstColor, paths, options) {
+            initIfNeeded();
+            options = options || {};
+            if (options.all) {
+                return images.findAllMultiColors(img, firstColor, paths, options);
+            }
+            firstColor = parseColor(firstColor);
             var region = options.region ? buildRegion(options.region, img) : null;
             var threshold = options.threshold === undefined ? defaultColorThreshold : options.threshold;
-            return colorFinder.findMultiColors(img, firstColor, threshold, region, list);
+            return colorFinder.findMultiColors(img, firstColor, threshold, region, buildColorPaths(paths));
+        }
+
+        images.findAllMultiColors = function (img, firstColor, paths, options) {
+            initIfNeeded();
+            options = options || {};
+            firstColor = parseColor(firstColor);
+            var region = options.region ? buildRegion(options.region, img) : null;
+            var threshold = options.threshold === undefined ? defaultColorThreshold : options.threshold;
+            var max = options.max === undefined ? 100 : options.max;
+            var points = colorFinder.findAllMultiColors(img, firstColor, threshold, region, buildColorPaths(paths), max);
+            var result = [];
+            for (var i = 0; i < points.length; i++) {
+                result.push(points[i]);
+            }
+            return result;
+        }
+
+        // options.scale为[最小比例, 最大比例]或单个比例时进行多尺度匹配，options.angle为最大旋转角度
+        function buildScaleOptions(options) {
+            if (options.scale === undefined && !options.angle) {
+                return null;
+            }
+            var minScale = 1, maxScale = 1;
+            if (Array.isArray(options.scale)) {
+                minScale = options.scale[0];
+                maxScale = options.scale[1];
+            } else if (typeof (options.scale) == 'number') {
+                minScale = maxScale = options.scale;
+            }
+            var scaleStep = options.scaleStep || 0.1;
+            var angle = options.angle || 0;
+            var angleStep = options.angleStep || 2;
+            return new com.stardust.autojs.core.image.MultiScaleTemplateMatching.Options(minScale, maxScale, scaleStep, angle, angleStep);
         }
 
         images.findImage = function (img, template, options) {
@@ -406,11 +489,8 @@ module.exports = function (runtime, scope) {
                 maxLevel = options.level;
             }
             var weakThreshold = options.weakThreshold || 0.6;
-            if (options.region) {
-                return javaImages.findImage(img, template, weakThreshold, threshold, buildRegion(options.region, img), maxLevel);
-            } else {
-                return javaImages.findImage(img, template, weakThreshold, threshold, null, maxLevel);
-            }
+            var region = options.region ? buildRegion(options.region, img) : null;
+            return javaImages.findImage(img, template, weakThreshold, threshold, region, maxLevel, buildScaleOptions(options));
         }
 
         images.matchTemplate = function (img, template, options) {
@@ -423,15 +503,34 @@ module.exports = function (runtime, scope) {
             }
             var max = options.max || 5;
             var weakThreshold = options.weakThreshold || 0.6;
-            var result;
-            if (options.region) {
-                result = javaImages.matchTemplate(img, template, weakThreshold, threshold, buildRegion(options.region, img), maxLevel, max);
-            } else {
-                result = javaImages.matchTemplate(img, template, weakThreshold, threshold, null, maxLevel, max);
-            }
+            var region = options.region ? buildRegion(options.region, img) : null;
+            var result = javaImages.matchTemplate(img, template, weakThreshold, threshold, region, maxLevel, max, buildScaleOptions(options));
             return new MatchingResult(result);
         }
 
+        images.matchTemplates = function (img, templates, options) {
+            initIfNeeded();
+            options = options || {};
+            var threshold = options.threshold || 0.9;
+            var maxLevel = -1;
+            if (typeof (options.level) == 'number') {
+                maxLevel = options.level;
+            }
+            var max = options.max || 5;
+            var weakThreshold = options.weakThreshold || 0.6;
+            var region = options.region ? buildRegion(options.region, img) : null;
+            var list = java.lang.reflect.Array.newInstance(com.stardust.autojs.core.image.ImageWrapper, templates.length);
+            for (var i = 0; i < templates.length; i++) {
+                list[i] = templates[i];
+            }
+            var results = javaImages.matchTemplates(img, list, weakThreshold, threshold, region, maxLevel, max, buildScaleOptions(options));
+            var matchingResults = [];
+            for (var i = 0; i < results.size(); i++) {
+                matchingResults.push(new MatchingResult(results.get(i)));
+            }
+            return matchingResults;
+        }
+
 
 
         images.findImageInRegion = function (img, template, x, y, width, height, threshold) {
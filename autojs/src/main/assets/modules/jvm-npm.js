@@ -106,15 +106,36 @@ module = (typeof module === 'undefined') ? {} : module;
     }
   }
 
+  var ModuleResolutionIndex = com.stardust.autojs.engine.module.ModuleResolutionIndex.INSTANCE;
+
   Require.resolve = function (id, parent) {
     var roots = findRoots(parent);
+    // 进程内共享的解析索引，文件和目录未修改时不再逐个尝试候选路径
+    var indexed = ModuleResolutionIndex.resolvePath(String(roots[0]), id);
+    if (indexed !== null) {
+      return String(indexed);
+    }
+    var probed = [];
     for (var i = 0; i < roots.length; ++i) {
       var root = roots[i];
-      var result = resolveCoreModule(id, root) ||
-        resolveAsFile(id, root, '.js') ||
+      var result = resolveCoreModule(id, root);
+      if (result) {
+        return result;
+      }
+      result = resolveAsFile(id, root, '.js') ||
         resolveAsFile(id, root, '.json') ||
-        resolveAsDirectory(id, root) ||
-        resolveAsNodeModule(id, root);
+        resolveAsDirectory(id, root);
+      probeDirs(id, root, probed);
+      if (result) {
+        // 只记录相对或绝对路径的id，它们的候选文件只在上面记录的目录中，
+        // node_modules的查找会逐级向上经过很多目录，不适合用目录的修改时间判断是否失效；
+        // package.json的main修改后目录的修改时间不变，因此也不记录
+        if (isPathId(id) && !new File(probed[probed.length - 1], 'package.json').exists()) {
+          ModuleResolutionIndex.putPath(String(roots[0]), id, String(result), probed);
+        }
+        return result;
+      }
+      result = resolveAsNodeModule(id, root);
       if (result) {
         return result;
       }
@@ -122,7 +143,31 @@ module = (typeof module === 'undefined') ? {} : module;
     return false;
   };
 
-  Require.root = files.cwd();//System.getProperty('user.dir');
+  function isPathId(id) {
+    return id[0] === '/' || id.indexOf('./') === 0 || id.indexOf('../') === 0;
+  }
+
+  // id.js、id.json、id目录所在的目录，以及id目录本身(package.json、index.js)
+  function probeDirs(id, root, probed) {
+    var base = new File(id[0] === '/' ? id : [root, id].join('/'));
+    var parent = base.getParent();
+    if (parent !== null) {
+      probed.push(String(parent));
+    }
+    probed.push(String(base.getPath()));
+  }
+
+  // 预热的引擎在交给执行后才确定工作目录，因此未设置时每次读取都取当前的工作目录
+  var root;
+  Object.defineProperty(Require, 'root', {
+    get: function () {
+      return root === undefined ? files.cwd() : root;
+    },
+    set: function (value) {
+      root = value;
+    },
+    enumerable: true
+  });
   Require.NODE_PATH = undefined;
 
   function findRoots(parent) {
@@ -12,6 +12,8 @@ import androidx.annotation.RequiresApi;
 import com.stardust.app.OnActivityResultDelegate;
 import com.stardust.app.SimpleActivityLifecycleCallbacks;
 import com.stardust.autojs.core.accessibility.AccessibilityBridge;
+import com.stardust.autojs.core.accessibility.UiChangeSignal;
+import com.stardust.autojs.core.accessibility.UiTreeCache;
 import com.stardust.autojs.core.console.GlobalConsole;
 import com.stardust.autojs.core.console.ConsoleImpl;
 import com.stardust.autojs.core.image.capture.ScreenCaptureRequestActivity;
@@ -48,6 +50,8 @@ public abstract class AutoJs {
 
     private final AccessibilityActionRecorder mAccessibilityActionRecorder = new AccessibilityActionRecorder();
     private final AccessibilityNotificationObserver mNotificationObserver;
+    private final UiTreeCache mUiTreeCache = new UiTreeCache();
+    private final UiChangeSignal mUiChangeSignal = new UiChangeSignal();
     private ScriptEngineManager mScriptEngineManager;
     private final LayoutInspector mLayoutInspector;
     private final Context mContext;
@@ -166,6 +170,8 @@ public abstract class AutoJs {
 
 
     private void addAccessibilityServiceDelegates() {
+        AccessibilityService.Companion.addDelegate(50, mUiTreeCache);
+        AccessibilityService.Companion.addDelegate(60, mUiChangeSignal);
         AccessibilityService.Companion.addDelegate(100, mActivityInfoProvider);
         AccessibilityService.Companion.addDelegate(200, mNotificationObserver);
         AccessibilityService.Companion.addDelegate(300, mAccessibilityActionRecorder);
@@ -187,6 +193,10 @@ public abstract class AutoJs {
         return mLayoutInspector;
     }
 
+    public UiTreeCache getUiTreeCache() {
+        return mUiTreeCache;
+    }
+
     public GlobalConsole getGlobalConsole() {
         return mGlobalConsole;
     }
@@ -238,6 +248,16 @@ public abstract class AutoJs {
             return mNotificationObserver;
         }
 
+        @Override
+        public UiTreeCache getTreeCache() {
+            return mUiTreeCache;
+        }
+
+        @Override
+        public UiChangeSignal getChangeSignal() {
+            return mUiChangeSignal;
+        }
+
     }
 
     private class ScreenCaptureRequesterImpl extends ScreenCaptureRequester.AbstractScreenCaptureRequester {
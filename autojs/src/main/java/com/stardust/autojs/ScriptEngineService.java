@@ -1,22 +1,27 @@
 package com.stardust.autojs;
 
 import android.content.Context;
+import android.os.SystemClock;
 import androidx.annotation.Nullable;
 
 import com.stardust.autojs.engine.JavaScriptEngine;
 import com.stardust.autojs.engine.ScriptEngine;
 import com.stardust.autojs.engine.ScriptEngineManager;
+import com.stardust.autojs.engine.ScriptEnginePool;
+import com.stardust.autojs.engine.StartupLatencyRecorder;
 import com.stardust.autojs.execution.ExecutionConfig;
 import com.stardust.autojs.execution.LoopedBasedJavaScriptExecution;
 import com.stardust.autojs.execution.RunnableScriptExecution;
 import com.stardust.autojs.execution.ScriptExecuteActivity;
 import com.stardust.autojs.execution.ScriptExecution;
+import com.stardust.autojs.execution.ScriptExecutionScheduler;
 import com.stardust.autojs.execution.ScriptExecutionListener;
 import com.stardust.autojs.execution.ScriptExecutionObserver;
 import com.stardust.autojs.execution.ScriptExecutionTask;
 import com.stardust.autojs.execution.SimpleScriptExecutionListener;
 import com.stardust.autojs.runtime.ScriptRuntime;
 import com.stardust.autojs.runtime.api.Console;
+import com.stardust.autojs.runtime.exception.ScriptInterruptedException;
 import com.stardust.autojs.script.JavaScriptSource;
 import com.stardust.autojs.script.ScriptSource;
 import com.stardust.lang.ThreadCompat;
@@ -28,7 +33,9 @@ import org.greenrobot.eventbus.Subscribe;
 import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
 
 import static com.stardust.autojs.runtime.exception.ScriptInterruptedException.causedByInterrupted;
 
@@ -102,6 +109,9 @@ public class ScriptEngineService {
     };
     private ScriptExecutionObserver mScriptExecutionObserver = new ScriptExecutionObserver();
     private LinkedHashMap<Integer, ScriptExecution> mScriptExecutions = new LinkedHashMap<>();
+    private final StartupLatencyRecorder mStartupLatencyRecorder = new StartupLatencyRecorder();
+    private volatile ScriptEnginePool mEnginePool;
+    private final ScriptExecutionScheduler mScheduler = new ScriptExecutionScheduler(this::launch);
 
     ScriptEngineService(ScriptEngineServiceBuilder builder) {
         mUiHandler = builder.mUiHandler;
@@ -110,6 +120,15 @@ public class ScriptEngineService {
         mGlobalConsole = builder.mGlobalConsole;
         mScriptEngineManager.setEngineLifecycleCallback(mEngineLifecycleObserver);
         mScriptExecutionObserver.registerScriptExecutionListener(GLOBAL_LISTENER);
+        mScriptExecutionObserver.registerScriptExecutionListener(new SimpleScriptExecutionListener() {
+            @Override
+            public void onStart(ScriptExecution execution) {
+                if (execution instanceof RunnableScriptExecution) {
+                    RunnableScriptExecution r = (RunnableScriptExecution) execution;
+                    mStartupLatencyRecorder.record(SystemClock.uptimeMillis() - r.getCreateTime(), r.isWarmStart());
+                }
+            }
+        });
         EVENT_BUS.register(this);
         mScriptEngineManager.putGlobal("context", mUiHandler.getContext());
         ScriptRuntime.setApplicationContext(builder.mUiHandler.getContext().getApplicationContext());
@@ -137,8 +156,19 @@ public class ScriptEngineService {
 
     public ScriptExecution execute(ScriptExecutionTask task) {
         ScriptExecution execution = executeInternal(task);
-        mScriptExecutions.put(execution.getId(), execution);
-        return execution;
+        if (!(execution instanceof RunnableScriptExecution)) {
+            mScriptExecutions.put(execution.getId(), execution);
+            return execution;
+        }
+        RunnableScriptExecution r = (RunnableScriptExecution) execution;
+        mScriptExecutions.put(r.getId(), r);
+        try {
+            mScheduler.submit(r);
+        } catch (RejectedExecutionException e) {
+            mScriptExecutions.remove(r.getId());
+            r.getListener().onException(r, e);
+        }
+        return r;
     }
 
     private ScriptExecution executeInternal(ScriptExecutionTask task) {
@@ -160,10 +190,56 @@ public class ScriptEngineService {
         } else {
             r = new RunnableScriptExecution(mScriptEngineManager, task);
         }
-        new ThreadCompat(r).start();
         return r;
     }
 
+    private void launch(RunnableScriptExecution r) {
+        ScriptEnginePool pool = mEnginePool;
+        if (r.getSource() instanceof JavaScriptSource && pool != null && pool.offer(r)) {
+            return;
+        }
+        new ThreadCompat(r).start();
+    }
+
+    /**
+     * 脚本执行的调度器，可以设置最大并发数、队列容量和同一脚本的并发数限制
+     */
+    public ScriptExecutionScheduler getScheduler() {
+        return mScheduler;
+    }
+
+    public ScriptExecutionScheduler.Stats getSchedulerStats() {
+        return mScheduler.getStats();
+    }
+
+    /**
+     * 设置预热引擎池的大小，为0时不使用引擎池。
+     * 应在引擎的创建方法可以正常使用(例如AutoJs完成初始化)之后调用。
+     */
+    public synchronized void setEnginePoolSize(int size) {
+        if (size <= 0) {
+            if (mEnginePool != null) {
+                mEnginePool.shutdown();
+                mEnginePool = null;
+            }
+            return;
+        }
+        if (mEnginePool == null) {
+            mEnginePool = new ScriptEnginePool(mScriptEngineManager, JavaScriptSource.ENGINE, size);
+        } else {
+            mEnginePool.setSize(size);
+        }
+    }
+
+    public int getEnginePoolSize() {
+        ScriptEnginePool pool = mEnginePool;
+        return pool == null ? 0 : pool.getSize();
+    }
+
+    public StartupLatencyRecorder.Stats getStartupLatencyStats() {
+        return mStartupLatencyRecorder.getStats();
+    }
+
     public ScriptExecution execute(ScriptSource source, ScriptExecutionListener listener, ExecutionConfig config) {
         return execute(new ScriptExecutionTask(source, listener, config));
     }
@@ -182,7 +258,13 @@ public class ScriptEngineService {
     }
 
     public int stopAll() {
-        return mScriptEngineManager.stopAll();
+        List<RunnableScriptExecution> pending = mScheduler.cancelPending();
+        for (RunnableScriptExecution r : pending) {
+            mScriptExecutions.remove(r.getId());
+            // 与运行中被停止的脚本一样以中断结束，监听器不会把它当作错误
+            r.getListener().onException(r, new ScriptInterruptedException());
+        }
+        return pending.size() + mScriptEngineManager.stopAll();
     }
 
 
@@ -40,11 +40,17 @@ public abstract class AccessibilityBridge {
     public static final int FLAG_FIND_ON_UI_THREAD = 1;
     public static final int FLAG_USE_USAGE_STATS = 2;
     public static final int FLAG_USE_SHELL = 4;
+    public static final int FLAG_USE_TREE_CACHE = 8;
+    public static final int FLAG_WAIT_FOR_EVENTS = 16;
+
+    public static final long DEFAULT_POLL_INTERVAL = 50;
+    public static final long DEFAULT_EVENT_FALLBACK_INTERVAL = 500;
 
     private int mMode = MODE_NORMAL;
     private int mFlags = 0;
     private final AccessibilityConfig mConfig;
     private WindowFilter mWindowFilter;
+    private long mWaitPollInterval = -1;
     private final UiHandler mUiHandler;
     private final Context mContext;
 
@@ -146,6 +152,53 @@ public abstract class AccessibilityBridge {
     @NonNull
     public abstract AccessibilityNotificationObserver getNotificationObserver();
 
+    @NonNull
+    public abstract UiTreeCache getTreeCache();
+
+    @NonNull
+    public abstract UiChangeSignal getChangeSignal();
+
+    /**
+     * 设置等待控件出现时的轮询间隔。开启{@link #FLAG_WAIT_FOR_EVENTS}时作为没有界面事件时的兜底轮询间隔。
+     * 小于等于0时使用默认值。
+     */
+    public void setWaitPollInterval(long interval) {
+        mWaitPollInterval = interval;
+    }
+
+    public long getWaitPollInterval() {
+        if (mWaitPollInterval > 0) {
+            return mWaitPollInterval;
+        }
+        return (mFlags & FLAG_WAIT_FOR_EVENTS) != 0 ? DEFAULT_EVENT_FALLBACK_INTERVAL : DEFAULT_POLL_INTERVAL;
+    }
+
+    /**
+     * 返回当前的界面变化序号，应在查找前获取，并传给{@link #waitForUiChange(long, long)}。
+     */
+    public long getUiChangeSequence() {
+        return getChangeSignal().getSequence();
+    }
+
+    /**
+     * 等待下一次查找的时机。开启{@link #FLAG_WAIT_FOR_EVENTS}时，在界面变化事件到达或轮询间隔到达时返回，
+     * 否则休眠一个轮询间隔。
+     *
+     * @param sequence 查找前获取的界面变化序号
+     * @param maxWait  最长等待时间，小于0表示不限制
+     */
+    public void waitForUiChange(long sequence, long maxWait) throws InterruptedException {
+        long interval = getWaitPollInterval();
+        if (maxWait >= 0) {
+            interval = Math.min(interval, maxWait);
+        }
+        if ((mFlags & FLAG_WAIT_FOR_EVENTS) != 0) {
+            getChangeSignal().await(sequence, interval);
+        } else {
+            Thread.sleep(interval);
+        }
+    }
+
     public AccessibilityConfig getConfig() {
         return mConfig;
     }
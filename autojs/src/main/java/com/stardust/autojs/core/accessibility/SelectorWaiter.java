@@ -0,0 +1,92 @@
+package com.stardust.autojs.core.accessibility;
+
+import android.os.SystemClock;
+
+import androidx.annotation.Nullable;
+
+import com.stardust.autojs.runtime.exception.ScriptInterruptedException;
+import com.stardust.automator.UiObject;
+import com.stardust.automator.UiObjectCollection;
+
+/**
+ * 等待一个或多个选择器找到控件。
+ * <p>
+ * 每次查找前记录界面变化序号，查找失败后通过{@link AccessibilityBridge#waitForUiChange(long, long)}
+ * 等待界面变化或轮询间隔到达再重新查找。
+ */
+public class SelectorWaiter {
+
+    public static class Result {
+
+        private final int mIndex;
+        private final UiObjectCollection mCollection;
+
+        Result(int index, UiObjectCollection collection) {
+            mIndex = index;
+            mCollection = collection;
+        }
+
+        public int getIndex() {
+            return mIndex;
+        }
+
+        public UiObjectCollection getCollection() {
+            return mCollection;
+        }
+
+        public UiObject getObject() {
+            return mCollection.get(0);
+        }
+    }
+
+    /**
+     * 等待任意一个选择器找到控件，返回最先找到的选择器的结果。
+     *
+     * @param max     每个选择器最多查找的控件数量
+     * @param timeout 超时时间，小于等于0表示一直等待
+     * @return 超时返回null
+     */
+    @Nullable
+    public static Result waitForAny(UiSelector[] selectors, int max, long timeout) {
+        if (selectors.length == 0) {
+            throw new IllegalArgumentException("selectors is empty");
+        }
+        AccessibilityBridge bridge = selectors[0].getAccessibilityBridge();
+        long start = SystemClock.uptimeMillis();
+        while (true) {
+            long sequence = bridge.getUiChangeSequence();
+            for (int i = 0; i < selectors.length; i++) {
+                UiObjectCollection collection = selectors[i].find(max);
+                if (collection.nonEmpty()) {
+                    return new Result(i, collection);
+                }
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                throw new ScriptInterruptedException();
+            }
+            long maxWait = -1;
+            if (timeout > 0) {
+                maxWait = timeout - (SystemClock.uptimeMillis() - start);
+                if (maxWait < 0) {
+                    return null;
+                }
+            }
+            try {
+                bridge.waitForUiChange(sequence, maxWait);
+            } catch (InterruptedException e) {
+                throw new ScriptInterruptedException();
+            }
+        }
+    }
+
+    @Nullable
+    public static Result waitForAny(UiSelector[] selectors, long timeout) {
+        return waitForAny(selectors, 1, timeout);
+    }
+
+    @Nullable
+    static UiObjectCollection waitFor(UiSelector selector, int max, long timeout) {
+        Result result = waitForAny(new UiSelector[]{selector}, max, timeout);
+        return result == null ? null : result.getCollection();
+    }
+}
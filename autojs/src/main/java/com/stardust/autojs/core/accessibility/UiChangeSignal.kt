@@ -0,0 +1,74 @@
+package com.stardust.autojs.core.accessibility
+
+import android.accessibilityservice.AccessibilityService
+import android.view.accessibility.AccessibilityEvent
+import com.stardust.view.accessibility.AccessibilityDelegate
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.locks.ReentrantLock
+
+/**
+ * 界面变化信号。每收到一次窗口内容或窗口状态变化事件，序号加一并唤醒等待中的线程，
+ * 使[UiSelector]的等待操作只在界面可能变化时才重新查找。
+ */
+class UiChangeSignal : AccessibilityDelegate {
+
+    private val mSequence = AtomicLong()
+    private val mWaiters = AtomicInteger()
+    private val mLock = ReentrantLock()
+    private val mChanged = mLock.newCondition()
+
+    val sequence: Long
+        get() = mSequence.get()
+
+    override val eventTypes: Set<Int>?
+        get() = EVENT_TYPES
+
+    override fun onAccessibilityEvent(service: AccessibilityService, event: AccessibilityEvent): Boolean {
+        mSequence.incrementAndGet()
+        if (mWaiters.get() > 0) {
+            mLock.lock()
+            try {
+                mChanged.signalAll()
+            } finally {
+                mLock.unlock()
+            }
+        }
+        return false
+    }
+
+    /**
+     * 等待直到序号不再等于sequence或超时。
+     *
+     * @return 序号是否已变化
+     */
+    @Throws(InterruptedException::class)
+    fun await(sequence: Long, timeout: Long): Boolean {
+        if (mSequence.get() != sequence) {
+            return true
+        }
+        mWaiters.incrementAndGet()
+        mLock.lock()
+        try {
+            var nanos = TimeUnit.MILLISECONDS.toNanos(timeout)
+            while (mSequence.get() == sequence) {
+                if (nanos <= 0) {
+                    return false
+                }
+                nanos = mChanged.awaitNanos(nanos)
+            }
+            return true
+        } finally {
+            mLock.unlock()
+            mWaiters.decrementAndGet()
+        }
+    }
+
+    companion object {
+
+        private val EVENT_TYPES = setOf(AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED,
+                AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED,
+                AccessibilityEvent.TYPE_WINDOWS_CHANGED)
+    }
+}
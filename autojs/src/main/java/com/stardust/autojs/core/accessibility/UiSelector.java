@@ -1,7 +1,6 @@
 package com.stardust.autojs.core.accessibility;
 
 import android.os.Looper;
-import android.os.SystemClock;
 
 import androidx.annotation.NonNull;
 
@@ -10,7 +9,6 @@ import android.view.accessibility.AccessibilityNodeInfo;
 
 import com.stardust.autojs.BuildConfig;
 import com.stardust.autojs.annotation.ScriptInterface;
-import com.stardust.autojs.runtime.exception.ScriptInterruptedException;
 import com.stardust.automator.ActionArgument;
 import com.stardust.automator.UiGlobalSelector;
 import com.stardust.automator.UiObject;
@@ -112,7 +110,7 @@ public class UiSelector extends UiGlobalSelector {
                 Log.d(TAG, "package in white list, return null");
                 return UiObjectCollection.Companion.getEMPTY();
             }
-            result.addAll(findAndReturnList(UiObject.Companion.createRoot(root, mAllocator), max - result.size()));
+            result.addAll(findAndReturnList(createRoot(root), max - result.size()));
             if (result.size() >= max) {
                 break;
             }
@@ -120,6 +118,13 @@ public class UiSelector extends UiGlobalSelector {
         return UiObjectCollection.Companion.of(result);
     }
 
+    private UiObject createRoot(AccessibilityNodeInfo root) {
+        if ((mAccessibilityBridge.getFlags() & AccessibilityBridge.FLAG_USE_TREE_CACHE) != 0) {
+            return mAccessibilityBridge.getTreeCache().root(root);
+        }
+        return UiObject.Companion.createRoot(root, mAllocator);
+    }
+
     @Override
     public UiGlobalSelector textMatches(@NotNull String regex) {
         return super.textMatches(convertRegex(regex));
@@ -154,6 +159,10 @@ public class UiSelector extends UiGlobalSelector {
         return super.descMatches(convertRegex(regex));
     }
 
+    AccessibilityBridge getAccessibilityBridge() {
+        return mAccessibilityBridge;
+    }
+
     private void ensureAccessibilityServiceEnabled() {
         mAccessibilityBridge.ensureServiceEnabled();
     }
@@ -162,19 +171,7 @@ public class UiSelector extends UiGlobalSelector {
     @NonNull
     public UiObjectCollection untilFind() {
         ensureNonUiThread();
-        UiObjectCollection uiObjectCollection = find();
-        while (uiObjectCollection.empty()) {
-            if (Thread.currentThread().isInterrupted()) {
-                throw new ScriptInterruptedException();
-            }
-            try {
-                Thread.sleep(50);
-            } catch (InterruptedException e) {
-                throw new ScriptInterruptedException();
-            }
-            uiObjectCollection = find();
-        }
-        return uiObjectCollection;
+        return SelectorWaiter.waitFor(this, Integer.MAX_VALUE, -1);
     }
 
     private void ensureNonUiThread() {
@@ -186,21 +183,9 @@ public class UiSelector extends UiGlobalSelector {
 
     @ScriptInterface
     public UiObject findOne(long timeout) {
-        UiObjectCollection uiObjectCollection = find(1);
-        long start = SystemClock.uptimeMillis();
-        while (uiObjectCollection.empty()) {
-            if (Thread.currentThread().isInterrupted()) {
-                throw new ScriptInterruptedException();
-            }
-            if (timeout > 0 && SystemClock.uptimeMillis() - start > timeout) {
-                return null;
-            }
-            try {
-                Thread.sleep(50);
-            } catch (InterruptedException e) {
-                throw new ScriptInterruptedException();
-            }
-            uiObjectCollection = find(1);
+        UiObjectCollection uiObjectCollection = SelectorWaiter.waitFor(this, 1, timeout);
+        if (uiObjectCollection == null) {
+            return null;
         }
         return uiObjectCollection.get(0);
     }
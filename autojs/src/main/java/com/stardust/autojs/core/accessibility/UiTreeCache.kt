@@ -0,0 +1,247 @@
+package com.stardust.autojs.core.accessibility
+
+import android.accessibilityservice.AccessibilityService
+import android.os.Build
+import android.os.SystemClock
+import android.view.accessibility.AccessibilityEvent
+import android.view.accessibility.AccessibilityNodeInfo
+import androidx.core.view.accessibility.AccessibilityNodeInfoCompat
+import com.stardust.automator.UiObject
+import com.stardust.view.accessibility.AccessibilityDelegate
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * 按窗口缓存的控件树快照。
+ *
+ * 查找控件时从快照中读取子控件，只有快照中不存在的节点才会通过IPC获取。
+ * 收到[AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED]时只让事件来源对应的子树失效，
+ * 收到[AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED]时丢弃整个窗口的快照。
+ */
+class UiTreeCache : AccessibilityDelegate {
+
+    private val mSnapshots = object : LinkedHashMap<Int, Snapshot>(MAX_WINDOWS, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Int, Snapshot>?): Boolean {
+            return size > MAX_WINDOWS
+        }
+    }
+    private val mHits = AtomicLong()
+    private val mMisses = AtomicLong()
+    private val mInvalidations = AtomicLong()
+
+    /**
+     * 快照的最长存活时间(毫秒)，用于防止遗漏事件导致快照长期过期。小于等于0表示不限制。
+     */
+    @Volatile
+    var maxAge: Long = 0
+
+    val hitCount: Long
+        get() = mHits.get()
+
+    val missCount: Long
+        get() = mMisses.get()
+
+    val invalidationCount: Long
+        get() = mInvalidations.get()
+
+    override val eventTypes: Set<Int>?
+        get() = EVENT_TYPES
+
+    override fun onAccessibilityEvent(service: AccessibilityService, event: AccessibilityEvent): Boolean {
+        when (event.eventType) {
+            AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED -> invalidateWindow(event.windowId)
+            AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED -> {
+                val snapshot = synchronized(mSnapshots) { mSnapshots[event.windowId] } ?: return false
+                val source = event.source
+                if (source == null || !snapshot.invalidate(source)) {
+                    invalidateWindow(event.windowId)
+                }
+            }
+        }
+        return false
+    }
+
+    /**
+     * 返回以root为根的快照节点。如果root所在窗口已有有效快照则复用，否则新建快照。
+     */
+    fun root(root: AccessibilityNodeInfo): UiObject {
+        val windowId = root.windowId
+        synchronized(mSnapshots) {
+            val snapshot = mSnapshots[windowId]
+            if (snapshot != null && snapshot.root.info == root && !snapshot.isExpired(maxAge)) {
+                mHits.incrementAndGet()
+                return CachedUiObject(snapshot.root.fresh(), 0, -1)
+            }
+            mMisses.incrementAndGet()
+            val newSnapshot = Snapshot(root)
+            mSnapshots[windowId] = newSnapshot
+            return CachedUiObject(newSnapshot.root, 0, -1)
+        }
+    }
+
+    fun invalidateWindow(windowId: Int) {
+        val removed = synchronized(mSnapshots) { mSnapshots.remove(windowId) }
+        if (removed != null) {
+            mInvalidations.incrementAndGet()
+        }
+    }
+
+    fun invalidateAll() {
+        synchronized(mSnapshots) {
+            mInvalidations.addAndGet(mSnapshots.size.toLong())
+            mSnapshots.clear()
+        }
+    }
+
+    fun resetStats() {
+        mHits.set(0)
+        mMisses.set(0)
+        mInvalidations.set(0)
+    }
+
+    override fun toString(): String {
+        return "UiTreeCache{hits=$hitCount, misses=$missCount, invalidations=$invalidationCount}"
+    }
+
+    private inner class Snapshot(rootInfo: AccessibilityNodeInfo) {
+
+        val root = Node(rootInfo, null, this)
+        val nodes = ConcurrentHashMap<AccessibilityNodeInfo, Node>()
+        private val mCreatedAt = SystemClock.uptimeMillis()
+
+        init {
+            nodes[rootInfo] = root
+        }
+
+        fun isExpired(maxAge: Long): Boolean {
+            return maxAge > 0 && SystemClock.uptimeMillis() - mCreatedAt > maxAge
+        }
+
+        fun invalidate(source: AccessibilityNodeInfo): Boolean {
+            val node = nodes[source] ?: return false
+            node.invalidate()
+            mInvalidations.incrementAndGet()
+            return true
+        }
+    }
+
+    private inner class Node(val info: AccessibilityNodeInfo, val parent: Node?, private val mSnapshot: Snapshot) {
+
+        @Volatile
+        private var mChildren: Array<Node?>? = null
+        @Volatile
+        private var mStale = false
+
+        fun childCount(): Int {
+            return children().size
+        }
+
+        fun child(i: Int): Node? {
+            val children = children()
+            if (i < 0 || i >= children.size) {
+                return null
+            }
+            children[i]?.let {
+                mHits.incrementAndGet()
+                return it.fresh()
+            }
+            synchronized(this) {
+                children[i]?.let {
+                    mHits.incrementAndGet()
+                    return it.fresh()
+                }
+                mMisses.incrementAndGet()
+                val childInfo = try {
+                    info.getChild(i)
+                } catch (e: IllegalStateException) {
+                    null
+                } ?: return null
+                val child = Node(childInfo, this, mSnapshot)
+                children[i] = child
+                mSnapshot.nodes[childInfo] = child
+                return child
+            }
+        }
+
+        /**
+         * 如果节点已失效，重新获取节点属性后返回自身。
+         */
+        fun fresh(): Node {
+            if (mStale) {
+                synchronized(this) {
+                    if (mStale) {
+                        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+                            info.refresh()
+                        }
+                        mStale = false
+                    }
+                }
+            }
+            return this
+        }
+
+        @Synchronized
+        fun invalidate() {
+            mStale = true
+            removeDescendants()
+        }
+
+        private fun children(): Array<Node?> {
+            mChildren?.let { return it }
+            synchronized(this) {
+                mChildren?.let { return it }
+                val children = arrayOfNulls<Node>(info.childCount)
+                mChildren = children
+                return children
+            }
+        }
+
+        private fun removeDescendants() {
+            val children = mChildren ?: return
+            mChildren = null
+            for (child in children) {
+                if (child == null) {
+                    continue
+                }
+                mSnapshot.nodes.remove(child.info)
+                child.removeDescendants()
+            }
+        }
+    }
+
+    /**
+     * 快照中的节点由缓存持有，因此不能被查找算法回收。
+     */
+    private inner class CachedUiObject(private val mNode: Node, depth: Int, indexInParent: Int)
+        : UiObject(mNode.info, depth, indexInParent) {
+
+        override fun child(i: Int): UiObject? {
+            val child = mNode.child(i) ?: return null
+            return CachedUiObject(child, depth() + 1, i)
+        }
+
+        override fun parent(): UiObject? {
+            val parent = mNode.parent ?: return super.parent()
+            return CachedUiObject(parent, depth() - 1, -1)
+        }
+
+        override fun getChildCount(): Int {
+            return mNode.childCount()
+        }
+
+        override fun getChild(index: Int): AccessibilityNodeInfoCompat {
+            return child(index) ?: super.getChild(index)
+        }
+
+        override fun recycle() {
+        }
+    }
+
+    companion object {
+
+        private const val MAX_WINDOWS = 8
+
+        private val EVENT_TYPES = setOf(AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED,
+                AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED)
+    }
+}
@@ -15,14 +15,16 @@ import com.stardust.autojs.runtime.exception.ScriptInterruptedException;
 import com.stardust.autojs.util.FloatingPermission;
 import com.stardust.enhancedfloaty.FloatyService;
 import com.stardust.enhancedfloaty.ResizableExpandableFloatyWindow;
+import com.stardust.pio.UncheckedIOException;
 import com.stardust.util.UiHandler;
 import com.stardust.util.ViewUtil;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Created by Stardust on 2017/5/2.
@@ -62,10 +64,11 @@ public class ConsoleImpl extends AbstractConsole {
         void onLogClear();
     }
 
+    private static final int DEFAULT_SPILL_FILE_SIZE = 8 * 1024 * 1024;
+
     private final Object WINDOW_SHOW_LOCK = new Object();
     private final Console mGlobalConsole;
-    private final ArrayList<LogEntry> mLogEntries = new ArrayList<>();
-    private AtomicInteger mIdCounter = new AtomicInteger(0);
+    private final LogStore mLogStore = new LogStore();
     private ResizableExpandableFloatyWindow mFloatyWindow;
     private ConsoleFloaty mConsoleFloaty;
     private WeakReference<LogListener> mLogListener;
@@ -110,8 +113,53 @@ public class ConsoleImpl extends AbstractConsole {
         mLogListener = new WeakReference<>(logListener);
     }
 
+    /**
+     * @return 内存中日志的快照，更早的日志已被淘汰
+     */
     public ArrayList<LogEntry> getAllLogs() {
-        return mLogEntries;
+        return mLogStore.snapshot();
+    }
+
+    public LogStore getLogStore() {
+        return mLogStore;
+    }
+
+    /**
+     * @return 全局控制台的日志管道，没有全局控制台时返回null
+     */
+    @Nullable
+    public LogPipeline getGlobalLogPipeline() {
+        if (this instanceof GlobalConsole) {
+            return ((GlobalConsole) this).getLogPipeline();
+        }
+        return mGlobalConsole instanceof GlobalConsole ? ((GlobalConsole) mGlobalConsole).getLogPipeline() : null;
+    }
+
+    /**
+     * 设置日志的条数和字节上限，并可选地开启溢出文件
+     *
+     * @param maxEntries    小于等于0时不修改
+     * @param maxBytes      小于等于0时不修改
+     * @param spillFile     溢出文件的路径，为null时关闭溢出文件
+     * @param spillFileSize 溢出文件的大小，小于等于0时使用默认值
+     */
+    @ScriptInterface
+    public void setLogStoreConfig(int maxEntries, long maxBytes, @Nullable String spillFile, int spillFileSize) {
+        if (maxEntries > 0) {
+            mLogStore.setMaxEntries(maxEntries);
+        }
+        if (maxBytes > 0) {
+            mLogStore.setMaxBytes(maxBytes);
+        }
+        if (spillFile == null) {
+            mLogStore.disableSpillFile();
+            return;
+        }
+        try {
+            mLogStore.setSpillFile(new File(spillFile), spillFileSize > 0 ? spillFileSize : DEFAULT_SPILL_FILE_SIZE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     public void printAllStackTrace(Throwable t) {
@@ -124,10 +172,7 @@ public class ConsoleImpl extends AbstractConsole {
 
     @Override
     public String println(int level, CharSequence charSequence) {
-        LogEntry logEntry = new LogEntry(mIdCounter.getAndIncrement(), level, charSequence, true);
-        synchronized (mLogEntries) {
-            mLogEntries.add(logEntry);
-        }
+        LogEntry logEntry = mLogStore.append(level, charSequence);
         if (mGlobalConsole != null) {
             mGlobalConsole.println(level, charSequence);
         }
@@ -146,9 +191,7 @@ public class ConsoleImpl extends AbstractConsole {
 
     @Override
     public void clear() {
-        synchronized (mLogEntries) {
-            mLogEntries.clear();
-        }
+        mLogStore.clear();
         if (mLogListener != null && mLogListener.get() != null) {
             mLogListener.get().onLogClear();
         }
@@ -23,13 +23,12 @@ import com.stardust.autojs.R;
 import com.stardust.util.MapBuilder;
 import com.stardust.util.SparseArrayEntries;
 
-import java.util.ArrayList;
 import java.util.Map;
 
 /**
  * Created by Stardust on 2017/5/2.
  * <p>
- * TODO: 优化为无锁形式
+ * 不保存日志的副本，只记录当前显示的序号范围，列表项在绑定时才从{@link LogStore}中按序号读取。
  */
 public class ConsoleView extends FrameLayout implements ConsoleImpl.LogListener {
 
@@ -59,7 +58,8 @@ public class ConsoleView extends FrameLayout implements ConsoleImpl.LogListener
     private ResizableExpandableFloatyWindow mWindow;
     private LinearLayout mInputContainer;
     private boolean mShouldStopRefresh = false;
-    private ArrayList<ConsoleImpl.LogEntry> mLogEntries = new ArrayList<>();
+    private long mFirstSeq = 0;
+    private long mNextSeq = 0;
 
     public ConsoleView(Context context) {
         super(context);
@@ -163,34 +163,39 @@ public class ConsoleView extends FrameLayout implements ConsoleImpl.LogListener
 
     @Override
     public void onLogClear() {
-        post(() -> {
-            mLogEntries.clear();
-            mLogListRecyclerView.getAdapter().notifyDataSetChanged();
-        });
+        post(this::refreshLog);
     }
 
     private void refreshLog() {
         if (mConsole == null)
             return;
-        int oldSize = mLogEntries.size();
-        ArrayList<ConsoleImpl.LogEntry> logEntries = mConsole.getAllLogs();
-        synchronized (mConsole.getAllLogs()) {
-            final int size = logEntries.size();
-            if (size == 0) {
-                return;
-            }
-            if (oldSize >= size) {
-                return;
+        LogStore logStore = mConsole.getLogStore();
+        long first = logStore.getFirstSeq();
+        long next = logStore.getNextSeq();
+        if (first == mFirstSeq && next == mNextSeq) {
+            return;
+        }
+        RecyclerView.Adapter<?> adapter = mLogListRecyclerView.getAdapter();
+        if (first < mFirstSeq || first >= mNextSeq) {
+            // 被清空，或者显示的日志已全部被淘汰
+            mFirstSeq = first;
+            mNextSeq = next;
+            adapter.notifyDataSetChanged();
+        } else {
+            if (first > mFirstSeq) {
+                int removed = (int) (first - mFirstSeq);
+                mFirstSeq = first;
+                adapter.notifyItemRangeRemoved(0, removed);
             }
-            if (oldSize == 0) {
-                mLogEntries.addAll(logEntries);
-            } else {
-                for (int i = oldSize; i < size; i++) {
-                    mLogEntries.add(logEntries.get(i));
-                }
+            if (next > mNextSeq) {
+                int start = (int) (mNextSeq - mFirstSeq);
+                int inserted = (int) (next - mNextSeq);
+                mNextSeq = next;
+                adapter.notifyItemRangeInserted(start, inserted);
             }
-            mLogListRecyclerView.getAdapter().notifyItemRangeInserted(oldSize, size - 1);
-            mLogListRecyclerView.scrollToPosition(size - 1);
+        }
+        if (mNextSeq > mFirstSeq) {
+            mLogListRecyclerView.scrollToPosition((int) (mNextSeq - mFirstSeq - 1));
         }
     }
 
@@ -225,14 +230,19 @@ public class ConsoleView extends FrameLayout implements ConsoleImpl.LogListener
 
         @Override
         public void onBindViewHolder(ViewHolder holder, int position) {
-            ConsoleImpl.LogEntry logEntry = mLogEntries.get(position);
+            ConsoleImpl.LogEntry logEntry = mConsole.getLogStore().get(mFirstSeq + position);
+            if (logEntry == null) {
+                // 在下一次刷新前已被淘汰
+                holder.textView.setText("");
+                return;
+            }
             holder.textView.setText(logEntry.content);
             holder.textView.setTextColor(mColors.get(logEntry.level));
         }
 
         @Override
         public int getItemCount() {
-            return mLogEntries.size();
+            return (int) (mNextSeq - mFirstSeq);
         }
     }
 }
@@ -13,23 +13,42 @@ import java.util.Locale;
 
 /**
  * Created by Stardust on 2017/10/22.
+ * <p>
+ * 写入日志文件和logcat由{@link LogPipeline}在后台线程批量完成，其他输出(例如调试插件)可以通过{@link #getLogPipeline()}添加。
  */
 
 public class GlobalConsole extends ConsoleImpl {
     private static final String LOG_tAG = "GlobalConsole";
-    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("HH:mm:ss.SSS", Locale.getDefault());
+    private static final ThreadLocal<SimpleDateFormat> DATE_FORMAT = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat("HH:mm:ss.SSS", Locale.getDefault());
+        }
+    };
     private static final Logger LOGGER = Logger.getLogger(GlobalConsole.class);
 
+    private final LogPipeline mLogPipeline = new LogPipeline();
+
     public GlobalConsole(UiHandler uiHandler) {
         super(uiHandler);
+        mLogPipeline.addSink(records -> {
+            for (LogPipeline.Record record : records) {
+                LOGGER.log(toLog4jLevel(record.level), record.message);
+                android.util.Log.d(LOG_tAG, record.message);
+            }
+        });
+        // System.exit等正常退出时把还在队列中的日志写完
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> mLogPipeline.flush(LogPipeline.EXIT_FLUSH_TIMEOUT_MILLIS)));
+    }
+
+    public LogPipeline getLogPipeline() {
+        return mLogPipeline;
     }
 
     @Override
     public String println(int level, CharSequence charSequence) {
-        String log = String.format(Locale.getDefault(), "%s/%s: %s",
-                DATE_FORMAT.format(new Date()), getLevelChar(level), charSequence.toString());
-        LOGGER.log(toLog4jLevel(level), log);
-        android.util.Log.d(LOG_tAG, log);
+        String log = DATE_FORMAT.get().format(new Date()) + "/" + getLevelChar(level) + ": " + charSequence;
+        mLogPipeline.enqueue(level, log);
         super.println(level, log);
         return log;
     }
@@ -0,0 +1,310 @@
+package com.stardust.autojs.core.console;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 异步的日志管道。
+ * <p>
+ * 脚本线程只把日志放入无锁队列，由一个后台线程批量取出后依次交给各个{@link Sink}(日志文件、logcat、调试插件等)，
+ * 写文件和发送网络消息不再阻塞脚本线程。
+ * 队列满时按{@link #setBackpressure(int)}设置的策略处理，各日志级别可以分别限制速率。
+ */
+public class LogPipeline {
+
+    public static class Record {
+        public final int level;
+        public final long timeMillis;
+        public final String message;
+
+        public Record(int level, long timeMillis, String message) {
+            this.level = level;
+            this.timeMillis = timeMillis;
+            this.message = message;
+        }
+    }
+
+    public interface Sink {
+        /**
+         * 在后台线程中调用，records按写入顺序排列
+         */
+        void write(List<Record> records);
+    }
+
+    /**
+     * 队列满时丢弃最旧的日志
+     */
+    public static final int BACKPRESSURE_DROP_OLDEST = 0;
+    /**
+     * 队列满时阻塞写入日志的线程，直到队列有空位
+     */
+    public static final int BACKPRESSURE_BLOCK = 1;
+    /**
+     * 队列超过一半时只保留部分日志，满时丢弃新的日志
+     */
+    public static final int BACKPRESSURE_SAMPLE = 2;
+
+    public static final int DEFAULT_CAPACITY = 4096;
+    /**
+     * 进程退出(崩溃或主动退出)前等待日志写完的最长时间
+     */
+    public static final long EXIT_FLUSH_TIMEOUT_MILLIS = 1000;
+    private static final int MAX_BATCH_SIZE = 256;
+    private static final int SAMPLE_INTERVAL = 4;
+    private static final long IDLE_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long BLOCK_WAIT_MILLIS = 10;
+    private static final String LOG_TAG = "LogPipeline";
+
+    private final ConcurrentLinkedQueue<Record> mQueue = new ConcurrentLinkedQueue<>();
+    // 队列中的日志数，取出时即释放位置；mUnwritten还包括已取出但还没有写完的日志，用于flush
+    private final AtomicInteger mSize = new AtomicInteger();
+    private final AtomicInteger mUnwritten = new AtomicInteger();
+    private final CopyOnWriteArrayList<Sink> mSinks = new CopyOnWriteArrayList<>();
+    private final Object mSpaceLock = new Object();
+    // 按级别(Log.VERBOSE至Log.ASSERT)的速率限制，保存理论到达时间(GCRA)和发射间隔
+    private final AtomicLongArray mTheoreticalArrivalNanos = new AtomicLongArray(Log.ASSERT + 1);
+    private final AtomicLongArray mEmissionIntervalNanos = new AtomicLongArray(Log.ASSERT + 1);
+    private final AtomicLong mSampleCounter = new AtomicLong();
+    private final AtomicLong mEnqueuedCount = new AtomicLong();
+    private final AtomicLong mWrittenCount = new AtomicLong();
+    private final AtomicLong mDroppedCount = new AtomicLong();
+    private final AtomicLong mRateLimitedCount = new AtomicLong();
+    private volatile int mCapacity = DEFAULT_CAPACITY;
+    private volatile int mBackpressure = BACKPRESSURE_DROP_OLDEST;
+    private volatile Thread mDrainer;
+
+    public void addSink(Sink sink) {
+        mSinks.add(sink);
+    }
+
+    public void removeSink(Sink sink) {
+        mSinks.remove(sink);
+    }
+
+    public void setCapacity(int capacity) {
+        mCapacity = Math.max(1, capacity);
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    /**
+     * @param backpressure {@link #BACKPRESSURE_DROP_OLDEST}、{@link #BACKPRESSURE_BLOCK}或{@link #BACKPRESSURE_SAMPLE}
+     */
+    public void setBackpressure(int backpressure) {
+        if (backpressure < BACKPRESSURE_DROP_OLDEST || backpressure > BACKPRESSURE_SAMPLE) {
+            throw new IllegalArgumentException("Unknown backpressure policy: " + backpressure);
+        }
+        mBackpressure = backpressure;
+    }
+
+    public int getBackpressure() {
+        return mBackpressure;
+    }
+
+    /**
+     * 限制某个级别每秒最多写入的日志数，超出的日志被丢弃
+     *
+     * @param level           android.util.Log中的级别
+     * @param recordsPerSecond 小于等于0时不限制
+     */
+    public void setRateLimit(int level, double recordsPerSecond) {
+        long interval = recordsPerSecond <= 0 ? 0 : (long) (TimeUnit.SECONDS.toNanos(1) / recordsPerSecond);
+        mEmissionIntervalNanos.set(level, interval);
+        mTheoreticalArrivalNanos.set(level, 0);
+    }
+
+    public boolean enqueue(int level, String message) {
+        if (!tryAcquire(level)) {
+            mRateLimitedCount.incrementAndGet();
+            return false;
+        }
+        if (!reserve()) {
+            mDroppedCount.incrementAndGet();
+            return false;
+        }
+        mUnwritten.incrementAndGet();
+        mQueue.offer(new Record(level, System.currentTimeMillis(), message));
+        mEnqueuedCount.incrementAndGet();
+        Thread drainer = ensureDrainer();
+        LockSupport.unpark(drainer);
+        return true;
+    }
+
+    /**
+     * 等待队列中已有的日志写完
+     *
+     * @return 是否在超时前写完
+     */
+    public boolean flush(long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (mUnwritten.get() > 0) {
+            if (System.currentTimeMillis() >= deadline) {
+                return false;
+            }
+            LockSupport.unpark(mDrainer);
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getEnqueuedCount() {
+        return mEnqueuedCount.get();
+    }
+
+    public long getWrittenCount() {
+        return mWrittenCount.get();
+    }
+
+    /**
+     * 因队列满或采样而丢弃的日志数
+     */
+    public long getDroppedCount() {
+        return mDroppedCount.get();
+    }
+
+    public long getRateLimitedCount() {
+        return mRateLimitedCount.get();
+    }
+
+    public int getQueuedCount() {
+        return mSize.get();
+    }
+
+    private boolean tryAcquire(int level) {
+        if (level < 0 || level >= mEmissionIntervalNanos.length()) {
+            return true;
+        }
+        long interval = mEmissionIntervalNanos.get(level);
+        if (interval == 0) {
+            return true;
+        }
+        // 允许一秒的突发量
+        long tolerance = TimeUnit.SECONDS.toNanos(1) - interval;
+        while (true) {
+            long now = System.nanoTime();
+            long tat = mTheoreticalArrivalNanos.get(level);
+            long start = tat == 0 || tat - now < 0 ? now : tat;
+            if (start - now > tolerance) {
+                return false;
+            }
+            if (mTheoreticalArrivalNanos.compareAndSet(level, tat, start + interval)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 为新的日志占用队列中的一个位置
+     */
+    private boolean reserve() {
+        int backpressure = mBackpressure;
+        while (true) {
+            int size = mSize.get();
+            int capacity = mCapacity;
+            if (backpressure == BACKPRESSURE_SAMPLE && size >= capacity / 2
+                    && mSampleCounter.incrementAndGet() % SAMPLE_INTERVAL != 0) {
+                return false;
+            }
+            if (size < capacity) {
+                if (mSize.compareAndSet(size, size + 1)) {
+                    return true;
+                }
+                continue;
+            }
+            switch (backpressure) {
+                case BACKPRESSURE_DROP_OLDEST:
+                    if (mQueue.poll() != null) {
+                        mUnwritten.decrementAndGet();
+                        mDroppedCount.incrementAndGet();
+                        // 腾出的位置直接给新的日志使用，大小不变
+                        return true;
+                    }
+                    // 其他线程已占用位置但还没有放入队列，让出CPU等待它们放入
+                    Thread.yield();
+                    break;
+                case BACKPRESSURE_BLOCK:
+                    LockSupport.unpark(mDrainer);
+                    synchronized (mSpaceLock) {
+                        if (mSize.get() >= mCapacity) {
+                            try {
+                                mSpaceLock.wait(BLOCK_WAIT_MILLIS);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                                return false;
+                            }
+                        }
+                    }
+                    break;
+                default:
+                    return false;
+            }
+        }
+    }
+
+    private Thread ensureDrainer() {
+        Thread drainer = mDrainer;
+        if (drainer != null) {
+            return drainer;
+        }
+        synchronized (this) {
+            if (mDrainer == null) {
+                drainer = new Thread(this::drain, "LogPipeline");
+                drainer.setDaemon(true);
+                drainer.start();
+                mDrainer = drainer;
+            }
+            return mDrainer;
+        }
+    }
+
+    private void drain() {
+        ArrayList<Record> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        while (true) {
+            Record record;
+            while (batch.size() < MAX_BATCH_SIZE && (record = mQueue.poll()) != null) {
+                batch.add(record);
+            }
+            if (batch.isEmpty()) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                continue;
+            }
+            // 取出后立即释放队列中的位置，写入期间脚本线程可以继续放入日志
+            mSize.addAndGet(-batch.size());
+            if (mBackpressure == BACKPRESSURE_BLOCK) {
+                synchronized (mSpaceLock) {
+                    mSpaceLock.notifyAll();
+                }
+            }
+            write(batch);
+            mWrittenCount.addAndGet(batch.size());
+            mUnwritten.addAndGet(-batch.size());
+            batch.clear();
+        }
+    }
+
+    private void write(List<Record> batch) {
+        for (Sink sink : mSinks) {
+            try {
+                sink.write(batch);
+            } catch (Throwable e) {
+                Log.e(LOG_TAG, "sink " + sink + " failed", e);
+            }
+        }
+    }
+}
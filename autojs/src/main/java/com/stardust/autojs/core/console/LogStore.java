@@ -0,0 +1,200 @@
+package com.stardust.autojs.core.console;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 控制台日志的有界环形缓冲区。
+ * <p>
+ * 写入不加锁：每条日志通过原子计数器获得序号，再写入序号对应的槽位；日志条数或占用的字节数超过上限时从最旧的日志开始淘汰。
+ * 读取按序号进行，已被淘汰的序号返回null。
+ * 开启溢出文件后，日志同时写入一个内存映射的滚动文件({@link MappedLogFile})，被淘汰出内存的日志仍然可以按序号从文件中读出。
+ */
+public class LogStore {
+
+    /**
+     * 槽位数，即条数上限的最大值，必须是2的幂
+     */
+    public static final int CAPACITY = 8192;
+    public static final int DEFAULT_MAX_ENTRIES = 5000;
+    public static final long DEFAULT_MAX_BYTES = 2 * 1024 * 1024;
+
+    private static final int ENTRY_OVERHEAD_BYTES = 48;
+
+    private final AtomicReferenceArray<ConsoleImpl.LogEntry> mSlots = new AtomicReferenceArray<>(CAPACITY);
+    private final AtomicLong mNextSeq = new AtomicLong();
+    private final AtomicLong mFirstSeq = new AtomicLong();
+    private final AtomicLong mBytes = new AtomicLong();
+    private volatile long mClearedSeq = 0;
+    private volatile int mMaxEntries = DEFAULT_MAX_ENTRIES;
+    private volatile long mMaxBytes = DEFAULT_MAX_BYTES;
+    private volatile MappedLogFile mSpillFile;
+
+    public ConsoleImpl.LogEntry append(int level, CharSequence content) {
+        long seq = mNextSeq.getAndIncrement();
+        ConsoleImpl.LogEntry entry = new ConsoleImpl.LogEntry((int) seq, level, content, true);
+        MappedLogFile spillFile = mSpillFile;
+        if (spillFile != null) {
+            spillFile.append(seq, level, content);
+        }
+        ConsoleImpl.LogEntry old = mSlots.getAndSet(index(seq), entry);
+        if (old != null) {
+            // 只有并发写入恰好绕了一整圈时才会覆盖未被淘汰的日志
+            mBytes.addAndGet(-sizeOf(old));
+        }
+        mBytes.addAndGet(sizeOf(entry));
+        trim();
+        return entry;
+    }
+
+    /**
+     * @return 该序号的日志，已被淘汰或清空时返回null
+     */
+    @Nullable
+    public ConsoleImpl.LogEntry get(long seq) {
+        if (seq < mClearedSeq || seq >= mNextSeq.get()) {
+            return null;
+        }
+        if (seq >= mFirstSeq.get()) {
+            ConsoleImpl.LogEntry entry = mSlots.get(index(seq));
+            if (entry != null && entry.id == (int) seq) {
+                return entry;
+            }
+        }
+        MappedLogFile spillFile = mSpillFile;
+        return spillFile == null ? null : spillFile.read(seq);
+    }
+
+    /**
+     * @return 最旧的仍然可以读取的日志序号(包括溢出文件中的日志)
+     */
+    public long getFirstSeq() {
+        long first = mFirstSeq.get();
+        MappedLogFile spillFile = mSpillFile;
+        if (spillFile != null) {
+            // 刚开启的溢出文件还没有记录，它的序号不能算在内
+            long spillFirst = spillFile.getFirstSeq();
+            if (spillFirst >= 0) {
+                first = Math.min(first, spillFirst);
+            }
+        }
+        return Math.max(first, mClearedSeq);
+    }
+
+    /**
+     * @return 下一条日志的序号
+     */
+    public long getNextSeq() {
+        return mNextSeq.get();
+    }
+
+    /**
+     * @return 内存中日志的快照
+     */
+    public ArrayList<ConsoleImpl.LogEntry> snapshot() {
+        long next = mNextSeq.get();
+        long first = Math.max(mFirstSeq.get(), mClearedSeq);
+        ArrayList<ConsoleImpl.LogEntry> entries = new ArrayList<>((int) Math.max(0, next - first));
+        for (long seq = first; seq < next; seq++) {
+            ConsoleImpl.LogEntry entry = mSlots.get(index(seq));
+            if (entry != null && entry.id == (int) seq) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    public void clear() {
+        long next = mNextSeq.get();
+        mClearedSeq = next;
+        while (true) {
+            long first = mFirstSeq.get();
+            if (first >= next || mFirstSeq.compareAndSet(first, next)) {
+                break;
+            }
+        }
+        for (int i = 0; i < CAPACITY; i++) {
+            ConsoleImpl.LogEntry entry = mSlots.get(i);
+            if (entry != null && entry.id - (int) next < 0 && mSlots.compareAndSet(i, entry, null)) {
+                mBytes.addAndGet(-sizeOf(entry));
+            }
+        }
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        mMaxEntries = Math.max(1, Math.min(maxEntries, CAPACITY));
+        trim();
+    }
+
+    public int getMaxEntries() {
+        return mMaxEntries;
+    }
+
+    public void setMaxBytes(long maxBytes) {
+        mMaxBytes = Math.max(1, maxBytes);
+        trim();
+    }
+
+    public long getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    /**
+     * 估计的内存中日志占用的字节数
+     */
+    public long getBytes() {
+        return mBytes.get();
+    }
+
+    /**
+     * 开启溢出文件，之后的日志同时写入该文件
+     *
+     * @param size 文件大小，写满后覆盖最旧的日志
+     */
+    public synchronized void setSpillFile(File file, int size) throws IOException {
+        MappedLogFile old = mSpillFile;
+        mSpillFile = new MappedLogFile(file, size);
+        if (old != null) {
+            old.close();
+        }
+    }
+
+    public synchronized void disableSpillFile() {
+        MappedLogFile old = mSpillFile;
+        mSpillFile = null;
+        if (old != null) {
+            old.close();
+        }
+    }
+
+    private void trim() {
+        while (true) {
+            long first = mFirstSeq.get();
+            long next = mNextSeq.get();
+            if (first >= next || (next - first <= mMaxEntries && mBytes.get() <= mMaxBytes)) {
+                return;
+            }
+            if (!mFirstSeq.compareAndSet(first, first + 1)) {
+                continue;
+            }
+            int index = index(first);
+            ConsoleImpl.LogEntry entry = mSlots.get(index);
+            if (entry != null && entry.id == (int) first && mSlots.compareAndSet(index, entry, null)) {
+                mBytes.addAndGet(-sizeOf(entry));
+            }
+        }
+    }
+
+    private static int index(long seq) {
+        return (int) (seq & (CAPACITY - 1));
+    }
+
+    private static long sizeOf(ConsoleImpl.LogEntry entry) {
+        return ENTRY_OVERHEAD_BYTES + (entry.content == null ? 0 : 2L * entry.content.length());
+    }
+}
@@ -0,0 +1,127 @@
+package com.stardust.autojs.core.console;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * 内存映射的滚动日志文件，写满后从头覆盖最旧的记录，用于{@link LogStore}的溢出模式。
+ * <p>
+ * 记录格式为[序号(long)][级别(int)][长度(int)][UTF-8内容]，记录不会跨越文件末尾。
+ * 内存中只保存最近若干条记录的偏移索引，按序号读取时通过索引定位并校验记录头中的序号。
+ * 文件只在进程内使用，每次打开都会重新开始写入。
+ */
+class MappedLogFile implements Closeable {
+
+    private static final String LOG_TAG = "MappedLogFile";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int HEADER_SIZE = 16;
+    private static final int INDEX_CAPACITY = 16384;
+    private static final int MIN_SIZE = 64 * 1024;
+
+    private final RandomAccessFile mFile;
+    private final MappedByteBuffer mBuffer;
+    private final int mSize;
+    // 记录在"展开"的文件中的绝对位置，物理位置为其对文件大小取余
+    private final long[] mPositions = new long[INDEX_CAPACITY];
+    private long mWritePosition = 0;
+    private long mFirstSeq = 0;
+    private long mNextSeq = 0;
+    private boolean mClosed = false;
+
+    MappedLogFile(File file, int size) throws IOException {
+        mSize = Math.max(size, MIN_SIZE);
+        File parent = file.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        mFile = new RandomAccessFile(file, "rw");
+        try {
+            mFile.setLength(mSize);
+            mBuffer = mFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, mSize);
+        } catch (IOException e) {
+            mFile.close();
+            throw e;
+        }
+        Arrays.fill(mPositions, -1);
+    }
+
+    synchronized void append(long seq, int level, CharSequence content) {
+        if (mClosed) {
+            return;
+        }
+        byte[] bytes = content == null ? new byte[0] : content.toString().getBytes(UTF_8);
+        int length = Math.min(bytes.length, mSize / 2 - HEADER_SIZE);
+        int recordSize = HEADER_SIZE + length;
+        int offset = (int) (mWritePosition % mSize);
+        if (offset + recordSize > mSize) {
+            mWritePosition += mSize - offset;
+            offset = 0;
+        }
+        mBuffer.position(offset);
+        mBuffer.putLong(seq);
+        mBuffer.putInt(level);
+        mBuffer.putInt(length);
+        mBuffer.put(bytes, 0, length);
+        mPositions[index(seq)] = mWritePosition;
+        mWritePosition += recordSize;
+        if (seq >= mNextSeq) {
+            mNextSeq = seq + 1;
+        }
+        while (mFirstSeq < mNextSeq && (mNextSeq - mFirstSeq > INDEX_CAPACITY || !isValid(mFirstSeq))) {
+            mFirstSeq++;
+        }
+    }
+
+    @Nullable
+    synchronized ConsoleImpl.LogEntry read(long seq) {
+        if (mClosed || seq < mFirstSeq || seq >= mNextSeq || !isValid(seq)) {
+            return null;
+        }
+        mBuffer.position((int) (mPositions[index(seq)] % mSize) + 8);
+        int level = mBuffer.getInt();
+        byte[] bytes = new byte[mBuffer.getInt()];
+        mBuffer.get(bytes);
+        return new ConsoleImpl.LogEntry((int) seq, level, new String(bytes, UTF_8), true);
+    }
+
+    /**
+     * @return 最旧的仍然可以读取的记录的序号，没有记录时返回-1
+     */
+    synchronized long getFirstSeq() {
+        return mFirstSeq < mNextSeq ? mFirstSeq : -1;
+    }
+
+    private boolean isValid(long seq) {
+        long position = mPositions[index(seq)];
+        // 写入位置超过该记录一整圈后，记录已被覆盖
+        return position >= 0 && mWritePosition <= position + mSize
+                && mBuffer.getLong((int) (position % mSize)) == seq;
+    }
+
+    private static int index(long seq) {
+        return (int) (seq & (INDEX_CAPACITY - 1));
+    }
+
+    @Override
+    public synchronized void close() {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+        try {
+            mFile.close();
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "failed to close log file", e);
+        }
+    }
+}
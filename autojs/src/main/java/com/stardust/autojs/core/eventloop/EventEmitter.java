@@ -1,5 +1,8 @@
 package com.stardust.autojs.core.eventloop;
 
+import android.os.Handler;
+import android.os.Looper;
+
 import androidx.annotation.NonNull;
 
 
@@ -7,19 +10,80 @@ import com.stardust.autojs.core.looper.Timer;
 import com.stardust.autojs.runtime.ScriptBridges;
 import com.stardust.autojs.runtime.exception.ScriptException;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.TooManyListenersException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Created by Stardust on 2017/7/19.
+ * <p>
+ * 对于高频事件(例如传感器、触摸)，可以按事件名开启批量或合并模式并限制速率，见{@link #batch(String, String)}和{@link #setMaxRate(String, double)}。
  */
 
 public class EventEmitter {
 
+    /**
+     * 每个事件立即分发(默认)
+     */
+    public static final String MODE_NONE = "none";
+    /**
+     * 同一轮消息循环内的事件合并为一个数组，监听器以该数组为唯一参数被调用一次
+     */
+    public static final String MODE_BATCH = "batch";
+    /**
+     * 同一轮消息循环内只分发最后一个事件，参数与普通模式相同
+     */
+    public static final String MODE_LATEST = "latest";
+
+    private static final int MAX_BATCH_SIZE = 1024;
+
+    public static class EventStats {
+        private final long mEmittedCount;
+        private final long mDeliveredCount;
+        private final long mCoalescedCount;
+        private final long mDroppedCount;
+
+        EventStats(long emittedCount, long deliveredCount, long coalescedCount, long droppedCount) {
+            mEmittedCount = emittedCount;
+            mDeliveredCount = deliveredCount;
+            mCoalescedCount = coalescedCount;
+            mDroppedCount = droppedCount;
+        }
+
+        public long getEmittedCount() {
+            return mEmittedCount;
+        }
+
+        public long getDeliveredCount() {
+            return mDeliveredCount;
+        }
+
+        /**
+         * latest模式下被后来的事件覆盖的事件数
+         */
+        public long getCoalescedCount() {
+            return mCoalescedCount;
+        }
+
+        /**
+         * 超过速率限制或批量上限而被丢弃的事件数
+         */
+        public long getDroppedCount() {
+            return mDroppedCount;
+        }
+
+        @Override
+        public String toString() {
+            return "EventStats{emitted=" + mEmittedCount + ", delivered=" + mDeliveredCount +
+                    ", coalesced=" + mCoalescedCount + ", dropped=" + mDroppedCount + "}";
+        }
+    }
+
     private static class ListenerWrapper {
         Object listener;
         boolean isOnce;
@@ -49,6 +113,17 @@ public class EventEmitter {
             return mListenerWrappers.isEmpty();
         }
 
+        void call(Object[] args) {
+            Iterator<ListenerWrapper> listenerIterator = mListenerWrappers.iterator();
+            while (listenerIterator.hasNext()) {
+                ListenerWrapper listenerWrapper = listenerIterator.next();
+                mBridges.callFunction(listenerWrapper.listener, EventEmitter.this, args);
+                if (listenerWrapper.isOnce) {
+                    mListenerWrappers.remove(listenerWrapper);
+                }
+            }
+        }
+
         void emit(Object[] args) {
             Iterator<ListenerWrapper> listenerIterator = mListenerWrappers.iterator();
             while (listenerIterator.hasNext()) {
@@ -94,7 +169,137 @@ public class EventEmitter {
         }
     }
 
+    private class EventChannel implements Runnable {
+
+        private final String mEventName;
+        private String mMode = MODE_NONE;
+        private double mMaxRate = 0;
+        private double mTokens;
+        private long mLastRefillNanos;
+        // ArrayDeque不能存放null，因此保存每个事件的参数数组，分发时再展开
+        private ArrayDeque<Object[]> mPending = new ArrayDeque<>();
+        private Object[] mLatest;
+        private boolean mFlushScheduled;
+        private long mEmittedCount;
+        private long mDeliveredCount;
+        private long mCoalescedCount;
+        private long mDroppedCount;
+
+        EventChannel(String eventName) {
+            mEventName = eventName;
+        }
+
+        synchronized void setMode(String mode) {
+            mMode = mode;
+        }
+
+        synchronized void setMaxRate(double maxRate) {
+            mMaxRate = maxRate;
+            mTokens = maxRate;
+            mLastRefillNanos = System.nanoTime();
+        }
+
+        /**
+         * @return 事件是否被接收(包括被合并或丢弃)
+         */
+        boolean offer(Listeners listeners, Object[] args) {
+            String mode;
+            synchronized (this) {
+                mEmittedCount++;
+                if (!tryAcquireLocked()) {
+                    mDroppedCount++;
+                    return true;
+                }
+                mode = mMode;
+                if (MODE_BATCH.equals(mode)) {
+                    mPending.add(args);
+                    if (mPending.size() > MAX_BATCH_SIZE) {
+                        mPending.poll();
+                        mDroppedCount++;
+                    }
+                    scheduleFlushLocked();
+                    return true;
+                }
+                if (MODE_LATEST.equals(mode)) {
+                    if (mLatest != null) {
+                        mCoalescedCount++;
+                    }
+                    mLatest = args;
+                    scheduleFlushLocked();
+                    return true;
+                }
+                mDeliveredCount++;
+            }
+            listeners.emit(args);
+            return true;
+        }
+
+        private boolean tryAcquireLocked() {
+            if (mMaxRate <= 0) {
+                return true;
+            }
+            long now = System.nanoTime();
+            mTokens = Math.min(mMaxRate, mTokens + (now - mLastRefillNanos) / 1e9 * mMaxRate);
+            mLastRefillNanos = now;
+            if (mTokens < 1) {
+                return false;
+            }
+            mTokens--;
+            return true;
+        }
+
+        private void scheduleFlushLocked() {
+            if (mFlushScheduled) {
+                return;
+            }
+            mFlushScheduled = true;
+            if (mTimer != null) {
+                mTimer.post(this);
+            } else {
+                mFlushHandler.post(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            Object[] args = null;
+            ArrayDeque<Object[]> batch = null;
+            synchronized (this) {
+                mFlushScheduled = false;
+                if (mLatest != null) {
+                    args = mLatest;
+                    mLatest = null;
+                    mDeliveredCount++;
+                } else if (!mPending.isEmpty()) {
+                    batch = mPending;
+                    mDeliveredCount += batch.size();
+                    mPending = new ArrayDeque<>();
+                } else {
+                    return;
+                }
+            }
+            if (batch != null) {
+                ArrayList<Object> events = new ArrayList<>(batch.size());
+                for (Object[] eventArgs : batch) {
+                    events.add(eventArgs.length == 1 ? eventArgs[0] : eventArgs);
+                }
+                // 转换为JavaScript数组，脚本中可以直接使用数组的方法
+                args = new Object[]{mBridges.toArray(events)};
+            }
+            Listeners listeners = mListenersMap.get(mEventName);
+            if (listeners != null) {
+                listeners.call(args);
+            }
+        }
+
+        synchronized EventStats getStats() {
+            return new EventStats(mEmittedCount, mDeliveredCount, mCoalescedCount, mDroppedCount);
+        }
+    }
+
     private Map<String, Listeners> mListenersMap = new HashMap<>();
+    private final ConcurrentHashMap<String, EventChannel> mChannels = new ConcurrentHashMap<>();
+    private Handler mFlushHandler;
     public static int defaultMaxListeners = 10;
     private int mMaxListeners = defaultMaxListeners;
     protected ScriptBridges mBridges;
@@ -137,10 +342,83 @@ public class EventEmitter {
         Listeners listeners = mListenersMap.get(eventName);
         if (listeners == null || listeners.empty())
             return false;
+        EventChannel channel = mChannels.get(eventName);
+        if (channel != null) {
+            return channel.offer(listeners, args);
+        }
         listeners.emit(args);
         return true;
     }
 
+    /**
+     * 以批量模式分发该事件，见{@link #MODE_BATCH}
+     */
+    public EventEmitter batch(String eventName) {
+        return batch(eventName, MODE_BATCH);
+    }
+
+    /**
+     * 设置事件的分发模式，合并后的事件在当前线程(有定时器时为定时器所在线程)的下一轮消息循环中分发
+     *
+     * @param mode {@link #MODE_NONE}、{@link #MODE_BATCH}或{@link #MODE_LATEST}
+     */
+    public EventEmitter batch(String eventName, String mode) {
+        if (!MODE_NONE.equals(mode) && !MODE_BATCH.equals(mode) && !MODE_LATEST.equals(mode)) {
+            throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+        ensureFlushHandler();
+        getChannel(eventName).setMode(mode);
+        return this;
+    }
+
+    /**
+     * 限制该事件每秒最多接收的事件数，超出的事件被丢弃并计入{@link EventStats#getDroppedCount()}
+     *
+     * @param eventsPerSecond 小于等于0时不限制
+     */
+    public EventEmitter setMaxRate(String eventName, double eventsPerSecond) {
+        getChannel(eventName).setMaxRate(eventsPerSecond);
+        return this;
+    }
+
+    /**
+     * @return 该事件的统计，未开启批量模式或速率限制时返回null
+     */
+    public EventStats getEventStats(String eventName) {
+        EventChannel channel = mChannels.get(eventName);
+        return channel == null ? null : channel.getStats();
+    }
+
+    public long getDroppedCount(String eventName) {
+        EventStats stats = getEventStats(eventName);
+        return stats == null ? 0 : stats.getDroppedCount();
+    }
+
+    public long getCoalescedCount(String eventName) {
+        EventStats stats = getEventStats(eventName);
+        return stats == null ? 0 : stats.getCoalescedCount();
+    }
+
+    private EventChannel getChannel(String eventName) {
+        EventChannel channel = mChannels.get(eventName);
+        if (channel == null) {
+            channel = new EventChannel(eventName);
+            EventChannel old = mChannels.putIfAbsent(eventName, channel);
+            if (old != null) {
+                channel = old;
+            }
+        }
+        return channel;
+    }
+
+    private synchronized void ensureFlushHandler() {
+        if (mTimer != null || mFlushHandler != null) {
+            return;
+        }
+        Looper looper = Looper.myLooper();
+        mFlushHandler = new Handler(looper == null ? Looper.getMainLooper() : looper);
+    }
+
     public String[] eventNames() {
         return mListenersMap.keySet().toArray(new String[0]);
     }
@@ -0,0 +1,52 @@
+package com.stardust.autojs.core.image;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * 按尺寸复用的ARGB_8888位图池，避免每次截图都分配新的位图。
+ */
+public class BitmapPool {
+
+    private final ArrayDeque<Bitmap> mBitmaps = new ArrayDeque<>();
+    private final int mMaxSize;
+
+    public BitmapPool(int maxSize) {
+        mMaxSize = maxSize;
+    }
+
+    public synchronized Bitmap obtain(int width, int height) {
+        Iterator<Bitmap> iterator = mBitmaps.iterator();
+        while (iterator.hasNext()) {
+            Bitmap bitmap = iterator.next();
+            if (bitmap.isRecycled()) {
+                iterator.remove();
+                continue;
+            }
+            if (bitmap.getWidth() == width && bitmap.getHeight() == height) {
+                iterator.remove();
+                return bitmap;
+            }
+        }
+        return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    public synchronized void recycle(Bitmap bitmap) {
+        if (bitmap.isRecycled()) {
+            return;
+        }
+        if (mBitmaps.size() >= mMaxSize) {
+            mBitmaps.pollFirst().recycle();
+        }
+        mBitmaps.addLast(bitmap);
+    }
+
+    public synchronized void clear() {
+        for (Bitmap bitmap : mBitmaps) {
+            bitmap.recycle();
+        }
+        mBitmaps.clear();
+    }
+}
@@ -16,6 +16,9 @@ import org.opencv.core.Point;
 import org.opencv.core.Rect;
 import org.opencv.core.Scalar;
 
+import java.util.Arrays;
+import java.util.List;
+
 /**
  * Created by Stardust on 2017/5/18.
  */
@@ -24,6 +27,10 @@ import org.opencv.core.Scalar;
 public class ColorFinder {
 
     private ScreenMetrics mScreenMetrics;
+    private MultiColorFinder mMultiColorFinder;
+    private int mMultiColorFirstColor;
+    private int mMultiColorThreshold;
+    private int[] mMultiColorPoints;
 
     public ColorFinder(ScreenMetrics screenMetrics) {
         mScreenMetrics = screenMetrics;
@@ -99,35 +106,35 @@ public class ColorFinder {
     }
 
     public Point findMultiColors(ImageWrapper image, int firstColor, int threshold, Rect rect, int[] points) {
-        Point[] firstPoints = findAllPointsForColor(image, firstColor, threshold, rect);
-        for (Point firstPoint : firstPoints) {
-            if (firstPoint == null)
-                continue;
-            if (checksPath(image, firstPoint, threshold, rect, points)) {
-                return firstPoint;
-            }
+        Point point = obtainMultiColorFinder(firstColor, threshold, points).find(image.getPixelBuffer(), rect);
+        if (point != null && rect != null) {
+            point.x = mScreenMetrics.scaleX((int) point.x);
+            point.y = mScreenMetrics.scaleX((int) point.y);
         }
-        return null;
+        return point;
     }
 
-    private boolean checksPath(ImageWrapper image, Point startingPoint, int threshold, Rect rect, int[] points) {
-        for (int i = 0; i < points.length; i += 3) {
-            int x = points[i];
-            int y = points[i + 1];
-            int color = points[i + 2];
-            ColorDetector colorDetector = new ColorDetector.DifferenceDetector(color, threshold);
-            x += startingPoint.x;
-            y += startingPoint.y;
-            if (x >= image.getWidth() || y >= image.getHeight()
-                    || x < 0 || y < 0) {
-                return false;
-            }
-            int c = image.pixel(x, y);
-            if (!colorDetector.detectsColor(Color.red(c), Color.green(c), Color.blue(c))) {
-                return false;
+    public Point[] findAllMultiColors(ImageWrapper image, int firstColor, int threshold, Rect rect, int[] points, int limit) {
+        List<Point> result = obtainMultiColorFinder(firstColor, threshold, points).findAll(image.getPixelBuffer(), rect, limit);
+        Point[] array = result.toArray(new Point[0]);
+        if (rect != null) {
+            for (Point point : array) {
+                point.x = mScreenMetrics.scaleX((int) point.x);
+                point.y = mScreenMetrics.scaleX((int) point.y);
             }
+        }
+        return array;
+    }
 
+    private synchronized MultiColorFinder obtainMultiColorFinder(int firstColor, int threshold, int[] points) {
+        // 脚本通常在循环中用同样的参数反复找色，复用上一次的查找器
+        if (mMultiColorFinder == null || mMultiColorFirstColor != firstColor || mMultiColorThreshold != threshold
+                || !Arrays.equals(mMultiColorPoints, points)) {
+            mMultiColorFinder = new MultiColorFinder(firstColor, threshold, points);
+            mMultiColorFirstColor = firstColor;
+            mMultiColorThreshold = threshold;
+            mMultiColorPoints = points.clone();
         }
-        return true;
+        return mMultiColorFinder;
     }
-}
\ No newline at end of file
+}
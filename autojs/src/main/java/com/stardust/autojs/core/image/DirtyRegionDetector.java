@@ -0,0 +1,100 @@
+package com.stardust.autojs.core.image;
+
+import android.media.Image;
+import android.os.Build;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+import com.stardust.util.FnvHash;
+
+import org.opencv.core.Rect;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 把区域划分为固定大小的图块，记录每个图块像素的哈希值，并报告与上一帧相比发生变化的图块。
+ * 第一帧或区域、尺寸变化后的第一帧中所有图块都视为已变化。
+ */
+@RequiresApi(api = Build.VERSION_CODES.KITKAT)
+public class DirtyRegionDetector {
+
+    private final int mTileSize;
+    @Nullable
+    private final Rect mRegion;
+    private long[] mHashes;
+    private int mFrameWidth = -1;
+    private int mFrameHeight = -1;
+
+    /**
+     * @param tileSize 图块边长(像素)
+     * @param region   检测的区域，为null时检测整帧
+     */
+    public DirtyRegionDetector(int tileSize, @Nullable Rect region) {
+        if (tileSize <= 0) {
+            throw new IllegalArgumentException("tileSize = " + tileSize);
+        }
+        mTileSize = tileSize;
+        mRegion = region;
+    }
+
+    public int getTileSize() {
+        return mTileSize;
+    }
+
+    /**
+     * @return 与上一帧相比发生变化的图块，没有变化时返回空列表
+     */
+    public synchronized List<Rect> detect(Image image) {
+        Rect region = mRegion == null ? new Rect(0, 0, image.getWidth(), image.getHeight()) : mRegion;
+        FrameRegions.checkRegion(image, region);
+        int columns = (region.width + mTileSize - 1) / mTileSize;
+        int rows = (region.height + mTileSize - 1) / mTileSize;
+        boolean reset = mHashes == null || mHashes.length != columns * rows
+                || mFrameWidth != image.getWidth() || mFrameHeight != image.getHeight();
+        if (reset) {
+            mHashes = new long[columns * rows];
+            mFrameWidth = image.getWidth();
+            mFrameHeight = image.getHeight();
+        }
+        Image.Plane plane = image.getPlanes()[0];
+        ByteBuffer buffer = plane.getBuffer();
+        int rowStride = plane.getRowStride();
+        int pixelStride = plane.getPixelStride();
+        List<Rect> dirty = new ArrayList<>();
+        for (int row = 0; row < rows; row++) {
+            int top = region.y + row * mTileSize;
+            int bottom = Math.min(top + mTileSize, region.y + region.height);
+            for (int column = 0; column < columns; column++) {
+                int left = region.x + column * mTileSize;
+                int right = Math.min(left + mTileSize, region.x + region.width);
+                long hash = hashTile(buffer, rowStride, pixelStride, left, top, right, bottom);
+                int index = row * columns + column;
+                if (reset || mHashes[index] != hash) {
+                    dirty.add(new Rect(left, top, right - left, bottom - top));
+                }
+                mHashes[index] = hash;
+            }
+        }
+        return dirty;
+    }
+
+    public synchronized void reset() {
+        mHashes = null;
+    }
+
+    private static long hashTile(ByteBuffer buffer, int rowStride, int pixelStride, int left, int top, int right, int bottom) {
+        // 按像素(4字节)累加
+        long hash = FnvHash.OFFSET_BASIS;
+        for (int y = top; y < bottom; y++) {
+            int offset = y * rowStride + left * pixelStride;
+            for (int x = left; x < right; x++) {
+                hash = FnvHash.hash(hash, buffer.getInt(offset));
+                offset += pixelStride;
+            }
+        }
+        return hash;
+    }
+}
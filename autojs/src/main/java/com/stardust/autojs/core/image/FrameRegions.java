@@ -0,0 +1,57 @@
+package com.stardust.autojs.core.image;
+
+import android.graphics.Bitmap;
+import android.media.Image;
+import android.os.Build;
+
+import androidx.annotation.RequiresApi;
+
+import org.opencv.core.Rect;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 从截图帧的像素缓冲区中只转换指定区域的工具方法。
+ */
+@RequiresApi(api = Build.VERSION_CODES.KITKAT)
+public class FrameRegions {
+
+    /**
+     * 把image中rect区域的像素复制到一个新的位图中，区域外的像素不会被读取。
+     */
+    public static Bitmap copyRegion(Image image, Rect rect) {
+        checkRegion(image, rect);
+        Image.Plane plane = image.getPlanes()[0];
+        int rowStride = plane.getRowStride();
+        int pixelStride = plane.getPixelStride();
+        int rowBytes = rect.width * pixelStride;
+        ByteBuffer src = plane.getBuffer().duplicate();
+        ByteBuffer dst = ByteBuffer.allocateDirect(rowBytes * rect.height);
+        for (int y = rect.y; y < rect.y + rect.height; y++) {
+            int offset = y * rowStride + rect.x * pixelStride;
+            src.limit(offset + rowBytes);
+            src.position(offset);
+            dst.put(src);
+        }
+        dst.position(0);
+        Bitmap bitmap = Bitmap.createBitmap(rect.width, rect.height, Bitmap.Config.ARGB_8888);
+        bitmap.copyPixelsFromBuffer(dst);
+        return bitmap;
+    }
+
+    public static Bitmap[] copyRegions(Image image, Rect[] rects) {
+        Bitmap[] bitmaps = new Bitmap[rects.length];
+        for (int i = 0; i < rects.length; i++) {
+            bitmaps[i] = copyRegion(image, rects[i]);
+        }
+        return bitmaps;
+    }
+
+    static void checkRegion(Image image, Rect rect) {
+        if (rect.x < 0 || rect.y < 0 || rect.width <= 0 || rect.height <= 0
+                || rect.x + rect.width > image.getWidth() || rect.y + rect.height > image.getHeight()) {
+            throw new IllegalArgumentException("out of region: region = " + rect + ", image.size = ["
+                    + image.getWidth() + ", " + image.getHeight() + "]");
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.stardust.autojs.core.image;
+
+import android.graphics.Bitmap;
+import android.media.Image;
+import android.os.Build;
+
+import androidx.annotation.RequiresApi;
+
+import com.stardust.autojs.core.image.capture.ScreenCapturer;
+import com.stardust.autojs.core.opencv.Mat;
+import com.stardust.autojs.core.opencv.OpenCVHelper;
+import com.stardust.pio.UncheckedIOException;
+
+import org.opencv.android.Utils;
+import org.opencv.core.CvType;
+
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * 直接由{@link Image}第一个平面的像素缓冲区支撑的图片。
+ * <p>
+ * {@link #getMat()}返回以行跨度为step直接包装缓冲区的Mat，{@link #pixel(int, int)}直接读取缓冲区，
+ * 都不会复制像素；只有调用{@link #getBitmap()}时才会从位图池取出位图并复制像素。
+ * 缓冲区属于Image，因此本对象只在Image关闭前有效。
+ */
+@RequiresApi(api = Build.VERSION_CODES.KITKAT)
+public class ImagePlaneWrapper extends ImageWrapper {
+
+    private static final BitmapPool sBitmapPool = new BitmapPool(ScreenCapturer.MAX_IMAGES);
+
+    private final Image mImage;
+    private final ByteBuffer mBuffer;
+    private final int mWidth;
+    private final int mHeight;
+    private final int mRowStride;
+    private final int mPixelStride;
+    private final MultiColorFinder.PixelBuffer mPixelBuffer;
+    private Mat mMat;
+    private Bitmap mBitmap;
+    private volatile boolean mRecycled = false;
+
+    ImagePlaneWrapper(Image image) {
+        Image.Plane plane = image.getPlanes()[0];
+        mImage = image;
+        mBuffer = plane.getBuffer();
+        mWidth = image.getWidth();
+        mHeight = image.getHeight();
+        mRowStride = plane.getRowStride();
+        mPixelStride = plane.getPixelStride();
+        mPixelBuffer = new MultiColorFinder.PixelBuffer(mBuffer, mWidth, mHeight, mRowStride, mPixelStride);
+    }
+
+    @Override
+    public int getWidth() {
+        ensureNotRecycled();
+        return mWidth;
+    }
+
+    @Override
+    public int getHeight() {
+        ensureNotRecycled();
+        return mHeight;
+    }
+
+    @Override
+    public synchronized Mat getMat() {
+        ensureNotRecycled();
+        if (mMat == null) {
+            mMat = new Mat(mHeight, mWidth, CvType.CV_8UC4, mBuffer, mRowStride);
+        }
+        return mMat;
+    }
+
+    @Override
+    public int pixel(int x, int y) {
+        ensureNotRecycled();
+        if (x < 0 || y < 0 || x >= mWidth || y >= mHeight) {
+            throw new IllegalArgumentException("x = " + x + ", y = " + y + ", width = " + mWidth + ", height = " + mHeight);
+        }
+        // Image.Plane的缓冲区是本地字节序(小端)，通过PixelBuffer中大端序的副本按R、G、B、A读取
+        return mPixelBuffer.getPixel(x, y);
+    }
+
+    @Override
+    public MultiColorFinder.PixelBuffer getPixelBuffer() {
+        ensureNotRecycled();
+        return mPixelBuffer;
+    }
+
+    @Override
+    public synchronized Bitmap getBitmap() {
+        ensureNotRecycled();
+        if (mBitmap != null) {
+            return mBitmap;
+        }
+        if (mRowStride == mPixelStride * mWidth) {
+            Bitmap bitmap = sBitmapPool.obtain(mWidth, mHeight);
+            mBuffer.position(0);
+            bitmap.copyPixelsFromBuffer(mBuffer);
+            mBuffer.position(0);
+            mBitmap = bitmap;
+        } else if (OpenCVHelper.isInitialized()) {
+            Bitmap bitmap = sBitmapPool.obtain(mWidth, mHeight);
+            Utils.matToBitmap(getMat(), bitmap);
+            mBitmap = bitmap;
+        } else {
+            mBitmap = toBitmap(mImage);
+        }
+        return mBitmap;
+    }
+
+    @Override
+    public void saveTo(String path) {
+        try {
+            getBitmap().compress(Bitmap.CompressFormat.PNG, 100, new FileOutputStream(path));
+        } catch (FileNotFoundException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void recycle() {
+        if (mRecycled) {
+            return;
+        }
+        mRecycled = true;
+        releasePyramid();
+        if (mMat != null) {
+            OpenCVHelper.release(mMat);
+            mMat = null;
+        }
+        if (mBitmap != null) {
+            sBitmapPool.recycle(mBitmap);
+            mBitmap = null;
+        }
+    }
+
+    @Override
+    public void ensureNotRecycled() {
+        if (mRecycled)
+            throw new IllegalStateException("image has been recycled");
+    }
+
+    @Override
+    public ImageWrapper clone() {
+        Bitmap bitmap = getBitmap();
+        return ImageWrapper.ofBitmap(bitmap.copy(bitmap.getConfig(), true));
+    }
+}
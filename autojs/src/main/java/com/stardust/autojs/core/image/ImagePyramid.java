@@ -0,0 +1,78 @@
+package com.stardust.autojs.core.image;
+
+import com.stardust.autojs.core.opencv.Mat;
+import com.stardust.autojs.core.opencv.OpenCVHelper;
+
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * 图像金字塔。第0层为原图，第n层为原图长宽各缩小2^n倍后的图片。
+ * 各层在第一次使用时才生成，生成后一直保留到释放，因此同一张图片可以在多次模板匹配中复用。
+ * 创建时引用计数为1，每次{@link #retain()}加1，{@link #release()}减1，减到0时才释放各层，
+ * 因此一个线程释放时不会影响其他线程正在使用的金字塔。原图不属于本对象，不会被释放。
+ */
+public class ImagePyramid {
+
+    private static final int MAX_LEVEL = 16;
+
+    private final Mat mBase;
+    private final Mat[] mLevels = new Mat[MAX_LEVEL + 1];
+    private int mRefCount = 1;
+
+    public ImagePyramid(Mat base) {
+        mBase = base;
+        mLevels[0] = base;
+    }
+
+    public Mat getBase() {
+        return mBase;
+    }
+
+    public synchronized Mat getLevel(int level) {
+        ensureNotReleased();
+        if (level < 0 || level > MAX_LEVEL) {
+            throw new IllegalArgumentException("level = " + level);
+        }
+        Mat m = mLevels[level];
+        if (m == null) {
+            m = pyramidDown(mBase, level);
+            mLevels[level] = m;
+        }
+        return m;
+    }
+
+    public synchronized ImagePyramid retain() {
+        ensureNotReleased();
+        mRefCount++;
+        return this;
+    }
+
+    public synchronized void release() {
+        if (mRefCount == 0 || --mRefCount > 0) {
+            return;
+        }
+        for (int i = 1; i < mLevels.length; i++) {
+            OpenCVHelper.release(mLevels[i]);
+            mLevels[i] = null;
+        }
+    }
+
+    private void ensureNotReleased() {
+        if (mRefCount == 0) {
+            throw new IllegalStateException("pyramid has been released");
+        }
+    }
+
+    private static Mat pyramidDown(Mat m, int level) {
+        int cols = m.cols();
+        int rows = m.rows();
+        for (int i = 0; i < level; i++) {
+            cols = (cols + 1) / 2;
+            rows = (rows + 1) / 2;
+        }
+        Mat r = new Mat(rows, cols, m.type());
+        Imgproc.resize(m, r, new Size(cols, rows));
+        return r;
+    }
+}
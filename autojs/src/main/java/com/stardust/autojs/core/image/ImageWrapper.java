@@ -27,6 +27,11 @@ public class ImageWrapper {
     private int mWidth;
     private int mHeight;
     private Bitmap mBitmap;
+    private ImagePyramid mPyramid;
+    private MultiColorFinder.PixelBuffer mPixelBuffer;
+
+    protected ImageWrapper() {
+    }
 
     protected ImageWrapper(Mat mat) {
         mMat = mat;
@@ -60,6 +65,17 @@ public class ImageWrapper {
         return new ImageWrapper(toBitmap(image));
     }
 
+    /**
+     * 直接包装Image的像素缓冲区，不复制像素。返回的对象只在image关闭前有效。
+     */
+    @RequiresApi(api = Build.VERSION_CODES.KITKAT)
+    public static ImageWrapper wrapImage(Image image) {
+        if (image == null) {
+            return null;
+        }
+        return new ImagePlaneWrapper(image);
+    }
+
     public static ImageWrapper ofMat(Mat mat) {
         if (mat == null) {
             return null;
@@ -131,6 +147,42 @@ public class ImageWrapper {
         return Color.argb((int) channels[3], (int) channels[0], (int) channels[1], (int) channels[2]);
     }
 
+    /**
+     * 返回RGBA排列的像素缓冲区，用于直接在像素上进行查找。
+     * 与{@link #getMat()}一样只在第一次调用时复制像素，之后在同一张图片上找色都复用该缓冲区，图片回收时一起释放。
+     */
+    public synchronized MultiColorFinder.PixelBuffer getPixelBuffer() {
+        Bitmap bitmap = getBitmap();
+        if (mPixelBuffer == null) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(bitmap.getByteCount());
+            bitmap.copyPixelsToBuffer(buffer);
+            mPixelBuffer = new MultiColorFinder.PixelBuffer(buffer, bitmap.getWidth(), bitmap.getHeight(), bitmap.getRowBytes(), 4);
+        }
+        return mPixelBuffer;
+    }
+
+    /**
+     * 获取本图片的金字塔，第一次调用时生成，之后一直复用到图片被回收或调用{@link #releasePyramid()}。
+     * 返回的金字塔已增加引用计数，使用完后需要调用{@link ImagePyramid#release()}。
+     */
+    public synchronized ImagePyramid obtainPyramid() {
+        Mat mat = getMat();
+        if (mPyramid == null) {
+            mPyramid = new ImagePyramid(mat);
+        }
+        return mPyramid.retain();
+    }
+
+    /**
+     * 释放缓存的金字塔，用于直接修改了像素之后。正在使用的金字塔在使用者释放后才会被释放。
+     */
+    public synchronized void releasePyramid() {
+        if (mPyramid != null) {
+            mPyramid.release();
+            mPyramid = null;
+        }
+    }
+
     public Bitmap getBitmap() {
         ensureNotRecycled();
         if (mBitmap == null && mMat != null) {
@@ -141,6 +193,8 @@ public class ImageWrapper {
     }
 
     public void recycle() {
+        releasePyramid();
+        mPixelBuffer = null;
         if (mBitmap != null) {
             mBitmap.recycle();
             mBitmap = null;
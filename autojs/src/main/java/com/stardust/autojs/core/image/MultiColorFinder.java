@@ -0,0 +1,311 @@
+package com.stardust.autojs.core.image;
+
+import com.stardust.autojs.runtime.exception.ScriptInterruptedException;
+
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 多点找色。
+ * <p>
+ * 直接在RGBA排列的像素缓冲区上逐行扫描，不再先求出所有与第一个颜色匹配的点。
+ * 第一个颜色按各通道差值不超过阈值判断(与{@link ColorFinder#findColor}一致)，
+ * 其余各点按{@link ColorDetector.DifferenceDetector}的规则判断。
+ * 检查各点时按在图片中出现的概率从低到高排序，以便尽早排除候选点。
+ * 区域较大时按行分块交给多个线程并行扫描，结果仍按从上到下、从左到右的顺序返回。
+ */
+public class MultiColorFinder {
+
+    private static final int SAMPLE_COUNT = 4096;
+    private static final int MIN_ROWS_PER_TASK = 32;
+    private static final int PARALLELISM = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    private static volatile ExecutorService sExecutor;
+
+    private final int mFirstR, mFirstG, mFirstB;
+    private final int mThreshold;
+    private final int mPointCount;
+    private final int[] mDx, mDy, mR, mG, mB;
+    private final int mMinDx, mMaxDx, mMinDy, mMaxDy;
+    private boolean mParallel = true;
+
+    /**
+     * @param firstColor 第一个点的颜色
+     * @param threshold  颜色阈值
+     * @param points     其他点，依次为相对第一个点的x偏移、y偏移和颜色
+     */
+    public MultiColorFinder(int firstColor, int threshold, int[] points) {
+        if (points.length % 3 != 0) {
+            throw new IllegalArgumentException("points.length = " + points.length);
+        }
+        mFirstR = (firstColor >> 16) & 0xff;
+        mFirstG = (firstColor >> 8) & 0xff;
+        mFirstB = firstColor & 0xff;
+        mThreshold = threshold;
+        mPointCount = points.length / 3;
+        mDx = new int[mPointCount];
+        mDy = new int[mPointCount];
+        mR = new int[mPointCount];
+        mG = new int[mPointCount];
+        mB = new int[mPointCount];
+        int minDx = 0, maxDx = 0, minDy = 0, maxDy = 0;
+        for (int i = 0; i < mPointCount; i++) {
+            mDx[i] = points[i * 3];
+            mDy[i] = points[i * 3 + 1];
+            int color = points[i * 3 + 2];
+            mR[i] = (color >> 16) & 0xff;
+            mG[i] = (color >> 8) & 0xff;
+            mB[i] = color & 0xff;
+            minDx = Math.min(minDx, mDx[i]);
+            maxDx = Math.max(maxDx, mDx[i]);
+            minDy = Math.min(minDy, mDy[i]);
+            maxDy = Math.max(maxDy, mDy[i]);
+        }
+        mMinDx = minDx;
+        mMaxDx = maxDx;
+        mMinDy = minDy;
+        mMaxDy = maxDy;
+    }
+
+    public MultiColorFinder setParallel(boolean parallel) {
+        mParallel = parallel;
+        return this;
+    }
+
+    /**
+     * @return 第一个满足条件的点，没有则返回null
+     */
+    public Point find(PixelBuffer pixels, Rect region) {
+        List<Point> result = findAll(pixels, region, 1);
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    /**
+     * @param region 第一个点所在的区域，为null时为整张图片
+     * @param limit  最多返回的点数
+     * @return 满足条件的点(图片坐标)，按从上到下、从左到右排序
+     */
+    public List<Point> findAll(PixelBuffer pixels, Rect region, int limit) {
+        if (limit <= 0) {
+            return Collections.emptyList();
+        }
+        // 所有偏移点都必须在图片内，因此可以直接缩小第一个点的扫描范围
+        int left = Math.max(region == null ? 0 : region.x, -mMinDx);
+        int top = Math.max(region == null ? 0 : region.y, -mMinDy);
+        int right = Math.min(region == null ? pixels.width : region.x + region.width, pixels.width - mMaxDx);
+        int bottom = Math.min(region == null ? pixels.height : region.y + region.height, pixels.height - mMaxDy);
+        if (left >= right || top >= bottom) {
+            return Collections.emptyList();
+        }
+        int[] order = orderBySelectivity(pixels, left, top, right, bottom);
+        int rows = bottom - top;
+        int tasks = mParallel ? Math.min(PARALLELISM, rows / MIN_ROWS_PER_TASK) : 1;
+        if (tasks <= 1) {
+            List<Point> result = new ArrayList<>();
+            scan(pixels, order, left, top, right, bottom, limit, result, null, 0);
+            return result;
+        }
+        return scanParallel(pixels, order, left, top, right, bottom, limit, tasks);
+    }
+
+    private List<Point> scanParallel(PixelBuffer pixels, int[] order, int left, int top, int right, int bottom,
+                                     int limit, int taskCount) {
+        int rows = bottom - top;
+        int rowsPerTask = (rows + taskCount - 1) / taskCount;
+        // 已经找满limit个点的最靠前的分块，之后的分块可以提前结束
+        AtomicInteger firstFullTask = new AtomicInteger(Integer.MAX_VALUE);
+        List<List<Point>> results = new ArrayList<>(taskCount);
+        List<Future<?>> futures = new ArrayList<>(taskCount);
+        ExecutorService executor = executor();
+        for (int i = 0; i < taskCount; i++) {
+            int taskTop = top + i * rowsPerTask;
+            int taskBottom = Math.min(bottom, taskTop + rowsPerTask);
+            List<Point> result = new ArrayList<>();
+            results.add(result);
+            if (taskTop >= taskBottom) {
+                continue;
+            }
+            int index = i;
+            futures.add(executor.submit(() ->
+                    scan(pixels, order, left, taskTop, right, taskBottom, limit, result, firstFullTask, index)));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+            throw new ScriptInterruptedException();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+        List<Point> merged = new ArrayList<>();
+        for (List<Point> result : results) {
+            for (Point point : result) {
+                if (merged.size() >= limit) {
+                    return merged;
+                }
+                merged.add(point);
+            }
+        }
+        return merged;
+    }
+
+    private void scan(PixelBuffer pixels, int[] order, int left, int top, int right, int bottom, int limit,
+                      List<Point> out, AtomicInteger firstFullTask, int taskIndex) {
+        ByteBuffer buffer = pixels.buffer;
+        int rowStride = pixels.rowStride;
+        int pixelStride = pixels.pixelStride;
+        int threshold = mThreshold;
+        int diffThreshold = mThreshold * 3;
+        int fr = mFirstR, fg = mFirstG, fb = mFirstB;
+        int pointCount = mPointCount;
+        int[] dx = mDx, dy = mDy, pr = mR, pg = mG, pb = mB;
+        for (int y = top; y < bottom; y++) {
+            if (firstFullTask != null && firstFullTask.get() < taskIndex) {
+                return;
+            }
+            int offset = y * rowStride + left * pixelStride;
+            for (int x = left; x < right; x++, offset += pixelStride) {
+                int rgba = buffer.getInt(offset);
+                if ((rgba & 0xff) != 0xff
+                        || Math.abs(((rgba >>> 24)) - fr) > threshold
+                        || Math.abs(((rgba >> 16) & 0xff) - fg) > threshold
+                        || Math.abs(((rgba >> 8) & 0xff) - fb) > threshold) {
+                    continue;
+                }
+                boolean matches = true;
+                for (int k = 0; k < pointCount; k++) {
+                    int i = order[k];
+                    int c = buffer.getInt((y + dy[i]) * rowStride + (x + dx[i]) * pixelStride);
+                    int d = Math.abs((c >>> 24) - pr[i]) + Math.abs(((c >> 16) & 0xff) - pg[i])
+                            + Math.abs(((c >> 8) & 0xff) - pb[i]);
+                    if (d > diffThreshold) {
+                        matches = false;
+                        break;
+                    }
+                }
+                if (!matches) {
+                    continue;
+                }
+                out.add(new Point(x, y));
+                if (out.size() >= limit) {
+                    if (firstFullTask != null) {
+                        int first;
+                        do {
+                            first = firstFullTask.get();
+                        } while (taskIndex < first && !firstFullTask.compareAndSet(first, taskIndex));
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 在区域内均匀采样，统计每个偏移点的颜色出现的次数，出现越少的点越先检查。
+     */
+    private int[] orderBySelectivity(PixelBuffer pixels, int left, int top, int right, int bottom) {
+        int[] order = new int[mPointCount];
+        if (mPointCount <= 1) {
+            return order;
+        }
+        int width = right - left;
+        int height = bottom - top;
+        int step = Math.max(1, (int) Math.sqrt((double) width * height / SAMPLE_COUNT));
+        int diffThreshold = mThreshold * 3;
+        long[] keys = new long[mPointCount];
+        for (int i = 0; i < mPointCount; i++) {
+            int hits = 0;
+            for (int y = top; y < bottom; y += step) {
+                int offset = y * pixels.rowStride + left * pixels.pixelStride;
+                for (int x = left; x < right; x += step, offset += step * pixels.pixelStride) {
+                    int c = pixels.buffer.getInt(offset);
+                    int d = Math.abs((c >>> 24) - mR[i]) + Math.abs(((c >> 16) & 0xff) - mG[i])
+                            + Math.abs(((c >> 8) & 0xff) - mB[i]);
+                    if (d <= diffThreshold) {
+                        hits++;
+                    }
+                }
+            }
+            keys[i] = ((long) hits << 32) | i;
+        }
+        Arrays.sort(keys);
+        for (int i = 0; i < mPointCount; i++) {
+            order[i] = (int) keys[i];
+        }
+        return order;
+    }
+
+    private static ExecutorService executor() {
+        ExecutorService executor = sExecutor;
+        if (executor == null) {
+            synchronized (MultiColorFinder.class) {
+                executor = sExecutor;
+                if (executor == null) {
+                    executor = Executors.newFixedThreadPool(PARALLELISM, r -> {
+                        Thread thread = new Thread(r, "MultiColorFinder");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    sExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * RGBA_8888排列的像素缓冲区，每个像素占pixelStride个字节，每行占rowStride个字节。
+     */
+    public static class PixelBuffer {
+
+        final ByteBuffer buffer;
+        final int width;
+        final int height;
+        final int rowStride;
+        final int pixelStride;
+
+        public PixelBuffer(ByteBuffer buffer, int width, int height, int rowStride, int pixelStride) {
+            if (pixelStride < 4 || rowStride < width * pixelStride) {
+                throw new IllegalArgumentException("width = " + width + ", rowStride = " + rowStride + ", pixelStride = " + pixelStride);
+            }
+            // 按大端序读出的int中各字节依次为R、G、B、A
+            this.buffer = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+            this.width = width;
+            this.height = height;
+            this.rowStride = rowStride;
+            this.pixelStride = pixelStride;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * @return (x, y)处像素的ARGB颜色
+         */
+        public int getPixel(int x, int y) {
+            int rgba = buffer.getInt(y * rowStride + x * pixelStride);
+            return (rgba >>> 8) | (rgba << 24);
+        }
+    }
+}
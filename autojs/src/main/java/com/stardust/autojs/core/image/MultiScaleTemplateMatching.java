@@ -0,0 +1,197 @@
+package com.stardust.autojs.core.image;
+
+import com.stardust.autojs.core.opencv.Mat;
+import com.stardust.autojs.core.opencv.OpenCVHelper;
+
+import org.opencv.core.Core;
+import org.opencv.core.Point;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 多尺度(可选小角度旋转)模板匹配。
+ * <p>
+ * 先在图片金字塔的较粗一层上用所有缩放/旋转组合的模板做一次完整匹配，
+ * 只保留得分最高的几个组合，再用这些组合对应的模板进行{@link TemplateMatching}的金字塔匹配。
+ * 粗匹配时图片缩小了4^level倍，因此总耗时仍接近单尺度匹配。
+ */
+public class MultiScaleTemplateMatching {
+
+    public static class Options {
+        public final float minScale;
+        public final float maxScale;
+        public final float scaleStep;
+        public final float maxAngle;
+        public final float angleStep;
+
+        /**
+         * @param minScale  最小缩放比例(匹配到的图像与模板的大小之比)
+         * @param maxScale  最大缩放比例
+         * @param scaleStep 相邻两个缩放比例之间相差的比例，例如0.1表示每次放大10%
+         * @param maxAngle  最大旋转角度(度)，为0时不旋转
+         * @param angleStep 旋转角度的步长(度)
+         */
+        public Options(float minScale, float maxScale, float scaleStep, float maxAngle, float angleStep) {
+            if (minScale <= 0 || maxScale < minScale || scaleStep <= 0) {
+                throw new IllegalArgumentException("minScale = " + minScale + ", maxScale = " + maxScale + ", scaleStep = " + scaleStep);
+            }
+            if (maxAngle < 0 || (maxAngle > 0 && angleStep <= 0)) {
+                throw new IllegalArgumentException("maxAngle = " + maxAngle + ", angleStep = " + angleStep);
+            }
+            this.minScale = minScale;
+            this.maxScale = maxScale;
+            this.scaleStep = scaleStep;
+            this.maxAngle = maxAngle;
+            this.angleStep = angleStep;
+        }
+
+        List<float[]> variants() {
+            List<Float> scales = new ArrayList<>();
+            for (float scale = minScale; scale < maxScale; scale *= 1 + scaleStep) {
+                scales.add(scale);
+            }
+            scales.add(maxScale);
+            List<Float> angles = new ArrayList<>();
+            angles.add(0f);
+            if (maxAngle > 0) {
+                for (float angle = angleStep; angle <= maxAngle; angle += angleStep) {
+                    angles.add(angle);
+                    angles.add(-angle);
+                }
+            }
+            List<float[]> variants = new ArrayList<>(scales.size() * angles.size());
+            for (float scale : scales) {
+                for (float angle : angles) {
+                    variants.add(new float[]{scale, angle});
+                }
+            }
+            return variants;
+        }
+    }
+
+    /**
+     * 粗匹配后保留的缩放/旋转组合数量
+     */
+    private static final int MAX_CANDIDATES = 3;
+    private static final int MIN_TEMPLATE_SIZE = 16;
+
+    /**
+     * @param imgPyramid 图片的金字塔
+     * @param template   模板图片
+     * @return 匹配结果，按相似度从高到低排序，同一位置只保留相似度最高的一个
+     */
+    public static List<TemplateMatching.Match> fastTemplateMatching(ImagePyramid imgPyramid, Mat template, Options options, int matchMethod,
+                                                                    float weakThreshold, float strictThreshold, int maxLevel, int limit) {
+        Mat img = imgPyramid.getBase();
+        List<float[]> variants = options.variants();
+        int coarseLevel = selectCoarseLevel(img, template, options.minScale, maxLevel);
+        List<float[]> candidates = selectCandidates(imgPyramid.getLevel(coarseLevel), template, variants, coarseLevel, matchMethod, weakThreshold);
+        List<TemplateMatching.Match> matches = new ArrayList<>();
+        for (float[] candidate : candidates) {
+            Mat variant = transform(template, candidate[0], candidate[1]);
+            if (variant.cols() > img.cols() || variant.rows() > img.rows()) {
+                OpenCVHelper.release(variant);
+                continue;
+            }
+            ImagePyramid variantPyramid = new ImagePyramid(variant);
+            try {
+                for (TemplateMatching.Match match : TemplateMatching.fastTemplateMatching(imgPyramid, variantPyramid, matchMethod,
+                        weakThreshold, strictThreshold, maxLevel, limit)) {
+                    matches.add(new TemplateMatching.Match(match.point, match.similarity, candidate[0], candidate[1]));
+                }
+            } finally {
+                variantPyramid.release();
+                OpenCVHelper.release(variant);
+            }
+        }
+        return suppressOverlapping(matches, template, limit);
+    }
+
+    private static int selectCoarseLevel(Mat img, Mat template, float minScale, int maxLevel) {
+        int minTemplateDim = (int) (Math.min(template.rows(), template.cols()) * minScale);
+        int minDim = Math.min(Math.min(img.rows(), img.cols()), minTemplateDim);
+        int level = minDim < MIN_TEMPLATE_SIZE ? 0 : (int) (Math.log((double) minDim / MIN_TEMPLATE_SIZE) / Math.log(2));
+        level = Math.min(level, TemplateMatching.selectPyramidLevel(img, template));
+        if (maxLevel != TemplateMatching.MAX_LEVEL_AUTO) {
+            level = Math.min(level, maxLevel);
+        }
+        return Math.max(0, level);
+    }
+
+    /**
+     * 在粗糙层上对每个组合做一次完整匹配，按最高得分选出最有希望的几个组合。
+     */
+    private static List<float[]> selectCandidates(Mat coarseImg, Mat template, List<float[]> variants, int coarseLevel,
+                                                  int matchMethod, float weakThreshold) {
+        double levelScale = 1.0 / (1 << coarseLevel);
+        List<float[]> scored = new ArrayList<>();
+        for (float[] variant : variants) {
+            Mat coarseTemplate = transform(template, variant[0] * levelScale, variant[1]);
+            if (coarseTemplate.cols() > coarseImg.cols() || coarseTemplate.rows() > coarseImg.rows()) {
+                OpenCVHelper.release(coarseTemplate);
+                continue;
+            }
+            Mat result = TemplateMatching.matchTemplate(coarseImg, coarseTemplate, matchMethod);
+            Core.MinMaxLocResult mmr = Core.minMaxLoc(result);
+            double score = matchMethod == Imgproc.TM_SQDIFF || matchMethod == Imgproc.TM_SQDIFF_NORMED ? -mmr.minVal : mmr.maxVal;
+            OpenCVHelper.release(result);
+            OpenCVHelper.release(coarseTemplate);
+            scored.add(new float[]{variant[0], variant[1], (float) score});
+        }
+        Collections.sort(scored, (l, r) -> Float.compare(r[2], l[2]));
+        List<float[]> candidates = new ArrayList<>(MAX_CANDIDATES);
+        for (float[] s : scored) {
+            // 粗糙层上的得分会偏低，因此至少保留得分最高的一个组合
+            if (candidates.size() >= MAX_CANDIDATES || (!candidates.isEmpty() && s[2] < weakThreshold)) {
+                break;
+            }
+            candidates.add(s);
+        }
+        return candidates;
+    }
+
+    private static Mat transform(Mat template, double scale, double angle) {
+        int cols = Math.max(1, (int) Math.round(template.cols() * scale));
+        int rows = Math.max(1, (int) Math.round(template.rows() * scale));
+        Mat scaled = new Mat(rows, cols, template.type());
+        Imgproc.resize(template, scaled, new Size(cols, rows), 0, 0,
+                scale < 1 ? Imgproc.INTER_AREA : Imgproc.INTER_LINEAR);
+        if (angle == 0) {
+            return scaled;
+        }
+        // 小角度旋转，保持尺寸不变，超出的角落用边缘像素填充
+        org.opencv.core.Mat rotation = Imgproc.getRotationMatrix2D(new Point(cols / 2.0, rows / 2.0), angle, 1);
+        Mat rotated = new Mat(rows, cols, template.type());
+        Imgproc.warpAffine(scaled, rotated, rotation, new Size(cols, rows), Imgproc.INTER_LINEAR, Core.BORDER_REPLICATE);
+        rotation.release();
+        OpenCVHelper.release(scaled);
+        return rotated;
+    }
+
+    private static List<TemplateMatching.Match> suppressOverlapping(List<TemplateMatching.Match> matches, Mat template, int limit) {
+        Collections.sort(matches, (l, r) -> Double.compare(r.similarity, l.similarity));
+        List<TemplateMatching.Match> result = new ArrayList<>();
+        for (TemplateMatching.Match match : matches) {
+            if (result.size() >= limit) {
+                break;
+            }
+            boolean overlapping = false;
+            for (TemplateMatching.Match accepted : result) {
+                double dx = Math.abs(accepted.point.x - match.point.x);
+                double dy = Math.abs(accepted.point.y - match.point.y);
+                if (dx < template.cols() * accepted.scale / 2 && dy < template.rows() * accepted.scale / 2) {
+                    overlapping = true;
+                    break;
+                }
+            }
+            if (!overlapping) {
+                result.add(match);
+            }
+        }
+        return result;
+    }
+}
@@ -1,8 +1,10 @@
 package com.stardust.autojs.core.image;
 
+import android.util.Log;
 import android.util.TimingLogger;
 
 import com.stardust.autojs.core.opencv.OpenCVHelper;
+import com.stardust.autojs.runtime.exception.ScriptInterruptedException;
 import com.stardust.util.Nath;
 
 import org.opencv.core.Core;
@@ -13,13 +15,16 @@ import com.stardust.autojs.core.opencv.Mat;
 import org.opencv.core.Point;
 import org.opencv.core.Rect;
 import org.opencv.core.Scalar;
-import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 /**
@@ -31,10 +36,21 @@ public class TemplateMatching {
     public static class Match {
         public final Point point;
         public final double similarity;
+        /**
+         * 匹配到的图像相对模板的缩放比例和旋转角度(度)，只有多尺度匹配时才可能不是1和0
+         */
+        public final double scale;
+        public final double angle;
 
         public Match(Point point, double similarity) {
+            this(point, similarity, 1, 0);
+        }
+
+        public Match(Point point, double similarity, double scale, double angle) {
             this.point = point;
             this.similarity = similarity;
+            this.scale = scale;
+            this.angle = angle;
         }
 
         @Override
@@ -42,6 +58,8 @@ public class TemplateMatching {
             return "Match{" +
                     "point=" + point +
                     ", similarity=" + similarity +
+                    ", scale=" + scale +
+                    ", angle=" + angle +
                     '}';
         }
     }
@@ -51,6 +69,10 @@ public class TemplateMatching {
     public static final int MAX_LEVEL_AUTO = -1;
     public static final int MATCHING_METHOD_DEFAULT = Imgproc.TM_CCOEFF_NORMED;
 
+    private static final int PARALLELISM = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private static volatile ExecutorService sExecutor;
+
     public static Point fastTemplateMatching(Mat img, Mat template, int matchMethod, float weakThreshold, float strictThreshold, int maxLevel) {
         List<Match> result = fastTemplateMatching(img, template, matchMethod, weakThreshold, strictThreshold, maxLevel, 1);
         if (result.isEmpty()) {
@@ -59,23 +81,35 @@ public class TemplateMatching {
         return result.get(0).point;
     }
 
+    public static List<Match> fastTemplateMatching(Mat img, Mat template, int matchMethod, float weakThreshold, float strictThreshold, int maxLevel, int limit) {
+        ImagePyramid imgPyramid = new ImagePyramid(img);
+        ImagePyramid templatePyramid = new ImagePyramid(template);
+        try {
+            return fastTemplateMatching(imgPyramid, templatePyramid, matchMethod, weakThreshold, strictThreshold, maxLevel, limit);
+        } finally {
+            imgPyramid.release();
+            templatePyramid.release();
+        }
+    }
+
     /**
      * 采用图像金字塔算法快速找图
      *
-     * @param img             图片
-     * @param template        模板图片
+     * @param imgPyramid      图片的金字塔，可以在多个模板之间共享
+     * @param templatePyramid 模板图片的金字塔，可以在多次匹配之间共享
      * @param matchMethod     匹配算法
      * @param weakThreshold   弱阈值。该值用于在每一轮模板匹配中检验是否继续匹配。如果相似度小于该值，则不再继续匹配。
      * @param strictThreshold 强阈值。该值用于检验最终匹配结果，以及在每一轮匹配中如果相似度大于该值则直接返回匹配结果。
      * @param maxLevel        图像金字塔的层数
      * @return
      */
-    public static List<Match> fastTemplateMatching(Mat img, Mat template, int matchMethod, float weakThreshold, float strictThreshold, int maxLevel, int limit) {
-        TimingLogger logger = new TimingLogger(LOG_TAG, "fast_tm");
+    public static List<Match> fastTemplateMatching(ImagePyramid imgPyramid, ImagePyramid templatePyramid, int matchMethod, float weakThreshold, float strictThreshold, int maxLevel, int limit) {
+        TimingLogger logger = Log.isLoggable(LOG_TAG, Log.VERBOSE) ? new TimingLogger(LOG_TAG, "fast_tm") : null;
         if (maxLevel == MAX_LEVEL_AUTO) {
             //自动选取金字塔层数
-            maxLevel = selectPyramidLevel(img, template);
-            logger.addSplit("selectPyramidLevel:" + maxLevel);
+            maxLevel = selectPyramidLevel(imgPyramid.getBase(), templatePyramid.getBase());
+            if (logger != null)
+                logger.addSplit("selectPyramidLevel:" + maxLevel);
         }
         //保存每一轮匹配到模板图片在原图片的位置
         List<Match> finalMatchResult = new ArrayList<>();
@@ -84,8 +118,8 @@ public class TemplateMatching {
         for (int level = maxLevel; level >= 0; level--) {
             // 放缩图片
             List<Match> currentMatchResult = new ArrayList<>();
-            Mat src = getPyramidDownAtLevel(img, level);
-            Mat currentTemplate = getPyramidDownAtLevel(template, level);
+            Mat src = imgPyramid.getLevel(level);
+            Mat currentTemplate = templatePyramid.getLevel(level);
             // 如果在上一轮中没有匹配到图片，则考虑是否退出匹配
             if (previousMatchResult.isEmpty()) {
                 // 如果不是第一次匹配，并且不满足shouldContinueMatching的条件，则直接退出匹配
@@ -95,24 +129,14 @@ public class TemplateMatching {
                 Mat matchResult = matchTemplate(src, currentTemplate, matchMethod);
                 getBestMatched(matchResult, currentTemplate, matchMethod, weakThreshold, currentMatchResult, limit, null);
                 OpenCVHelper.release(matchResult);
+            } else if (previousMatchResult.size() == 1) {
+                matchInROI(src, currentTemplate, previousMatchResult.get(0), matchMethod, weakThreshold, limit, currentMatchResult);
             } else {
-                for (Match match : previousMatchResult) {
-                    // 根据上一轮的匹配点，计算本次匹配的区域
-                    Rect r = getROI(match.point, src, currentTemplate);
-                    Mat m = new Mat(src, r);
-                    Mat matchResult = matchTemplate(m, currentTemplate, matchMethod);
-                    getBestMatched(matchResult, currentTemplate, matchMethod, weakThreshold, currentMatchResult, limit, r);
-                    OpenCVHelper.release(m);
-                    OpenCVHelper.release(matchResult);
-                }
+                matchInROIsParallel(src, currentTemplate, previousMatchResult, matchMethod, weakThreshold, limit, currentMatchResult);
             }
 
-            if (src != img)
-                OpenCVHelper.release(src);
-            if (currentTemplate != template)
-                OpenCVHelper.release(currentTemplate);
-
-            logger.addSplit("level:" + level + ", result:" + previousMatchResult);
+            if (logger != null)
+                logger.addSplit("level:" + level + ", result:" + previousMatchResult);
 
             // 把满足强阈值的点找出来，加到最终结果列表
             if (!currentMatchResult.isEmpty()) {
@@ -133,25 +157,67 @@ public class TemplateMatching {
             isFirstMatching = false;
             previousMatchResult = currentMatchResult;
         }
-        logger.addSplit("result:" + finalMatchResult);
-        logger.dumpToLog();
+        if (logger != null) {
+            logger.addSplit("result:" + finalMatchResult);
+            logger.dumpToLog();
+        }
         return finalMatchResult;
     }
 
+    private static void matchInROI(Mat src, Mat currentTemplate, Match previous, int matchMethod, float weakThreshold, int limit, List<Match> outResult) {
+        // 根据上一轮的匹配点，计算本次匹配的区域
+        Rect r = getROI(previous.point, src, currentTemplate);
+        Mat m = new Mat(src, r);
+        Mat matchResult = matchTemplate(m, currentTemplate, matchMethod);
+        getBestMatched(matchResult, currentTemplate, matchMethod, weakThreshold, outResult, limit, r);
+        OpenCVHelper.release(m);
+        OpenCVHelper.release(matchResult);
+    }
 
-    private static Mat getPyramidDownAtLevel(Mat m, int level) {
-        if (level == 0) {
-            return m;
+    /**
+     * 上一轮有多个候选点时，各候选区域互不依赖，交给线程池并行匹配。结果仍按候选点的顺序合并。
+     */
+    private static void matchInROIsParallel(Mat src, Mat currentTemplate, List<Match> previousMatchResult, int matchMethod,
+                                            float weakThreshold, int limit, List<Match> outResult) {
+        List<Future<List<Match>>> futures = new ArrayList<>(previousMatchResult.size());
+        ExecutorService executor = executor();
+        for (Match match : previousMatchResult) {
+            futures.add(executor.submit(() -> {
+                List<Match> result = new ArrayList<>();
+                matchInROI(src, currentTemplate, match, matchMethod, weakThreshold, limit, result);
+                return result;
+            }));
         }
-        int cols = m.cols();
-        int rows = m.rows();
-        for (int i = 0; i < level; i++) {
-            cols = (cols + 1) / 2;
-            rows = (rows + 1) / 2;
+        try {
+            for (Future<List<Match>> future : futures) {
+                outResult.addAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            for (Future<List<Match>> future : futures) {
+                future.cancel(true);
+            }
+            throw new ScriptInterruptedException();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private static ExecutorService executor() {
+        ExecutorService executor = sExecutor;
+        if (executor == null) {
+            synchronized (TemplateMatching.class) {
+                executor = sExecutor;
+                if (executor == null) {
+                    executor = Executors.newFixedThreadPool(PARALLELISM, r -> {
+                        Thread thread = new Thread(r, "TemplateMatching");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    sExecutor = executor;
+                }
+            }
         }
-        Mat r = new Mat(rows, cols, m.type());
-        Imgproc.resize(m, r, new Size(cols, rows));
-        return r;
+        return executor;
     }
 
     private static void pyrUp(Point p, int level) {
@@ -187,7 +253,7 @@ public class TemplateMatching {
         return new Rect(x, y, w, h);
     }
 
-    private static int selectPyramidLevel(Mat img, Mat template) {
+    static int selectPyramidLevel(Mat img, Mat template) {
         int minDim = Nath.min(img.rows(), img.cols(), template.rows(), template.cols());
         //这里选取16为图像缩小后的最小宽高，从而用log(2, minDim / 16)得到最多可以经过几次缩小。
         int maxLevel = (int) (Math.log(minDim / 16) / Math.log(2));
@@ -199,7 +265,7 @@ public class TemplateMatching {
     }
 
 
-    private static Mat matchTemplate(Mat img, Mat temp, int match_method) {
+    static Mat matchTemplate(Mat img, Mat temp, int match_method) {
         int result_cols = img.cols() - temp.cols() + 1;
         int result_rows = img.rows() - temp.rows() + 1;
         Mat result = new Mat(result_rows, result_cols, CvType.CV_32FC1);
@@ -223,9 +289,7 @@ public class TemplateMatching {
     }
 
     private static Match getBestMatched(Mat tmResult, int matchMethod, float weakThreshold, Rect rect) {
-        TimingLogger logger = new TimingLogger(LOG_TAG, "best_matched_point");
         Core.MinMaxLocResult mmr = Core.minMaxLoc(tmResult);
-        logger.addSplit("minMaxLoc");
         double value;
         Point pos;
         if (matchMethod == Imgproc.TM_SQDIFF || matchMethod == Imgproc.TM_SQDIFF_NORMED) {
@@ -242,7 +306,6 @@ public class TemplateMatching {
             pos.x += rect.x;
             pos.y += rect.y;
         }
-        logger.addSplit("value:" + value);
         return new Match(pos, value);
     }
 
@@ -0,0 +1,48 @@
+package com.stardust.autojs.core.image;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * 模板图片的金字塔缓存。金字塔保存在模板自己的{@link ImageWrapper}中，只生成一次，之后每次找图都直接复用，
+ * 模板被回收时一起释放；这里只记录用过的模板，以便脚本结束时统一释放。
+ * 直接修改模板Mat中的像素不会被检测到，此时需要调用{@link #remove}。
+ */
+public class TemplateRegistry {
+
+    private final Map<ImageWrapper, Boolean> mTemplates = new WeakHashMap<>();
+
+    /**
+     * 获取模板的金字塔，使用完后需要调用{@link ImagePyramid#release()}
+     */
+    public ImagePyramid obtain(ImageWrapper template) {
+        ImagePyramid pyramid = template.obtainPyramid();
+        synchronized (this) {
+            mTemplates.put(template, Boolean.TRUE);
+        }
+        return pyramid;
+    }
+
+    public void remove(ImageWrapper template) {
+        synchronized (this) {
+            mTemplates.remove(template);
+        }
+        template.releasePyramid();
+    }
+
+    public synchronized int size() {
+        return mTemplates.size();
+    }
+
+    public void clear() {
+        ArrayList<ImageWrapper> templates;
+        synchronized (this) {
+            templates = new ArrayList<>(mTemplates.keySet());
+            mTemplates.clear();
+        }
+        for (ImageWrapper template : templates) {
+            template.releasePyramid();
+        }
+    }
+}
@@ -14,6 +14,7 @@ import android.media.projection.MediaProjectionManager;
 import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 import android.util.Log;
@@ -24,7 +25,6 @@ import com.stardust.autojs.runtime.exception.ScriptInterruptedException;
 import com.stardust.lang.ThreadCompat;
 import com.stardust.util.ScreenMetrics;
 
-import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Created by Stardust on 2017/5/17.
@@ -36,15 +36,31 @@ public class ScreenCapturer {
     public static final int ORIENTATION_LANDSCAPE = Configuration.ORIENTATION_LANDSCAPE ;
     public static final int ORIENTATION_PORTRAIT = Configuration.ORIENTATION_PORTRAIT ;
 
+    /**
+     * 等待一帧在上次截图之后到达的新画面。
+     */
+    public static final int FRAME_FRESH = 0;
+    /**
+     * 返回当前可用的最新画面，如果没有新画面则返回上次截取的画面。
+     */
+    public static final int FRAME_LATEST = 1;
+
 
     private static final String LOG_TAG = "ScreenCapturer";
     private final MediaProjectionManager mProjectionManager;
+    public static final int MAX_IMAGES = 3;
+
     private ImageReader mImageReader;
     private MediaProjection mMediaProjection;
     private VirtualDisplay mVirtualDisplay;
     private volatile Looper mImageAcquireLooper;
     private volatile Image mUnderUsingImage;
-    private volatile AtomicReference<Image> mCachedImage = new AtomicReference<>();
+    private final Object mFrameLock = new Object();
+    private Image mCachedImage;
+    private long mCachedImageTime;
+    private long mUnderUsingImageTime;
+    private long mFrameCount;
+    private long mDroppedFrameCount;
     private volatile Exception mException;
     private final int mScreenDensity;
     private Handler mHandler;
@@ -118,7 +134,7 @@ public class ScreenCapturer {
     }
 
     private void initVirtualDisplay(int width, int height, int screenDensity) {
-        mImageReader = ImageReader.newInstance(width, height, PixelFormat.RGBA_8888, 3);
+        mImageReader = ImageReader.newInstance(width, height, PixelFormat.RGBA_8888, MAX_IMAGES);
         mVirtualDisplay = mMediaProjection.createVirtualDisplay(LOG_TAG,
                 width, height, screenDensity, DisplayManager.VIRTUAL_DISPLAY_FLAG_AUTO_MIRROR,
                 mImageReader.getSurface(), null, null);
@@ -142,11 +158,20 @@ public class ScreenCapturer {
     private void setImageListener(Handler handler) {
         mImageReader.setOnImageAvailableListener(reader -> {
             try {
-                Image oldCacheImage = mCachedImage.getAndSet(null);
-                if (oldCacheImage != null) {
-                    oldCacheImage.close();
+                Image image = reader.acquireLatestImage();
+                if (image == null) {
+                    return;
+                }
+                synchronized (mFrameLock) {
+                    if (mCachedImage != null) {
+                        mCachedImage.close();
+                        mDroppedFrameCount++;
+                    }
+                    mCachedImage = image;
+                    mCachedImageTime = SystemClock.uptimeMillis();
+                    mFrameCount++;
+                    mFrameLock.notifyAll();
                 }
-                mCachedImage.set(reader.acquireLatestImage());
             } catch (Exception e) {
                 mException = e;
             }
@@ -156,25 +181,89 @@ public class ScreenCapturer {
 
     @Nullable
     public Image capture() {
+        return capture(-1, FRAME_FRESH);
+    }
+
+    @Nullable
+    public Image capture(long timeout) {
+        return capture(timeout, FRAME_FRESH);
+    }
+
+    /**
+     * 获取一帧画面。没有可用画面时阻塞等待新帧到达，而不是忙等。
+     *
+     * @param timeout 超时时间(毫秒)，小于0表示一直等待
+     * @param mode    {@link #FRAME_FRESH}或{@link #FRAME_LATEST}
+     * @return 超时返回null
+     */
+    @Nullable
+    public Image capture(long timeout, int mode) {
         Exception e = mException;
         if (e != null) {
             mException = null;
             throw new ScriptException(e);
         }
         Thread thread = ThreadCompat.currentThread();
-        while (!thread.isInterrupted()) {
-            Image cachedImage = mCachedImage.getAndSet(null);
-            if (cachedImage != null) {
-                if (mUnderUsingImage != null) {
-                    mUnderUsingImage.close();
+        long deadline = timeout < 0 ? Long.MAX_VALUE : SystemClock.uptimeMillis() + timeout;
+        synchronized (mFrameLock) {
+            while (!thread.isInterrupted()) {
+                Image cachedImage = mCachedImage;
+                if (cachedImage != null) {
+                    mCachedImage = null;
+                    if (mUnderUsingImage != null) {
+                        mUnderUsingImage.close();
+                    }
+                    mUnderUsingImage = cachedImage;
+                    mUnderUsingImageTime = mCachedImageTime;
+                    return cachedImage;
+                }
+                if (mode == FRAME_LATEST && mUnderUsingImage != null) {
+                    return mUnderUsingImage;
+                }
+                long remaining = deadline - SystemClock.uptimeMillis();
+                if (remaining <= 0) {
+                    return null;
+                }
+                try {
+                    mFrameLock.wait(remaining);
+                } catch (InterruptedException ex) {
+                    break;
                 }
-                mUnderUsingImage = cachedImage;
-                return cachedImage;
             }
         }
         throw new ScriptInterruptedException();
     }
 
+    /**
+     * @return 上次返回的画面自到达以来经过的时间(毫秒)，没有截取过画面时返回-1
+     */
+    public long getFrameAge() {
+        synchronized (mFrameLock) {
+            if (mUnderUsingImage == null) {
+                return -1;
+            }
+            return SystemClock.uptimeMillis() - mUnderUsingImageTime;
+        }
+    }
+
+    /**
+     * @return 到达的画面总数
+     */
+    public long getFrameCount() {
+        synchronized (mFrameLock) {
+            return mFrameCount;
+        }
+    }
+
+    /**
+     * @return 未被截取就被新画面替换而丢弃的画面数
+     */
+    public long getDroppedFrameCount() {
+        synchronized (mFrameLock) {
+            return mDroppedFrameCount;
+        }
+    }
+
     public int getScreenDensity() {
         return mScreenDensity;
     }
@@ -194,12 +283,16 @@ public class ScreenCapturer {
         if (mImageReader != null) {
             mImageReader.close();
         }
-        if (mUnderUsingImage != null) {
-            mUnderUsingImage.close();
-        }
-        Image cachedImage = mCachedImage.getAndSet(null);
-        if (cachedImage != null) {
-            cachedImage.close();
+        synchronized (mFrameLock) {
+            if (mUnderUsingImage != null) {
+                mUnderUsingImage.close();
+                mUnderUsingImage = null;
+            }
+            if (mCachedImage != null) {
+                mCachedImage.close();
+                mCachedImage = null;
+            }
+            mFrameLock.notifyAll();
         }
         if (mOrientationEventListener != null) {
             mOrientationEventListener.disable();
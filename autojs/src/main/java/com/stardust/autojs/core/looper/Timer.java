@@ -6,45 +6,98 @@ import android.os.SystemClock;
 import android.util.SparseArray;
 
 import com.stardust.autojs.runtime.ScriptRuntime;
-import com.stardust.concurrent.VolatileBox;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by Stardust on 2017/12/27.
+ * <p>
+ * 每个Looper一个定时器。定时回调保存在按触发时间排序的最小堆中，Handler上始终只挂一条消息，指向堆顶的触发时间；
+ * setImmediate的回调进入队列，一次Handler消息批量执行当前队列中的所有回调。
+ * 回调对象从对象池中复用，频繁的setImmediate/setTimeout不会为每次调用分配lambda和Handler消息。
+ * 锁只在单个定时器内部使用，所有线程共享的最晚回调时间通过CAS更新。
  */
-
 public class Timer {
 
     private static final String LOG_TAG = "Timer";
 
-    private SparseArray<Runnable> mHandlerCallbacks = new SparseArray<>();
+    private static final int MAX_POOL_SIZE = 64;
+    private static final int MIN_CANCELLED_TO_PURGE = 64;
+
+    private static final Comparator<Task> TASK_COMPARATOR = (t1, t2) -> {
+        if (t1.when != t2.when) {
+            return t1.when < t2.when ? -1 : 1;
+        }
+        // 触发时间相同时按加入的顺序执行
+        return Long.compare(t1.seq, t2.seq);
+    };
+
+    private static final class Task {
+        int id;
+        Object callback;
+        Object[] args;
+        Runnable runnable;
+        long when;
+        long seq;
+        long interval;
+        boolean repeat;
+        boolean immediate;
+        boolean inHeap;
+        boolean cancelled;
+
+        void reset() {
+            id = 0;
+            callback = null;
+            args = null;
+            runnable = null;
+            interval = 0;
+            repeat = false;
+            immediate = false;
+            inHeap = false;
+            cancelled = false;
+        }
+    }
+
+    private final SparseArray<Task> mTasks = new SparseArray<>();
+    private final PriorityQueue<Task> mDelayedTasks = new PriorityQueue<>(16, TASK_COMPARATOR);
+    private final ArrayDeque<Task> mImmediateTasks = new ArrayDeque<>();
+    private final ArrayDeque<Task> mPool = new ArrayDeque<>();
+    private final Object mLock = new Object();
     private int mCallbackMaxId = 0;
+    private long mSeq = 0;
+    private int mCancelledCount = 0;
+    private long mScheduledUptime = Long.MAX_VALUE;
+    private boolean mImmediatesScheduled = false;
     private ScriptRuntime mRuntime;
     private Handler mHandler;
-    private long mMaxCallbackUptimeMillis = 0;
-    private final VolatileBox<Long> mMaxCallbackMillisForAllThread;
+    private volatile long mMaxCallbackUptimeMillis = 0;
+    private final AtomicLong mMaxCallbackMillisForAllThread;
+
+    private final Runnable mDelayedDispatcher = this::dispatchDelayedTasks;
+    private final Runnable mImmediateDispatcher = this::dispatchImmediateTasks;
 
-    public Timer(ScriptRuntime runtime, VolatileBox<Long> maxCallbackMillisForAllThread) {
+    public Timer(ScriptRuntime runtime, AtomicLong maxCallbackMillisForAllThread) {
         mRuntime = runtime;
         mMaxCallbackMillisForAllThread = maxCallbackMillisForAllThread;
         mHandler = new Handler();
     }
 
-    public Timer(ScriptRuntime runtime, VolatileBox<Long> maxCallbackMillisForAllThread, Looper looper) {
+    public Timer(ScriptRuntime runtime, AtomicLong maxCallbackMillisForAllThread, Looper looper) {
         mRuntime = runtime;
         mMaxCallbackMillisForAllThread = maxCallbackMillisForAllThread;
         mHandler = new Handler(looper);
     }
 
     public int setTimeout(final Object callback, final long delay, final Object... args) {
-        mCallbackMaxId++;
-        final int id = mCallbackMaxId;
-        Runnable r = () -> {
-            callFunction(callback, null, args);
-            mHandlerCallbacks.remove(id);
-        };
-        mHandlerCallbacks.put(id, r);
-        postDelayed(r, delay);
-        return id;
+        synchronized (mLock) {
+            Task task = obtainTask(callback, args, null);
+            scheduleDelayedLocked(task, SystemClock.uptimeMillis() + delay);
+            return task.id;
+        }
     }
 
     private void callFunction(Object callback, Object thiz, Object[] args) {
@@ -64,33 +117,25 @@ public class Timer {
     }
 
     public int setInterval(final Object listener, final long interval, final Object... args) {
-        mCallbackMaxId++;
-        final int id = mCallbackMaxId;
-        final Runnable r = new Runnable() {
-            @Override
-            public void run() {
-                if (mHandlerCallbacks.get(id) == null)
-                    return;
-                callFunction(listener, null, args);
-                postDelayed(this, interval);
-            }
-        };
-        mHandlerCallbacks.put(id, r);
-        postDelayed(r, interval);
-        return id;
+        synchronized (mLock) {
+            Task task = obtainTask(listener, args, null);
+            task.repeat = true;
+            task.interval = interval;
+            scheduleDelayedLocked(task, SystemClock.uptimeMillis() + interval);
+            return task.id;
+        }
     }
 
     public void postDelayed(Runnable r, long interval) {
-        long uptime = SystemClock.uptimeMillis() + interval;
-        mHandler.postAtTime(r, uptime);
-        mMaxCallbackUptimeMillis = Math.max(mMaxCallbackUptimeMillis, uptime);
-        synchronized (mMaxCallbackMillisForAllThread) {
-            mMaxCallbackMillisForAllThread.set(Math.max(mMaxCallbackMillisForAllThread.get(), uptime));
+        synchronized (mLock) {
+            scheduleDelayedLocked(obtainTask(null, null, r), SystemClock.uptimeMillis() + interval);
         }
     }
 
     public void post(Runnable r) {
-
+        synchronized (mLock) {
+            scheduleImmediateLocked(obtainTask(null, null, r));
+        }
     }
 
     public boolean clearInterval(int id) {
@@ -98,15 +143,11 @@ public class Timer {
     }
 
     public int setImmediate(final Object listener, final Object... args) {
-        mCallbackMaxId++;
-        final int id = mCallbackMaxId;
-        Runnable r = () -> {
-            callFunction(listener, null, args);
-            mHandlerCallbacks.remove(id);
-        };
-        mHandlerCallbacks.put(id, r);
-        postDelayed(r, 0);
-        return id;
+        synchronized (mLock) {
+            Task task = obtainTask(listener, args, null);
+            scheduleImmediateLocked(task);
+            return task.id;
+        }
     }
 
     public boolean clearImmediate(int id) {
@@ -114,13 +155,20 @@ public class Timer {
     }
 
     private boolean clearCallback(int id) {
-        Runnable callback = mHandlerCallbacks.get(id);
-        if (callback != null) {
-            mHandler.removeCallbacks(callback);
-            mHandlerCallbacks.remove(id);
+        synchronized (mLock) {
+            Task task = mTasks.get(id);
+            if (task == null) {
+                return false;
+            }
+            mTasks.remove(id);
+            // 不立即从堆或队列中移除(需要线性查找)，出队时再回收
+            task.cancelled = true;
+            if (task.inHeap) {
+                mCancelledCount++;
+                purgeCancelledTasksLocked();
+            }
             return true;
         }
-        return false;
     }
 
     public boolean hasPendingCallbacks() {
@@ -128,7 +176,190 @@ public class Timer {
     }
 
     public void removeAllCallbacks() {
+        synchronized (mLock) {
+            mTasks.clear();
+            mDelayedTasks.clear();
+            mImmediateTasks.clear();
+            mCancelledCount = 0;
+            mScheduledUptime = Long.MAX_VALUE;
+            mImmediatesScheduled = false;
+        }
         mHandler.removeCallbacksAndMessages(null);
     }
 
+    private Task obtainTask(Object callback, Object[] args, Runnable runnable) {
+        Task task = mPool.poll();
+        if (task == null) {
+            task = new Task();
+        }
+        task.callback = callback;
+        task.args = args;
+        task.runnable = runnable;
+        if (runnable == null) {
+            mCallbackMaxId++;
+            task.id = mCallbackMaxId;
+            mTasks.put(task.id, task);
+        }
+        return task;
+    }
+
+    private void recycleLocked(Task task) {
+        task.reset();
+        if (mPool.size() < MAX_POOL_SIZE) {
+            mPool.add(task);
+        }
+    }
+
+    private void scheduleDelayedLocked(Task task, long uptime) {
+        task.when = uptime;
+        task.seq = mSeq++;
+        task.inHeap = true;
+        mDelayedTasks.add(task);
+        updateMaxCallbackUptime(uptime);
+        if (uptime < mScheduledUptime) {
+            if (mScheduledUptime != Long.MAX_VALUE) {
+                mHandler.removeCallbacks(mDelayedDispatcher);
+            }
+            mScheduledUptime = uptime;
+            mHandler.postAtTime(mDelayedDispatcher, uptime);
+        }
+    }
+
+    private void scheduleImmediateLocked(Task task) {
+        task.immediate = true;
+        mImmediateTasks.add(task);
+        updateMaxCallbackUptime(SystemClock.uptimeMillis());
+        if (!mImmediatesScheduled) {
+            mImmediatesScheduled = true;
+            mHandler.post(mImmediateDispatcher);
+        }
+    }
+
+    private void updateMaxCallbackUptime(long uptime) {
+        if (uptime > mMaxCallbackUptimeMillis) {
+            mMaxCallbackUptimeMillis = uptime;
+        }
+        long max;
+        while ((max = mMaxCallbackMillisForAllThread.get()) < uptime) {
+            if (mMaxCallbackMillisForAllThread.compareAndSet(max, uptime)) {
+                break;
+            }
+        }
+    }
+
+    private void purgeCancelledTasksLocked() {
+        // 被取消的长延时任务会一直留在堆中，数量较多时重建一次堆
+        if (mCancelledCount < MIN_CANCELLED_TO_PURGE || mCancelledCount < mDelayedTasks.size() / 2) {
+            return;
+        }
+        ArrayList<Task> tasks = new ArrayList<>(mDelayedTasks.size() - mCancelledCount);
+        for (Task task : mDelayedTasks) {
+            if (task.cancelled) {
+                recycleLocked(task);
+            } else {
+                tasks.add(task);
+            }
+        }
+        mDelayedTasks.clear();
+        mDelayedTasks.addAll(tasks);
+        mCancelledCount = 0;
+    }
+
+    private void dispatchDelayedTasks() {
+        synchronized (mLock) {
+            mScheduledUptime = Long.MAX_VALUE;
+        }
+        long now = SystemClock.uptimeMillis();
+        try {
+            while (true) {
+                Task task;
+                synchronized (mLock) {
+                    task = mDelayedTasks.peek();
+                    if (task == null || task.when > now) {
+                        break;
+                    }
+                    mDelayedTasks.poll();
+                    task.inHeap = false;
+                    if (task.cancelled) {
+                        mCancelledCount--;
+                        recycleLocked(task);
+                        continue;
+                    }
+                    if (!task.repeat && task.runnable == null) {
+                        mTasks.remove(task.id);
+                    }
+                }
+                runTask(task);
+                synchronized (mLock) {
+                    if (task.repeat && !task.cancelled) {
+                        scheduleDelayedLocked(task, SystemClock.uptimeMillis() + task.interval);
+                    } else {
+                        recycleLocked(task);
+                    }
+                }
+            }
+        } finally {
+            // 即使回调抛出异常，也要为剩余的任务重新安排消息
+            synchronized (mLock) {
+                Task next = mDelayedTasks.peek();
+                if (next != null && next.when < mScheduledUptime) {
+                    if (mScheduledUptime != Long.MAX_VALUE) {
+                        mHandler.removeCallbacks(mDelayedDispatcher);
+                    }
+                    mScheduledUptime = next.when;
+                    mHandler.postAtTime(mDelayedDispatcher, next.when);
+                }
+            }
+        }
+    }
+
+    private void dispatchImmediateTasks() {
+        int count;
+        synchronized (mLock) {
+            mImmediatesScheduled = false;
+            // 回调中新加入的setImmediate留到下一批执行，与Node.js一致
+            count = mImmediateTasks.size();
+        }
+        try {
+            for (int i = 0; i < count; i++) {
+                Task task;
+                synchronized (mLock) {
+                    task = mImmediateTasks.poll();
+                    if (task == null) {
+                        break;
+                    }
+                    if (task.cancelled) {
+                        recycleLocked(task);
+                        continue;
+                    }
+                    if (task.runnable == null) {
+                        mTasks.remove(task.id);
+                    }
+                }
+                try {
+                    runTask(task);
+                } finally {
+                    synchronized (mLock) {
+                        recycleLocked(task);
+                    }
+                }
+            }
+        } finally {
+            synchronized (mLock) {
+                if (!mImmediateTasks.isEmpty() && !mImmediatesScheduled) {
+                    mImmediatesScheduled = true;
+                    mHandler.post(mImmediateDispatcher);
+                }
+            }
+        }
+    }
+
+    private void runTask(Task task) {
+        if (task.runnable != null) {
+            task.runnable.run();
+        } else {
+            callFunction(task.callback, null, task.args);
+        }
+    }
+
 }
@@ -7,10 +7,10 @@ import androidx.annotation.CallSuper;
 import com.stardust.autojs.engine.RhinoJavaScriptEngine;
 import com.stardust.autojs.runtime.ScriptRuntime;
 import com.stardust.autojs.runtime.exception.ScriptInterruptedException;
-import com.stardust.concurrent.VolatileBox;
 import com.stardust.lang.ThreadCompat;
 
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by Stardust on 2017/12/27.
@@ -21,13 +21,13 @@ public class TimerThread extends ThreadCompat {
     private static ConcurrentHashMap<Thread, Timer> sTimerMap = new ConcurrentHashMap<>();
 
     private Timer mTimer;
-    private final VolatileBox<Long> mMaxCallbackUptimeMillisForAllThreads;
+    private final AtomicLong mMaxCallbackUptimeMillisForAllThreads;
     private final ScriptRuntime mRuntime;
     private Runnable mTarget;
     private boolean mRunning = false;
     private final Object mRunningLock = new Object();
 
-    public TimerThread(ScriptRuntime runtime, VolatileBox<Long> maxCallbackUptimeMillisForAllThreads, Runnable target) {
+    public TimerThread(ScriptRuntime runtime, AtomicLong maxCallbackUptimeMillisForAllThreads, Runnable target) {
         super(target);
         mRuntime = runtime;
         mTarget = target;
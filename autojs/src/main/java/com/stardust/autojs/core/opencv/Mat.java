@@ -9,6 +9,7 @@ import org.opencv.core.Scalar;
 import org.opencv.core.Size;
 
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class Mat extends org.opencv.core.Mat implements ResourceMonitor.Resource {
@@ -58,6 +59,11 @@ public class Mat extends org.opencv.core.Mat implements ResourceMonitor.Resource
         ResourceMonitor.onOpen(this);
     }
 
+    public Mat(int rows, int cols, int type, ByteBuffer data, long step) {
+        super(rows, cols, type, data, step);
+        ResourceMonitor.onOpen(this);
+    }
+
     public Mat(Mat m, Range rowRange, Range colRange) {
         super(m, rowRange, colRange);
         ResourceMonitor.onOpen(this);
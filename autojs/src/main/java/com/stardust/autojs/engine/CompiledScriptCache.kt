@@ -0,0 +1,164 @@
+package com.stardust.autojs.engine
+
+import com.stardust.util.FnvHash
+import org.mozilla.javascript.Context
+import org.mozilla.javascript.Script
+import java.io.Reader
+import java.io.StringWriter
+
+/**
+ * 进程内所有引擎共享的已编译脚本缓存。
+ *
+ * 以源名称、内容哈希以及影响编译结果的Context设置作为键，内容修改后自然不会命中旧的缓存。
+ * 已经确认过文件未修改的调用者(例如模块解析索引)也可以按文件的修改时间和长度查找，省去读取和哈希源码。
+ * 解释模式下编译出的[Script]不绑定作用域，可以在不同引擎的作用域中反复执行。
+ * 超过[maxSize]后按最近最少使用的顺序淘汰。
+ */
+object CompiledScriptCache {
+
+    const val DEFAULT_MAX_SIZE = 64
+
+    class Stats(
+            val size: Int,
+            val hitCount: Long,
+            val missCount: Long,
+            val evictionCount: Long,
+            val compileTimeMillis: Long
+    ) {
+        override fun toString(): String {
+            return "Stats{size=$size, hitCount=$hitCount, missCount=$missCount, " +
+                    "evictionCount=$evictionCount, compileTimeMillis=$compileTimeMillis}"
+        }
+    }
+
+    /**
+     * @param hash 内容哈希，按文件查找时为文件的修改时间
+     * @param stamped 是否按文件的修改时间和长度查找，与按内容哈希的键互不冲突
+     */
+    private data class Key(
+            val sourceName: String,
+            val length: Long,
+            val hash: Long,
+            val optimizationLevel: Int,
+            val languageVersion: Int,
+            val stamped: Boolean = false
+    )
+
+    private val mScripts = object : LinkedHashMap<Key, Script>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Key, Script>?): Boolean {
+            if (size > maxSize) {
+                mEvictionCount++
+                return true
+            }
+            return false
+        }
+    }
+
+    @Volatile
+    var maxSize = DEFAULT_MAX_SIZE
+        set(value) {
+            require(value >= 0) { "maxSize = $value" }
+            field = value
+            synchronized(mScripts) {
+                trimToSize(value)
+            }
+        }
+
+    private var mHitCount = 0L
+    private var mMissCount = 0L
+    private var mEvictionCount = 0L
+    private var mCompileTimeMillis = 0L
+
+    fun compileReader(context: Context, reader: Reader, sourceName: String, securityDomain: Any?): Script {
+        return compileString(context, readFully(reader), sourceName, securityDomain)
+    }
+
+    fun compileString(context: Context, source: String, sourceName: String, securityDomain: Any?): Script {
+        val key = Key(sourceName, source.length.toLong(), FnvHash.hash(source), context.optimizationLevel, context.languageVersion)
+        return compile(key, context, { source }, sourceName, securityDomain)
+    }
+
+    /**
+     * 按文件的修改时间和长度查找，没有时读取源码编译。由调用者保证文件的内容与修改时间和长度对应，
+     * 例如[com.stardust.autojs.engine.module.ModuleResolutionIndex]校验过的记录
+     */
+    fun compileReaderByStamp(context: Context, reader: Reader, sourceName: String, lastModified: Long, length: Long,
+                             securityDomain: Any?): Script {
+        // 命中时不读取源码，但仍然要关闭
+        reader.use {
+            return compile(stampKey(context, sourceName, lastModified, length), context, { readFully(it) },
+                    sourceName, securityDomain)
+        }
+    }
+
+    /**
+     * 按文件的修改时间和长度查找，不读取源码。未命中时不计数，由随后的[compileReaderByStamp]计数
+     */
+    fun getByStamp(context: Context, sourceName: String, lastModified: Long, length: Long): Script? {
+        val key = stampKey(context, sourceName, lastModified, length)
+        synchronized(mScripts) {
+            return mScripts[key]?.also { mHitCount++ }
+        }
+    }
+
+    private fun stampKey(context: Context, sourceName: String, lastModified: Long, length: Long): Key {
+        return Key(sourceName, length, lastModified, context.optimizationLevel, context.languageVersion, true)
+    }
+
+    private inline fun compile(key: Key, context: Context, source: () -> String, sourceName: String, securityDomain: Any?): Script {
+        synchronized(mScripts) {
+            mScripts[key]?.let {
+                mHitCount++
+                return it
+            }
+            mMissCount++
+        }
+        // 编译不持有锁，同一脚本被并发编译时后完成的结果覆盖先完成的，两者等价
+        val start = System.currentTimeMillis()
+        val script = context.compileString(source(), sourceName, 1, securityDomain)
+        val time = System.currentTimeMillis() - start
+        synchronized(mScripts) {
+            mCompileTimeMillis += time
+            mScripts[key] = script
+        }
+        return script
+    }
+
+    fun getStats(): Stats {
+        synchronized(mScripts) {
+            return Stats(mScripts.size, mHitCount, mMissCount, mEvictionCount, mCompileTimeMillis)
+        }
+    }
+
+    fun resetStats() {
+        synchronized(mScripts) {
+            mHitCount = 0
+            mMissCount = 0
+            mEvictionCount = 0
+            mCompileTimeMillis = 0
+        }
+    }
+
+    fun clear() {
+        synchronized(mScripts) {
+            mScripts.clear()
+        }
+    }
+
+    private fun trimToSize(size: Int) {
+        val iterator = mScripts.entries.iterator()
+        while (mScripts.size > size && iterator.hasNext()) {
+            iterator.next()
+            iterator.remove()
+            mEvictionCount++
+        }
+    }
+
+    private fun readFully(reader: Reader): String {
+        reader.use {
+            val writer = StringWriter()
+            it.copyTo(writer)
+            return writer.toString()
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.stardust.autojs.engine
+
+import android.util.Log
+import com.stardust.autojs.rhino.AndroidClassLoader
+import com.stardust.util.FnvHash
+import org.mozilla.javascript.CompilerEnvirons
+import org.mozilla.javascript.Context
+import org.mozilla.javascript.Script
+import org.mozilla.javascript.optimizer.ClassCompiler
+import java.io.File
+
+/**
+ * 把脚本编译为JVM字节码，在设备上转换为dex后加载，用于优化模式("compile")执行的脚本。
+ *
+ * 转换dex和加载都由Rhino的[AndroidClassLoader]完成；转换很慢(通常为秒级)，
+ * 因此这里把生成的dex按源名称和内容哈希缓存在磁盘上，内容不变时再次运行直接加载。
+ * [AndroidClassLoader]会一直持有加载过的dex，内存中再按同样的键记录已加载的类，同一进程内重复运行时不需要重新加载。
+ * 编译或转换失败时返回null，由调用者回退到解释执行。
+ */
+object DexScriptCache {
+
+    private const val LOG_TAG = "DexScriptCache"
+    private const val CACHE_DIR = "script-dex"
+    private const val CLASS_NAME_PREFIX = "com.stardust.autojs.compiled.Script_"
+
+    const val OPTIMIZATION_LEVEL = 9
+    const val DEFAULT_MAX_DISK_ENTRIES = 64
+
+    @Volatile
+    var maxDiskEntries = DEFAULT_MAX_DISK_ENTRIES
+
+    private val mClasses = HashMap<String, Class<*>>()
+
+    // dx不是线程安全的
+    private val mDexLock = Any()
+
+    fun compile(androidContext: android.content.Context, context: Context, source: String, sourceName: String): Script? {
+        val classLoader = context.factory.applicationClassLoader as? AndroidClassLoader ?: return null
+        val key = key(context, source, sourceName)
+        val scriptClass = synchronized(mClasses) { mClasses[key] } ?: try {
+            loadOrCompile(androidContext, classLoader, context, source, sourceName, key).also {
+                synchronized(mClasses) {
+                    mClasses[key] = it
+                }
+            }
+        } catch (e: Throwable) {
+            // 例如单个函数超过64KB字节码限制，或者dx转换失败
+            Log.w(LOG_TAG, "failed to compile $sourceName, fallback to interpreter", e)
+            return null
+        }
+        return scriptClass.newInstance() as Script
+    }
+
+    fun clear(androidContext: android.content.Context) {
+        synchronized(mClasses) {
+            mClasses.clear()
+        }
+        synchronized(mDexLock) {
+            getCacheDir(androidContext).listFiles()?.forEach { it.delete() }
+        }
+    }
+
+    private fun loadOrCompile(androidContext: android.content.Context, classLoader: AndroidClassLoader, context: Context,
+                              source: String, sourceName: String, key: String): Class<*> {
+        val dir = getCacheDir(androidContext)
+        val className = CLASS_NAME_PREFIX + key
+        val dexFile = File(dir, "$key.jar")
+        synchronized(mDexLock) {
+            if (!dexFile.exists()) {
+                val start = System.currentTimeMillis()
+                classLoader.dexClasses(compileToClasses(context, source, sourceName, className), dexFile)
+                Log.d(LOG_TAG, "compiled $sourceName in ${System.currentTimeMillis() - start}ms")
+                trim(dir)
+            } else {
+                // 更新修改时间，淘汰时按最近使用排序
+                dexFile.setLastModified(System.currentTimeMillis())
+            }
+        }
+        return classLoader.loadDex(dexFile).loadClass(className)
+    }
+
+    private fun compileToClasses(context: Context, source: String, sourceName: String, className: String): Array<Any> {
+        val env = CompilerEnvirons()
+        env.initFromContext(context)
+        env.optimizationLevel = OPTIMIZATION_LEVEL
+        return ClassCompiler(env).compileToClassFiles(source, sourceName, 1, className)
+    }
+
+    private fun trim(dir: File) {
+        val files = dir.listFiles { f -> f.name.endsWith(".jar") } ?: return
+        if (files.size <= maxDiskEntries) {
+            return
+        }
+        files.sortBy { it.lastModified() }
+        for (i in 0 until files.size - maxDiskEntries) {
+            files[i].delete()
+        }
+    }
+
+    private fun getCacheDir(androidContext: android.content.Context): File {
+        val dir = File(androidContext.cacheDir, CACHE_DIR)
+        dir.mkdirs()
+        return dir
+    }
+
+    private fun key(context: Context, source: String, sourceName: String): String {
+        // 生成的字节码依赖Rhino的版本和语言版本，一并计入哈希
+        var hash = FnvHash.hash(context.implementationVersion ?: "")
+        hash = FnvHash.hash(hash, context.languageVersion.toString())
+        hash = FnvHash.hash(hash, sourceName)
+        hash = FnvHash.hash(hash, source)
+        return java.lang.Long.toHexString(hash) + "_" + source.length
+    }
+}
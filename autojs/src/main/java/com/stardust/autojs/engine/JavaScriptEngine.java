@@ -1,9 +1,13 @@
 package com.stardust.autojs.engine;
 
+import com.stardust.autojs.execution.ExecutionConfig;
 import com.stardust.autojs.runtime.ScriptRuntime;
 import com.stardust.autojs.script.JavaScriptSource;
 import com.stardust.autojs.script.ScriptSource;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Created by Stardust on 2017/8/3.
  */
@@ -11,6 +15,7 @@ import com.stardust.autojs.script.ScriptSource;
 public abstract class JavaScriptEngine extends ScriptEngine.AbstractScriptEngine<JavaScriptSource> {
     private ScriptRuntime mRuntime;
     private Object mExecArgv;
+    private final List<Runnable> mOnAcquiredActions = new ArrayList<>();
 
     @Override
     public Object execute(JavaScriptSource scriptSource) {
@@ -54,6 +59,34 @@ public abstract class JavaScriptEngine extends ScriptEngine.AbstractScriptEngine
         return mExecArgv;
     }
 
+    /**
+     * 预先初始化的引擎在交给某次执行之后才能得到执行配置、工作目录等信息，依赖这些信息的初始化通过此方法推迟到那时。
+     * 已经有执行配置时(普通启动的引擎，或已经交给执行的预热引擎)立即执行。
+     */
+    public void doOnAcquired(Runnable action) {
+        synchronized (mOnAcquiredActions) {
+            if (getTag(ExecutionConfig.getTag()) == null) {
+                mOnAcquiredActions.add(action);
+                return;
+            }
+        }
+        action.run();
+    }
+
+    /**
+     * 由{@link ScriptEnginePool}在把引擎交给执行、设置好执行配置之后在引擎线程调用
+     */
+    public void onAcquired() {
+        List<Runnable> actions;
+        synchronized (mOnAcquiredActions) {
+            actions = new ArrayList<>(mOnAcquiredActions);
+            mOnAcquiredActions.clear();
+        }
+        for (Runnable action : actions) {
+            action.run();
+        }
+    }
+
     @Override
     public synchronized void destroy() {
         mRuntime.onExit();
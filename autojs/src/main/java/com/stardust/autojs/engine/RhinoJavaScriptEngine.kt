@@ -4,6 +4,7 @@ import android.util.Log
 import android.view.View
 import com.stardust.autojs.core.ui.ViewExtras
 import com.stardust.autojs.engine.module.AssetAndUrlModuleSourceProvider
+import com.stardust.autojs.engine.module.CompiledModuleScriptProvider
 import com.stardust.autojs.execution.ExecutionConfig
 import com.stardust.autojs.project.ScriptConfig
 import com.stardust.autojs.rhino.RhinoAndroidHelper
@@ -14,7 +15,6 @@ import com.stardust.automator.UiObjectCollection
 import com.stardust.pio.UncheckedIOException
 import org.mozilla.javascript.*
 import org.mozilla.javascript.commonjs.module.RequireBuilder
-import org.mozilla.javascript.commonjs.module.provider.SoftCachingModuleScriptProvider
 import java.io.File
 import java.io.IOException
 import java.io.InputStreamReader
@@ -69,18 +69,30 @@ open class RhinoJavaScriptEngine(private val mAndroidContext: android.content.Co
         var reader = source.nonNullScriptReader
         try {
             reader = preprocess(reader)
-            val script = context.compileReader(reader, source.toString(), 1, null)
-            return if (hasFeature(ScriptConfig.FEATURE_CONTINUATION)) {
-                context.executeScriptWithContinuations(script, mScriptable)
-            } else {
-                script.exec(context, mScriptable)
+            // continuation只支持解释模式
+            if (hasFeature(ScriptConfig.FEATURE_CONTINUATION)) {
+                val script = CompiledScriptCache.compileReader(context, reader, source.toString(), null)
+                return context.executeScriptWithContinuations(script, mScriptable)
+            }
+            if (shouldCompile(source)) {
+                val code = reader.use { it.readText() }
+                val script = DexScriptCache.compile(mAndroidContext, context, code, source.toString())
+                        ?: CompiledScriptCache.compileString(context, code, source.toString(), null)
+                return script.exec(context, mScriptable)
             }
+            val script = CompiledScriptCache.compileReader(context, reader, source.toString(), null)
+            return script.exec(context, mScriptable)
         } catch (e: IOException) {
             throw UncheckedIOException(e)
         }
 
     }
 
+    private fun shouldCompile(source: JavaScriptSource): Boolean {
+        return hasFeature(ScriptConfig.FEATURE_COMPILE) ||
+                source.executionMode and JavaScriptSource.EXECUTION_MODE_COMPILE != 0
+    }
+
     fun hasFeature(feature: String): Boolean {
         val config = getTag(ExecutionConfig.tag) as ExecutionConfig?
         return config != null && config.scriptConfig.hasFeature(feature)
@@ -124,7 +136,7 @@ open class RhinoJavaScriptEngine(private val mAndroidContext: android.content.Co
         val provider = AssetAndUrlModuleSourceProvider(mAndroidContext, MODULES_PATH,
                 listOf<URI>(File("/").toURI()))
         RequireBuilder()
-                .setModuleScriptProvider(SoftCachingModuleScriptProvider(provider))
+                .setModuleScriptProvider(CompiledModuleScriptProvider(provider))
                 .setSandboxed(true)
                 .createRequire(context, scope)
                 .install(scope)
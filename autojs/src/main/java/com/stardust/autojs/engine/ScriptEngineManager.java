@@ -98,17 +98,33 @@ public class ScriptEngineManager {
 
     @Nullable
     public ScriptEngine createEngine(String name, int id) {
+        ScriptEngine engine = newEngine(name);
+        if (engine == null) {
+            return null;
+        }
+        attachEngine(engine, id);
+        return engine;
+    }
+
+    /**
+     * 创建引擎但不加入运行中的引擎列表。用于预先初始化、之后再通过{@link #attachEngine}交给执行的引擎。
+     */
+    @Nullable
+    public ScriptEngine newEngine(String name) {
         Supplier<ScriptEngine> s = mEngineSuppliers.get(name);
         if (s == null) {
             return null;
         }
         ScriptEngine engine = s.get();
-        engine.setId(id);
         putProperties(engine);
-        addEngine(engine);
         return engine;
     }
 
+    public void attachEngine(ScriptEngine engine, int id) {
+        engine.setId(id);
+        addEngine(engine);
+    }
+
     @Nullable
     public ScriptEngine createEngineOfSource(ScriptSource source, int id) {
         return createEngine(source.getEngineName(), id);
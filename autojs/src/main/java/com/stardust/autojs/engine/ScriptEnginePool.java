@@ -0,0 +1,154 @@
+package com.stardust.autojs.engine;
+
+import android.util.Log;
+
+import com.stardust.autojs.execution.RunnableScriptExecution;
+import com.stardust.lang.ThreadCompat;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 预热的脚本引擎池。
+ * <p>
+ * 池中保持若干个线程，每个线程上已经创建好引擎并执行完init.js和各内置模块，提交执行时直接交给其中一个线程，
+ * 省去启动线程和初始化引擎的时间。
+ * 每个引擎只会交给一次执行，执行结束后随线程一起销毁，同时会启动一个新的线程补充到池中，
+ * 因此不同脚本之间不会共享全局作用域或任何运行时状态。
+ * 初始化时还没有执行配置，依赖执行配置、工作目录的初始化通过{@link JavaScriptEngine#doOnAcquired(Runnable)}推迟到交给执行之后。
+ * 预热失败后不再补充，直到重新调用{@link #setSize(int)}，避免每次启动脚本都重新预热一个无法初始化的引擎。
+ */
+public class ScriptEnginePool {
+
+    private static final String LOG_TAG = "ScriptEnginePool";
+
+    private final ScriptEngineManager mScriptEngineManager;
+    private final String mEngineName;
+    private final ConcurrentLinkedQueue<WarmThread> mReadyThreads = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger mWarmingCount = new AtomicInteger();
+    private final AtomicInteger mThreadId = new AtomicInteger();
+    private volatile int mSize;
+    private volatile boolean mShutdown = false;
+    private volatile boolean mWarmFailed = false;
+
+    public ScriptEnginePool(ScriptEngineManager scriptEngineManager, String engineName, int size) {
+        mScriptEngineManager = scriptEngineManager;
+        mEngineName = engineName;
+        setSize(size);
+    }
+
+    public int getSize() {
+        return mSize;
+    }
+
+    public void setSize(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("size = " + size);
+        }
+        mSize = size;
+        mWarmFailed = false;
+        fill();
+        while (mReadyThreads.size() > size) {
+            WarmThread thread = mReadyThreads.poll();
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+    }
+
+    public int getReadyCount() {
+        return mReadyThreads.size();
+    }
+
+    /**
+     * 把执行交给一个已经预热好的线程。
+     *
+     * @return 没有可用的预热引擎时返回false，此时应按原来的方式新建线程执行
+     */
+    public boolean offer(RunnableScriptExecution execution) {
+        if (mShutdown) {
+            return false;
+        }
+        WarmThread thread = mReadyThreads.poll();
+        if (thread == null) {
+            fill();
+            return false;
+        }
+        thread.mTask.offer(execution);
+        return true;
+    }
+
+    public void shutdown() {
+        mShutdown = true;
+        WarmThread thread;
+        while ((thread = mReadyThreads.poll()) != null) {
+            thread.interrupt();
+        }
+    }
+
+    private synchronized void fill() {
+        while (!mShutdown && !mWarmFailed && mReadyThreads.size() + mWarmingCount.get() < mSize) {
+            mWarmingCount.incrementAndGet();
+            new WarmThread().start();
+        }
+    }
+
+    private class WarmThread extends ThreadCompat {
+
+        private final ArrayBlockingQueue<RunnableScriptExecution> mTask = new ArrayBlockingQueue<>(1);
+
+        WarmThread() {
+            super("WarmScriptThread-" + mThreadId.getAndIncrement());
+        }
+
+        @Override
+        public void run() {
+            ScriptEngine engine = null;
+            // 预热时降低优先级，避免影响正在运行的脚本
+            setPriority(MIN_PRIORITY);
+            try {
+                engine = mScriptEngineManager.newEngine(mEngineName);
+                if (engine == null) {
+                    throw new ScriptEngineFactory.EngineNotFoundException("engine: " + mEngineName);
+                }
+                engine.init();
+            } catch (Throwable e) {
+                Log.e(LOG_TAG, "failed to prepare engine", e);
+                // 初始化失败时不再补充，避免反复失败
+                if (!mShutdown) {
+                    mWarmFailed = true;
+                }
+                mWarmingCount.decrementAndGet();
+                if (engine != null) {
+                    engine.destroy();
+                }
+                return;
+            }
+            if (mShutdown) {
+                mWarmingCount.decrementAndGet();
+                engine.destroy();
+                return;
+            }
+            mReadyThreads.offer(this);
+            mWarmingCount.decrementAndGet();
+            // 与shutdown()同时进行时，shutdown()可能已经清空了队列，此时自己退出
+            if (mShutdown && mReadyThreads.remove(this)) {
+                engine.destroy();
+                return;
+            }
+            RunnableScriptExecution execution;
+            try {
+                execution = mTask.take();
+            } catch (InterruptedException e) {
+                mReadyThreads.remove(this);
+                engine.destroy();
+                return;
+            }
+            setPriority(NORM_PRIORITY);
+            fill();
+            execution.setPreparedEngine(engine);
+            execution.run();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.stardust.autojs.engine;
+
+import java.util.Arrays;
+
+/**
+ * 记录脚本从提交执行到开始执行用户代码所花的时间，保留最近{@link #CAPACITY}次，用于统计分位数。
+ */
+public class StartupLatencyRecorder {
+
+    public static final int CAPACITY = 256;
+
+    public static class Stats {
+        public final long count;
+        public final long warmCount;
+        public final long coldCount;
+        public final long p50;
+        public final long p90;
+        public final long p99;
+        public final long max;
+
+        Stats(long count, long warmCount, long coldCount, long p50, long p90, long p99, long max) {
+            this.count = count;
+            this.warmCount = warmCount;
+            this.coldCount = coldCount;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.max = max;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{" +
+                    "count=" + count +
+                    ", warmCount=" + warmCount +
+                    ", coldCount=" + coldCount +
+                    ", p50=" + p50 +
+                    ", p90=" + p90 +
+                    ", p99=" + p99 +
+                    ", max=" + max +
+                    '}';
+        }
+    }
+
+    private final long[] mSamples = new long[CAPACITY];
+    private long mCount;
+    private long mWarmCount;
+
+    public synchronized void record(long latencyMillis, boolean warm) {
+        mSamples[(int) (mCount % CAPACITY)] = latencyMillis;
+        mCount++;
+        if (warm) {
+            mWarmCount++;
+        }
+    }
+
+    /**
+     * @return 最近{@link #CAPACITY}次的分位数(毫秒)，计数为全部次数
+     */
+    public synchronized Stats getStats() {
+        int size = (int) Math.min(mCount, CAPACITY);
+        if (size == 0) {
+            return new Stats(0, 0, 0, 0, 0, 0, 0);
+        }
+        long[] samples = Arrays.copyOf(mSamples, size);
+        Arrays.sort(samples);
+        return new Stats(mCount, mWarmCount, mCount - mWarmCount, percentile(samples, 50),
+                percentile(samples, 90), percentile(samples, 99), samples[size - 1]);
+    }
+
+    public synchronized void reset() {
+        mCount = 0;
+        mWarmCount = 0;
+    }
+
+    private static long percentile(long[] sorted, int percent) {
+        int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, index)];
+    }
+}
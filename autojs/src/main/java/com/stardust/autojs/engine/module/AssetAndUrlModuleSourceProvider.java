@@ -24,6 +24,8 @@ import java.util.List;
 
 public class AssetAndUrlModuleSourceProvider extends UrlModuleSourceProvider {
 
+    private static final String ASSET_URI_PREFIX = "file:///android_asset/";
+
     private android.content.Context mContext;
     private final URI mBaseURI;
     private final String mAssetDirPath;
@@ -33,8 +35,9 @@ public class AssetAndUrlModuleSourceProvider extends UrlModuleSourceProvider {
         super(list, null);
         mContext = context;
         mAssetDirPath = assetDirPath;
-        mBaseURI = URI.create("file:///android_asset/" + assetDirPath);
+        mBaseURI = URI.create(ASSET_URI_PREFIX + assetDirPath);
         mAssetManager = mContext.getAssets();
+        ModuleResolutionIndex.INSTANCE.init(context);
     }
 
     @Override
@@ -51,6 +54,28 @@ public class AssetAndUrlModuleSourceProvider extends UrlModuleSourceProvider {
         }
     }
 
+    @Override
+    protected ModuleSource loadFromUri(URI uri, URI base, Object validator) throws IOException, URISyntaxException {
+        String uriString = uri.toString();
+        if (uriString.startsWith(ASSET_URI_PREFIX)) {
+            // 模块索引中记录的内置模块，无法通过URLConnection读取
+            try {
+                return new ModuleSource(new InputStreamReader(mAssetManager.open(uriString.substring(ASSET_URI_PREFIX.length()))),
+                        null, uri, base, validator);
+            } catch (FileNotFoundException e) {
+                return null;
+            }
+        }
+        if (uriString.endsWith(".js")) {
+            // 已经带有扩展名时先按原路径读取，避免多尝试一次不存在的"*.js.js"
+            ModuleSource source = loadFromActualUri(uri, base, validator);
+            if (source != null) {
+                return source;
+            }
+        }
+        return super.loadFromUri(uri, base, validator);
+    }
+
     @Override
     protected Reader getReader(URLConnection urlConnection) throws IOException {
         InputStream stream = urlConnection.getInputStream();
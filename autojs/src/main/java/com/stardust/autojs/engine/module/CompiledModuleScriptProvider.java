@@ -0,0 +1,82 @@
+package com.stardust.autojs.engine.module;
+
+import com.stardust.autojs.engine.CompiledScriptCache;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.NativeArray;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.commonjs.module.ModuleScript;
+import org.mozilla.javascript.commonjs.module.ModuleScriptProvider;
+import org.mozilla.javascript.commonjs.module.provider.ModuleSource;
+import org.mozilla.javascript.commonjs.module.provider.ModuleSourceProvider;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+
+/**
+ * 通过{@link CompiledScriptCache}编译模块的模块脚本提供者。
+ * 按模块id加载时先查询{@link ModuleResolutionIndex}，文件未修改时直接复用解析结果，
+ * 并按索引校验过的修改时间和长度从{@link CompiledScriptCache}取出编译好的脚本，不再读取源码；
+ * 否则重新读取模块源码，但内容未变化时仍然复用其他引擎已经编译好的脚本。
+ */
+public class CompiledModuleScriptProvider implements ModuleScriptProvider {
+
+    private final ModuleSourceProvider mModuleSourceProvider;
+
+    public CompiledModuleScriptProvider(ModuleSourceProvider moduleSourceProvider) {
+        mModuleSourceProvider = moduleSourceProvider;
+    }
+
+    @Override
+    public ModuleScript getModuleScript(Context cx, String moduleId, URI uri, URI base, Scriptable paths) throws Exception {
+        boolean indexed = uri == null && isEmpty(paths);
+        if (indexed) {
+            ModuleScript cached = getIndexedModuleScript(cx, moduleId);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        ModuleSource source = uri == null
+                ? mModuleSourceProvider.loadSource(moduleId, paths, null)
+                : mModuleSourceProvider.loadSource(uri, base, null);
+        if (source == null) {
+            return null;
+        }
+        String path = source.getUri().toString();
+        ModuleResolutionIndex.Entry entry = indexed
+                ? ModuleResolutionIndex.INSTANCE.put("", moduleId, path, source.getBase() == null ? null : source.getBase().toString())
+                : null;
+        // 每个模块在缓存中只占一项：有索引记录时按修改时间和长度，否则按内容哈希
+        Script script = entry != null
+                ? CompiledScriptCache.INSTANCE.compileReaderByStamp(cx, source.getReader(), path,
+                entry.getLastModified(), entry.getLength(), source.getSecurityDomain())
+                : CompiledScriptCache.INSTANCE.compileReader(cx, source.getReader(), path, source.getSecurityDomain());
+        return new ModuleScript(script, source.getUri(), source.getBase());
+    }
+
+    private ModuleScript getIndexedModuleScript(Context cx, String moduleId) throws IOException, URISyntaxException {
+        ModuleResolutionIndex.Entry entry = ModuleResolutionIndex.INSTANCE.resolve("", moduleId);
+        if (entry == null) {
+            return null;
+        }
+        Script script = CompiledScriptCache.INSTANCE.getByStamp(cx, entry.getPath(), entry.getLastModified(), entry.getLength());
+        if (script == null) {
+            // 只有解析结果时，直接从解析到的位置读取，省去逐个尝试候选位置
+            ModuleSource source = mModuleSourceProvider.loadSource(new URI(entry.getPath()),
+                    entry.getBase() == null ? null : new URI(entry.getBase()), null);
+            if (source == null) {
+                return null;
+            }
+            script = CompiledScriptCache.INSTANCE.compileReaderByStamp(cx, source.getReader(), entry.getPath(),
+                    entry.getLastModified(), entry.getLength(), source.getSecurityDomain());
+        }
+        return new ModuleScript(script, new URI(entry.getPath()),
+                entry.getBase() == null ? null : new URI(entry.getBase()));
+    }
+
+    private static boolean isEmpty(Scriptable paths) {
+        return paths == null || (paths instanceof NativeArray && ((NativeArray) paths).getLength() == 0);
+    }
+}
@@ -0,0 +1,233 @@
+package com.stardust.autojs.engine.module
+
+import android.util.Log
+import com.google.gson.Gson
+import com.google.gson.reflect.TypeToken
+import java.io.File
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+/**
+ * 进程内所有引擎共享的模块解析索引。
+ *
+ * 记录"从某个目录require某个id"最终解析到的文件，
+ * 命中时只需要检查文件和解析时查找过的目录的修改时间，而不用再逐个尝试.js、.json、index.js、node_modules等候选路径。
+ * 编译好的脚本由[com.stardust.autojs.engine.CompiledScriptCache]按记录中的修改时间和长度缓存。
+ * 文件或这些目录的修改时间变化(目录中新增、删除了文件)后对应的记录自动失效。
+ * 解析结果会保存到缓存目录中，应用重启后仍然有效；assets中的内置模块以应用的安装更新时间作为整体的有效性标记。
+ */
+object ModuleResolutionIndex {
+
+    private const val LOG_TAG = "ModuleResolutionIndex"
+    private const val FILE_NAME = "module-index.json"
+    private const val ASSET_URI_PREFIX = "file:///android_asset/"
+    private const val SAVE_DELAY_SECONDS = 3L
+    private const val MAX_ENTRIES = 1024
+
+    class Entry(
+            val path: String,
+            val base: String?,
+            val lastModified: Long,
+            val length: Long,
+            /**
+             * 解析时查找过的目录及其修改时间，这些目录中新增或删除文件后同一个id可能解析到其他文件
+             */
+            val dirs: Map<String, Long>?
+    )
+
+    class Stats(
+            val size: Int,
+            val hitCount: Long,
+            val missCount: Long,
+            val invalidationCount: Long
+    ) {
+        override fun toString(): String {
+            return "Stats{size=$size, hitCount=$hitCount, missCount=$missCount, invalidationCount=$invalidationCount}"
+        }
+    }
+
+    private class Persisted(val stamp: Long, val entries: Map<String, Entry>)
+
+    private val mEntries = object : LinkedHashMap<String, Entry>(64, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, Entry>?): Boolean {
+            return size > MAX_ENTRIES
+        }
+    }
+    private val mSaveExecutor = Executors.newSingleThreadScheduledExecutor { r ->
+        Thread(r, "ModuleIndexSaver").apply { isDaemon = true }
+    }
+    private var mFile: File? = null
+    private var mStamp = 0L
+    private var mSaveScheduled = false
+    private var mHitCount = 0L
+    private var mMissCount = 0L
+    private var mInvalidationCount = 0L
+
+    /**
+     * 指定持久化的位置并读取上次保存的索引，只有第一次调用有效
+     */
+    fun init(context: android.content.Context) {
+        synchronized(mEntries) {
+            if (mFile != null) {
+                return
+            }
+            mFile = File(context.cacheDir, FILE_NAME)
+            mStamp = try {
+                context.packageManager.getPackageInfo(context.packageName, 0).lastUpdateTime
+            } catch (e: Exception) {
+                0L
+            }
+        }
+        mSaveExecutor.execute { load() }
+    }
+
+    /**
+     * @param root 发起require的目录，为空字符串时表示不依赖目录的模块id
+     * @return 仍然有效的解析结果，没有记录或已失效时返回null
+     */
+    fun resolve(root: String, id: String): Entry? {
+        val key = key(root, id)
+        val entry = synchronized(mEntries) { mEntries[key] }
+        if (entry == null) {
+            synchronized(mEntries) { mMissCount++ }
+            return null
+        }
+        if (!isValid(entry)) {
+            synchronized(mEntries) {
+                mEntries.remove(key)
+                mInvalidationCount++
+            }
+            scheduleSave()
+            return null
+        }
+        synchronized(mEntries) { mHitCount++ }
+        return entry
+    }
+
+    /**
+     * 供jvm-npm使用，返回解析到的文件路径
+     */
+    fun resolvePath(root: String, id: String): String? {
+        return resolve(root, id)?.path
+    }
+
+    /**
+     * @param dirs 解析时查找过的目录，解析到的文件所在的目录总会被记录
+     */
+    @JvmOverloads
+    fun put(root: String, id: String, path: String, base: String?, dirs: Array<String> = emptyArray()): Entry? {
+        val entry = if (isAsset(path)) {
+            Entry(path, base, 0, 0, emptyMap())
+        } else {
+            val file = toFile(path) ?: return null
+            val modified = LinkedHashMap<String, Long>()
+            for (dir in dirs) {
+                modified[dir] = File(dir).lastModified()
+            }
+            file.parent?.let { modified[it] = File(it).lastModified() }
+            Entry(path, base, file.lastModified(), file.length(), modified)
+        }
+        synchronized(mEntries) {
+            mEntries[key(root, id)] = entry
+        }
+        scheduleSave()
+        return entry
+    }
+
+    fun putPath(root: String, id: String, path: String, dirs: Array<String>) {
+        put(root, id, path, null, dirs)
+    }
+
+    fun getStats(): Stats {
+        synchronized(mEntries) {
+            return Stats(mEntries.size, mHitCount, mMissCount, mInvalidationCount)
+        }
+    }
+
+    fun clear() {
+        synchronized(mEntries) {
+            mEntries.clear()
+        }
+        scheduleSave()
+    }
+
+    private fun isValid(entry: Entry): Boolean {
+        if (isAsset(entry.path)) {
+            return true
+        }
+        val file = toFile(entry.path) ?: return false
+        if (file.lastModified() != entry.lastModified || file.length() != entry.length) {
+            return false
+        }
+        // 不存在的目录lastModified为0，之后被创建时同样会使记录失效
+        val dirs = entry.dirs ?: return false
+        return dirs.all { (dir, lastModified) -> File(dir).lastModified() == lastModified }
+    }
+
+    private fun isAsset(path: String) = path.startsWith(ASSET_URI_PREFIX)
+
+    private fun toFile(path: String): File? {
+        return when {
+            path.startsWith("file:") -> File(path.removePrefix("file:").replace(Regex("^/+"), "/"))
+            path.startsWith("/") -> File(path)
+            else -> null
+        }
+    }
+
+    private fun key(root: String, id: String) = "$root|$id"
+
+    private fun scheduleSave() {
+        synchronized(mEntries) {
+            if (mFile == null || mSaveScheduled) {
+                return
+            }
+            mSaveScheduled = true
+        }
+        mSaveExecutor.schedule({ save() }, SAVE_DELAY_SECONDS, TimeUnit.SECONDS)
+    }
+
+    private fun load() {
+        val file = synchronized(mEntries) { mFile } ?: return
+        if (!file.exists()) {
+            return
+        }
+        try {
+            val persisted: Persisted = Gson().fromJson(file.readText(), object : TypeToken<Persisted>() {}.type)
+                    ?: return
+            if (persisted.stamp != mStamp) {
+                // 应用更新后assets中的模块可能变化
+                file.delete()
+                return
+            }
+            synchronized(mEntries) {
+                for ((key, entry) in persisted.entries) {
+                    if (!mEntries.containsKey(key)) {
+                        mEntries[key] = entry
+                    }
+                }
+            }
+        } catch (e: Exception) {
+            Log.w(LOG_TAG, "failed to load module index", e)
+            file.delete()
+        }
+    }
+
+    private fun save() {
+        val file: File
+        val json: String
+        synchronized(mEntries) {
+            mSaveScheduled = false
+            file = mFile ?: return
+            json = Gson().toJson(Persisted(mStamp, LinkedHashMap(mEntries)))
+        }
+        try {
+            val tmp = File(file.path + ".tmp")
+            tmp.writeText(json)
+            if (!tmp.renameTo(file)) {
+                tmp.delete()
+            }
+        } catch (e: Exception) {
+            Log.w(LOG_TAG, "failed to save module index", e)
+        }
+    }
+}
@@ -19,6 +19,11 @@ data class ExecutionConfig(var workingDirectory: String = "",
 
     private val mArguments = HashMap<String, Any>()
 
+    /**
+     * 调度优先级，见[PRIORITY_INTERACTIVE]和[PRIORITY_BACKGROUND]
+     */
+    var priority: Int = PRIORITY_INTERACTIVE
+
     val arguments: Map<String, Any>
         get() = mArguments
 
@@ -28,7 +33,9 @@ data class ExecutionConfig(var workingDirectory: String = "",
             parcel.readInt(),
             parcel.readLong(),
             parcel.readLong(),
-            parcel.readInt())
+            parcel.readInt()) {
+        priority = parcel.readInt()
+    }
 
     fun setArgument(key: String, `object`: Any) {
         mArguments[key] = `object`
@@ -50,6 +57,7 @@ data class ExecutionConfig(var workingDirectory: String = "",
         if (delay != other.delay) return false
         if (interval != other.interval) return false
         if (loopTimes != other.loopTimes) return false
+        if (priority != other.priority) return false
         if (mArguments != other.mArguments) return false
 
         return true
@@ -62,6 +70,7 @@ data class ExecutionConfig(var workingDirectory: String = "",
         result = 31 * result + delay.hashCode()
         result = 31 * result + interval.hashCode()
         result = 31 * result + loopTimes
+        result = 31 * result + priority
         result = 31 * result + mArguments.hashCode()
         return result
     }
@@ -73,6 +82,7 @@ data class ExecutionConfig(var workingDirectory: String = "",
         parcel.writeLong(delay)
         parcel.writeLong(interval)
         parcel.writeInt(loopTimes)
+        parcel.writeInt(priority)
     }
 
     override fun describeContents(): Int {
@@ -84,6 +94,16 @@ data class ExecutionConfig(var workingDirectory: String = "",
         @JvmStatic
         val tag = "execution.config"
 
+        /**
+         * 用户直接启动的脚本，优先调度
+         */
+        const val PRIORITY_INTERACTIVE = 0
+
+        /**
+         * 定时任务、广播触发等后台脚本
+         */
+        const val PRIORITY_BACKGROUND = 1
+
         @JvmStatic
         val default: ExecutionConfig
             get() = ExecutionConfig()
@@ -1,7 +1,9 @@
 package com.stardust.autojs.execution;
 
+import android.os.SystemClock;
 import android.util.Log;
 
+import com.stardust.autojs.engine.JavaScriptEngine;
 import com.stardust.autojs.engine.ScriptEngine;
 import com.stardust.autojs.engine.ScriptEngineManager;
 import com.stardust.autojs.runtime.exception.ScriptInterruptedException;
@@ -19,20 +21,59 @@ public class RunnableScriptExecution extends ScriptExecution.AbstractScriptExecu
     private static final String TAG = "RunnableJSExecution";
     private ScriptEngine mScriptEngine;
     private ScriptEngineManager mScriptEngineManager;
+    private ScriptEngine mPreparedEngine;
+    private Runnable mOnFinishListener;
+    private final long mCreateTime = SystemClock.uptimeMillis();
 
     public RunnableScriptExecution(ScriptEngineManager manager, ScriptExecutionTask task) {
         super(task);
         mScriptEngineManager = manager;
     }
 
+    /**
+     * 使用一个已经在当前线程初始化好的引擎执行，而不是新建引擎。必须在{@link #run()}之前调用。
+     */
+    public void setPreparedEngine(ScriptEngine engine) {
+        mPreparedEngine = engine;
+    }
+
+    /**
+     * 是否使用了预先初始化的引擎
+     */
+    public boolean isWarmStart() {
+        return mPreparedEngine != null;
+    }
+
+    public long getCreateTime() {
+        return mCreateTime;
+    }
+
+    /**
+     * 设置在{@link #run()}结束(包括出错)时的回调，用于调度器释放名额
+     */
+    public void setOnFinishListener(Runnable onFinishListener) {
+        mOnFinishListener = onFinishListener;
+    }
+
     @Override
     public void run() {
         ThreadCompat.currentThread().setName("ScriptThread-" + getId() + "[" + getSource() + "]");
-        execute();
+        try {
+            execute();
+        } finally {
+            if (mOnFinishListener != null) {
+                mOnFinishListener.run();
+            }
+        }
     }
 
     public Object execute() {
-        mScriptEngine = mScriptEngineManager.createEngineOfSourceOrThrow(getSource(), getId());
+        if (mPreparedEngine != null) {
+            mScriptEngine = mPreparedEngine;
+            mScriptEngineManager.attachEngine(mScriptEngine, getId());
+        } else {
+            mScriptEngine = mScriptEngineManager.createEngineOfSourceOrThrow(getSource(), getId());
+        }
         mScriptEngine.setTag(ExecutionConfig.getTag(), getConfig());
         return execute(mScriptEngine);
     }
@@ -65,7 +106,11 @@ public class RunnableScriptExecution extends ScriptExecution.AbstractScriptExecu
     private void prepare(ScriptEngine engine) {
         engine.setTag(ScriptEngine.TAG_WORKING_DIRECTORY, getConfig().getWorkingDirectory());
         engine.setTag(ScriptEngine.TAG_ENV_PATH, getConfig().getPath());
-        engine.init();
+        if (engine == mPreparedEngine) {
+            ((JavaScriptEngine) engine).onAcquired();
+        } else {
+            engine.init();
+        }
     }
 
     protected Object doExecution(ScriptEngine engine) {
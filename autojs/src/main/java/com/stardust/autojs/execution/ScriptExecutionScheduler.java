@@ -0,0 +1,249 @@
+package com.stardust.autojs.execution;
+
+import android.os.SystemClock;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 脚本执行的调度器。
+ * <p>
+ * 同时运行的脚本数不超过{@link #getMaxConcurrent()}，同一脚本源同时运行的数量不超过{@link #getMaxPerSource()}(为0时不限制)，
+ * 超出的执行按优先级排队，交互式脚本总是先于后台脚本开始；队列满时拒绝新的执行。
+ * 每个脚本会一直占用一个名额直到结束，因此最大并发数应比预期同时运行的常驻脚本数更大。
+ */
+public class ScriptExecutionScheduler {
+
+    public interface Launcher {
+        void launch(RunnableScriptExecution execution);
+    }
+
+    public static final int DEFAULT_MAX_CONCURRENT = 32;
+    public static final int DEFAULT_QUEUE_CAPACITY = 128;
+
+    public static class Stats {
+        public final int running;
+        public final int queued;
+        public final int interactiveQueued;
+        public final int backgroundQueued;
+        public final int peakQueued;
+        public final long startedCount;
+        public final long rejectedCount;
+        public final long averageWaitMillis;
+        public final long maxWaitMillis;
+
+        Stats(int running, int interactiveQueued, int backgroundQueued, int peakQueued, long startedCount,
+              long rejectedCount, long averageWaitMillis, long maxWaitMillis) {
+            this.running = running;
+            this.queued = interactiveQueued + backgroundQueued;
+            this.interactiveQueued = interactiveQueued;
+            this.backgroundQueued = backgroundQueued;
+            this.peakQueued = peakQueued;
+            this.startedCount = startedCount;
+            this.rejectedCount = rejectedCount;
+            this.averageWaitMillis = averageWaitMillis;
+            this.maxWaitMillis = maxWaitMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{" +
+                    "running=" + running +
+                    ", queued=" + queued +
+                    ", interactiveQueued=" + interactiveQueued +
+                    ", backgroundQueued=" + backgroundQueued +
+                    ", peakQueued=" + peakQueued +
+                    ", startedCount=" + startedCount +
+                    ", rejectedCount=" + rejectedCount +
+                    ", averageWaitMillis=" + averageWaitMillis +
+                    ", maxWaitMillis=" + maxWaitMillis +
+                    '}';
+        }
+    }
+
+    private static class Pending {
+        final RunnableScriptExecution execution;
+        final long enqueueTime;
+
+        Pending(RunnableScriptExecution execution, long enqueueTime) {
+            this.execution = execution;
+            this.enqueueTime = enqueueTime;
+        }
+    }
+
+    private final Launcher mLauncher;
+    private final ArrayDeque<Pending> mInteractiveQueue = new ArrayDeque<>();
+    private final ArrayDeque<Pending> mBackgroundQueue = new ArrayDeque<>();
+    private final Map<String, Integer> mRunningPerSource = new HashMap<>();
+    private int mMaxConcurrent = DEFAULT_MAX_CONCURRENT;
+    private int mQueueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private int mMaxPerSource = 0;
+    private int mRunning;
+    private int mPeakQueued;
+    private long mStartedCount;
+    private long mRejectedCount;
+    private long mTotalWaitMillis;
+    private long mMaxWaitMillis;
+
+    public ScriptExecutionScheduler(Launcher launcher) {
+        mLauncher = launcher;
+    }
+
+    /**
+     * 提交一次执行，名额足够时立即启动，否则排队。
+     *
+     * @throws RejectedExecutionException 队列已满
+     */
+    public void submit(RunnableScriptExecution execution) {
+        execution.setOnFinishListener(() -> onFinished(execution));
+        synchronized (this) {
+            if (mInteractiveQueue.isEmpty() && mBackgroundQueue.isEmpty() && canStart(execution)) {
+                onStart(execution, 0);
+            } else {
+                int queued = mInteractiveQueue.size() + mBackgroundQueue.size();
+                if (queued >= mQueueCapacity) {
+                    mRejectedCount++;
+                    throw new RejectedExecutionException("too many pending scripts: " + queued);
+                }
+                queueOf(execution).add(new Pending(execution, SystemClock.uptimeMillis()));
+                mPeakQueued = Math.max(mPeakQueued, queued + 1);
+                return;
+            }
+        }
+        mLauncher.launch(execution);
+    }
+
+    public synchronized int getMaxConcurrent() {
+        return mMaxConcurrent;
+    }
+
+    public void setMaxConcurrent(int maxConcurrent) {
+        if (maxConcurrent <= 0) {
+            throw new IllegalArgumentException("maxConcurrent = " + maxConcurrent);
+        }
+        synchronized (this) {
+            mMaxConcurrent = maxConcurrent;
+        }
+        launchPending();
+    }
+
+    public synchronized int getQueueCapacity() {
+        return mQueueCapacity;
+    }
+
+    public synchronized void setQueueCapacity(int queueCapacity) {
+        if (queueCapacity < 0) {
+            throw new IllegalArgumentException("queueCapacity = " + queueCapacity);
+        }
+        mQueueCapacity = queueCapacity;
+    }
+
+    public synchronized int getMaxPerSource() {
+        return mMaxPerSource;
+    }
+
+    public void setMaxPerSource(int maxPerSource) {
+        if (maxPerSource < 0) {
+            throw new IllegalArgumentException("maxPerSource = " + maxPerSource);
+        }
+        synchronized (this) {
+            mMaxPerSource = maxPerSource;
+        }
+        launchPending();
+    }
+
+    /**
+     * 取消还在排队的执行。调度器不会通知这些执行的监听器，由调用者在处理完之后通知
+     *
+     * @return 被取消的执行
+     */
+    public synchronized List<RunnableScriptExecution> cancelPending() {
+        List<RunnableScriptExecution> executions = new ArrayList<>(mInteractiveQueue.size() + mBackgroundQueue.size());
+        for (Pending pending : mInteractiveQueue) {
+            executions.add(pending.execution);
+        }
+        for (Pending pending : mBackgroundQueue) {
+            executions.add(pending.execution);
+        }
+        mInteractiveQueue.clear();
+        mBackgroundQueue.clear();
+        return executions;
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(mRunning, mInteractiveQueue.size(), mBackgroundQueue.size(), mPeakQueued, mStartedCount,
+                mRejectedCount, mStartedCount == 0 ? 0 : mTotalWaitMillis / mStartedCount, mMaxWaitMillis);
+    }
+
+    private void onFinished(RunnableScriptExecution execution) {
+        synchronized (this) {
+            mRunning--;
+            String key = sourceKey(execution);
+            Integer n = mRunningPerSource.get(key);
+            if (n == null || n <= 1) {
+                mRunningPerSource.remove(key);
+            } else {
+                mRunningPerSource.put(key, n - 1);
+            }
+        }
+        launchPending();
+    }
+
+    private void launchPending() {
+        List<RunnableScriptExecution> executions = new ArrayList<>();
+        synchronized (this) {
+            long now = SystemClock.uptimeMillis();
+            pollStartable(mInteractiveQueue, now, executions);
+            pollStartable(mBackgroundQueue, now, executions);
+        }
+        for (RunnableScriptExecution execution : executions) {
+            mLauncher.launch(execution);
+        }
+    }
+
+    private void pollStartable(ArrayDeque<Pending> queue, long now, List<RunnableScriptExecution> out) {
+        Iterator<Pending> iterator = queue.iterator();
+        while (mRunning < mMaxConcurrent && iterator.hasNext()) {
+            Pending pending = iterator.next();
+            if (canStart(pending.execution)) {
+                iterator.remove();
+                onStart(pending.execution, now - pending.enqueueTime);
+                out.add(pending.execution);
+            }
+        }
+    }
+
+    private boolean canStart(RunnableScriptExecution execution) {
+        if (mRunning >= mMaxConcurrent) {
+            return false;
+        }
+        if (mMaxPerSource <= 0) {
+            return true;
+        }
+        Integer n = mRunningPerSource.get(sourceKey(execution));
+        return n == null || n < mMaxPerSource;
+    }
+
+    private void onStart(RunnableScriptExecution execution, long waitMillis) {
+        mRunning++;
+        String key = sourceKey(execution);
+        Integer n = mRunningPerSource.get(key);
+        mRunningPerSource.put(key, n == null ? 1 : n + 1);
+        mStartedCount++;
+        mTotalWaitMillis += waitMillis;
+        mMaxWaitMillis = Math.max(mMaxWaitMillis, waitMillis);
+    }
+
+    private ArrayDeque<Pending> queueOf(RunnableScriptExecution execution) {
+        return execution.getConfig().getPriority() == ExecutionConfig.PRIORITY_BACKGROUND ? mBackgroundQueue : mInteractiveQueue;
+    }
+
+    private static String sourceKey(RunnableScriptExecution execution) {
+        return execution.getSource().toString();
+    }
+}
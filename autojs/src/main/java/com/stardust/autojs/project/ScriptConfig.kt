@@ -14,5 +14,6 @@ data class ScriptConfig(
 
     companion object {
         val FEATURE_CONTINUATION = "continuation"
+        val FEATURE_COMPILE = "compile"
     }
 }
\ No newline at end of file
@@ -18,8 +18,8 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import dalvik.system.DexClassLoader;
 
@@ -32,7 +32,8 @@ public class AndroidClassLoader extends ClassLoader implements GeneratedClassLoa
 
     private static final String LOG_TAG = "AndroidClassLoader";
     private final ClassLoader parent;
-    private final List<DexClassLoader> mDexClassLoaders = new ArrayList<>();
+    // 多个引擎线程可能同时加载dex
+    private final List<DexClassLoader> mDexClassLoaders = new CopyOnWriteArrayList<>();
     private final File mCacheDir;
 
     /**
@@ -117,6 +118,34 @@ public class AndroidClassLoader extends ClassLoader implements GeneratedClassLoa
         }
     }
 
+    /**
+     * 把Rhino编译生成的类(类名和字节码交替排列，见ClassCompiler#compileToClassFiles)转换为dex并保存到dexFile，
+     * 之后通过{@link #loadDex(File)}加载。dexFile只在转换成功后才会出现。
+     */
+    public void dexClasses(Object[] classes, File dexFile) throws IOException {
+        Log.d(LOG_TAG, "dexClasses: dexFile = " + dexFile);
+        File classFile = generateTempFile(dexFile.getName(), false);
+        File tmpDex = new File(dexFile.getPath() + ".tmp");
+        try {
+            final ZipFile zipFile = new ZipFile(classFile);
+            for (int i = 0; i < classes.length; i += 2) {
+                final ZipParameters parameters = new ZipParameters();
+                parameters.setFileNameInZip(((String) classes[i]).replace('.', '/') + ".class");
+                parameters.setSourceExternalStream(true);
+                zipFile.addStream(new ByteArrayInputStream((byte[]) classes[i + 1]), parameters);
+            }
+            dex(classFile, tmpDex);
+            if (!tmpDex.renameTo(dexFile)) {
+                throw new IOException("failed to rename " + tmpDex + " to " + dexFile);
+            }
+        } catch (ZipException e) {
+            throw new IOException(e);
+        } finally {
+            classFile.delete();
+            tmpDex.delete();
+        }
+    }
+
     private String generateDexFileName(File jar) {
         String message = jar.getPath() + "_" + jar.lastModified();
         return MD5.md5(message);
@@ -133,15 +162,11 @@ public class AndroidClassLoader extends ClassLoader implements GeneratedClassLoa
     }
 
     private DexClassLoader dexJar(File classFile, File dexFile) throws IOException {
-        final Main.Arguments arguments = new Main.Arguments();
-        arguments.fileNames = new String[]{classFile.getPath()};
         boolean isTmpDex = dexFile == null;
         if (isTmpDex) {
             dexFile = generateTempFile("dex-" + classFile.getPath(), true);
         }
-        arguments.outName = dexFile.getPath();
-        arguments.jarOutput = true;
-        Main.run(arguments);
+        dex(classFile, dexFile);
         DexClassLoader loader = loadDex(dexFile);
         if (isTmpDex) {
             dexFile.delete();
@@ -149,6 +174,18 @@ public class AndroidClassLoader extends ClassLoader implements GeneratedClassLoa
         return loader;
     }
 
+    private void dex(File classFile, File dexFile) throws IOException {
+        final Main.Arguments arguments = new Main.Arguments();
+        arguments.fileNames = new String[]{classFile.getPath()};
+        arguments.outName = dexFile.getPath();
+        arguments.jarOutput = true;
+        if (Main.run(arguments) != 0) {
+            throw new IOException("failed to dex " + classFile);
+        }
+        // Android 14起动态加载的dex文件必须是只读的
+        dexFile.setReadOnly();
+    }
+
     /**
      * Does nothing
      *
@@ -173,9 +210,11 @@ public class AndroidClassLoader extends ClassLoader implements GeneratedClassLoa
         Class<?> loadedClass = findLoadedClass(name);
         if (loadedClass == null) {
             for (DexClassLoader dex : mDexClassLoaders) {
-                loadedClass = dex.loadClass(name);
-                if (loadedClass != null) {
+                try {
+                    loadedClass = dex.loadClass(name);
                     break;
+                } catch (ClassNotFoundException ignored) {
+                    // 在下一个dex中查找
                 }
             }
             if (loadedClass == null) {
@@ -0,0 +1,50 @@
+package com.stardust.autojs.runtime;
+
+import androidx.annotation.Nullable;
+
+import com.stardust.util.Supplier;
+
+/**
+ * 在第一次访问时才创建的运行时模块，创建耗时会记录到{@link StartupTrace}中。
+ */
+public class LazyModule<T> {
+
+    private final String mName;
+    private final StartupTrace mTrace;
+    private Supplier<T> mSupplier;
+    private volatile T mModule;
+
+    public LazyModule(String name, StartupTrace trace, Supplier<T> supplier) {
+        mName = name;
+        mTrace = trace;
+        mSupplier = supplier;
+    }
+
+    public T get() {
+        T module = mModule;
+        if (module != null) {
+            return module;
+        }
+        synchronized (this) {
+            if (mModule == null) {
+                long start = System.nanoTime();
+                mModule = mSupplier.get();
+                mSupplier = null;
+                mTrace.record(mName, start);
+            }
+            return mModule;
+        }
+    }
+
+    /**
+     * 返回已经创建的模块，未创建时返回null而不会创建，用于退出时的清理
+     */
+    @Nullable
+    public T peek() {
+        return mModule;
+    }
+
+    public boolean isCreated() {
+        return mModule != null;
+    }
+}
@@ -147,9 +147,6 @@ public class ScriptRuntime {
     @ScriptVariable
     public final UI ui;
 
-    @ScriptVariable
-    public final Dialogs dialogs;
-
     @ScriptVariable
     public Events events;
 
@@ -174,9 +171,6 @@ public class ScriptRuntime {
     @ScriptVariable
     public Threads threads;
 
-    @ScriptVariable
-    public final Floaty floaty;
-
     @ScriptVariable
     public UiHandler uiHandler;
 
@@ -186,18 +180,19 @@ public class ScriptRuntime {
     @ScriptVariable
     public final Files files;
 
-    @ScriptVariable
-    public Sensors sensors;
-
-    @ScriptVariable
-    public final Media media;
-
-    @ScriptVariable
-    public final Plugins plugins;
-
-    private final Detection detection = new Detection();
-    private final MLKit mlKit = new MLKit();
-    private Images images;
+    /**
+     * 以下模块只有少数脚本会用到，在第一次访问时才创建。
+     * JavaScript中仍然可以通过runtime.dialogs等属性访问(对应getDialogs()等方法)。
+     */
+    private final StartupTrace mStartupTrace = new StartupTrace();
+    private final LazyModule<Dialogs> mDialogs;
+    private final LazyModule<Floaty> mFloaty;
+    private final LazyModule<Sensors> mSensors;
+    private final LazyModule<Media> mMedia;
+    private final LazyModule<Plugins> mPlugins;
+    private final LazyModule<Images> mImages;
+    private final LazyModule<Detection> mDetection;
+    private final LazyModule<MLKit> mMlKit;
 
     private static WeakReference<Context> applicationContext;
     private final Map<String, Object> mProperties = new ConcurrentHashMap<>();
@@ -209,6 +204,7 @@ public class ScriptRuntime {
 
 
     protected ScriptRuntime(Builder builder) {
+        long start = System.nanoTime();
         uiHandler = builder.mUiHandler;
         Context context = uiHandler.getContext();
         app = builder.mAppUtils;
@@ -219,27 +215,69 @@ public class ScriptRuntime {
         this.automator = new SimpleActionAutomator(accessibilityBridge, this);
         automator.setScreenMetrics(mScreenMetrics);
         this.info = accessibilityBridge.getInfoProvider();
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-            images = new Images(context, this, builder.mScreenCaptureRequester);
-        }
+        ScreenCaptureRequester screenCaptureRequester = builder.mScreenCaptureRequester;
+        mImages = new LazyModule<>("images", mStartupTrace, () -> new Images(context, this, screenCaptureRequester));
         engines = new Engines(builder.mEngineService, this);
-        dialogs = new Dialogs(this);
+        mDialogs = new LazyModule<>("dialogs", mStartupTrace, () -> new Dialogs(this));
         device = new Device(context);
-        floaty = new Floaty(uiHandler, ui, this);
+        mFloaty = new LazyModule<>("floaty", mStartupTrace, () -> new Floaty(uiHandler, ui, this));
         files = new Files(this);
-        media = new Media(context, this);
-        plugins = new Plugins(context, this);
+        mMedia = new LazyModule<>("media", mStartupTrace, () -> new Media(context, this));
+        mPlugins = new LazyModule<>("plugins", mStartupTrace, () -> new Plugins(context, this));
+        mSensors = new LazyModule<>("sensors", mStartupTrace, () -> new Sensors(context, this));
+        mDetection = new LazyModule<>("yolo", mStartupTrace, Detection::new);
+        mMlKit = new LazyModule<>("mlkit", mStartupTrace, MLKit::new);
+        mStartupTrace.record("runtime", start);
     }
 
     public void init() {
         if (loopers != null)
             throw new IllegalStateException("already initialized");
+        long start = System.nanoTime();
         threads = new Threads(this);
         timers = new Timers(this);
         loopers = new Loopers(this);
         events = new Events(uiHandler.getContext(), accessibilityBridge, this);
         mThread = Thread.currentThread();
-        sensors = new Sensors(uiHandler.getContext(), this);
+        mStartupTrace.record("runtime.init", start);
+    }
+
+    public Dialogs getDialogs() {
+        return mDialogs.get();
+    }
+
+    public Floaty getFloaty() {
+        return mFloaty.get();
+    }
+
+    public Sensors getSensors() {
+        if (loopers == null) {
+            throw new IllegalStateException("not initialized");
+        }
+        return mSensors.get();
+    }
+
+    public Media getMedia() {
+        return mMedia.get();
+    }
+
+    public Plugins getPlugins() {
+        return mPlugins.get();
+    }
+
+    public Detection getYolo() {
+        return mDetection.get();
+    }
+
+    public MLKit getMlkit() {
+        return mMlKit.get();
+    }
+
+    /**
+     * 各模块的初始化耗时
+     */
+    public StartupTrace getStartupTrace() {
+        return mStartupTrace;
     }
 
     public TopLevelScope getTopLevelScope() {
@@ -251,9 +289,6 @@ public class ScriptRuntime {
             throw new IllegalStateException("top level has already exists");
         }
         mTopLevelScope = topLevelScope;
-
-        mTopLevelScope.put("yolo", mTopLevelScope, detection);
-        mTopLevelScope.put("mlkit", mTopLevelScope, mlKit);
     }
 
     public static void setApplicationContext(Context context) {
@@ -406,7 +441,10 @@ public class ScriptRuntime {
         //清除interrupt状态
         ThreadCompat.interrupted();
         //悬浮窗需要第一时间关闭以免出现恶意脚本全屏悬浮窗屏蔽屏幕并且在exit中写死循环的问题
-        ignoresException(floaty::closeAll);
+        ignoresException(() -> {
+            Floaty floaty = mFloaty.peek();
+            if (floaty != null) floaty.closeAll();
+        });
         try {
             events.emit("exit");
         } catch (Throwable e) {
@@ -414,21 +452,35 @@ public class ScriptRuntime {
         }
         ignoresException(threads::shutDownAll);
         ignoresException(events::recycle);
-        ignoresException(media::recycle);
+        ignoresException(() -> {
+            Media media = mMedia.peek();
+            if (media != null) media.recycle();
+        });
         ignoresException(loopers::recycle);
         ignoresException(() -> {
             if (mRootShell != null) mRootShell.exit();
             mRootShell = null;
             mShellSupplier = null;
         });
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+        Images images = mImages.peek();
+        if (images != null) {
             ignoresException(images::releaseScreenCapturer);
+            ignoresException(images::clearTemplateCache);
         }
-        ignoresException(sensors::unregisterAll);
+        ignoresException(() -> {
+            Sensors sensors = mSensors.peek();
+            if (sensors != null) sensors.unregisterAll();
+        });
         ignoresException(timers::recycle);
         ignoresException(ui::recycle);
-        ignoresException(detection::close);
-        ignoresException(mlKit::recycle);
+        ignoresException(() -> {
+            Detection detection = mDetection.peek();
+            if (detection != null) detection.close();
+        });
+        ignoresException(() -> {
+            MLKit mlKit = mMlKit.peek();
+            if (mlKit != null) mlKit.recycle();
+        });
     }
 
     private void ignoresException(Runnable r) {
@@ -439,8 +491,8 @@ public class ScriptRuntime {
         }
     }
 
-    public Object getImages() {
-        return images;
+    public Images getImages() {
+        return mImages.get();
     }
 
     public Object getProperty(String key) {
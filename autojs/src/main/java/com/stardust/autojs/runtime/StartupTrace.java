@@ -0,0 +1,77 @@
+package com.stardust.autojs.runtime;
+
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 记录脚本运行时各个模块的初始化耗时，包括Java层模块的创建和JavaScript层模块的加载。
+ * 懒加载的模块在第一次使用时才会被记录。
+ */
+public class StartupTrace {
+
+    public static class Entry {
+        public final String name;
+        /**
+         * 初始化耗时(微秒)
+         */
+        public final long costMicros;
+        /**
+         * 相对于运行时创建的时间(毫秒)
+         */
+        public final long offsetMillis;
+        public final String thread;
+
+        Entry(String name, long costMicros, long offsetMillis, String thread) {
+            this.name = name;
+            this.costMicros = costMicros;
+            this.offsetMillis = offsetMillis;
+            this.thread = thread;
+        }
+
+        @Override
+        public String toString() {
+            return name + ": " + costMicros / 1000f + "ms (+" + offsetMillis + "ms, " + thread + ")";
+        }
+    }
+
+    private final long mStartTime = SystemClock.uptimeMillis();
+    private final List<Entry> mEntries = new ArrayList<>();
+
+    /**
+     * @param startNanos 开始初始化时{@link System#nanoTime()}的值
+     */
+    public void record(String name, long startNanos) {
+        long cost = (System.nanoTime() - startNanos) / 1000;
+        Entry entry = new Entry(name, cost, SystemClock.uptimeMillis() - mStartTime, Thread.currentThread().getName());
+        synchronized (mEntries) {
+            mEntries.add(entry);
+        }
+    }
+
+    public List<Entry> getEntries() {
+        synchronized (mEntries) {
+            return new ArrayList<>(mEntries);
+        }
+    }
+
+    public long getTotalMicros() {
+        long total = 0;
+        synchronized (mEntries) {
+            for (Entry entry : mEntries) {
+                total += entry.costMicros;
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("StartupTrace{\n");
+        for (Entry entry : getEntries()) {
+            sb.append("  ").append(entry).append('\n');
+        }
+        return sb.append('}').toString();
+    }
+}
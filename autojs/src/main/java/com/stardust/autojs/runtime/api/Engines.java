@@ -1,9 +1,12 @@
 package com.stardust.autojs.runtime.api;
 
 import com.stardust.autojs.ScriptEngineService;
+import com.stardust.autojs.engine.CompiledScriptCache;
 import com.stardust.autojs.engine.JavaScriptEngine;
+import com.stardust.autojs.engine.StartupLatencyRecorder;
 import com.stardust.autojs.execution.ExecutionConfig;
 import com.stardust.autojs.execution.ScriptExecution;
+import com.stardust.autojs.execution.ScriptExecutionScheduler;
 import com.stardust.autojs.runtime.ScriptRuntime;
 import com.stardust.autojs.script.AutoFileSource;
 import com.stardust.autojs.script.JavaScriptFileSource;
@@ -48,6 +51,26 @@ public class Engines {
         mEngineService.stopAllAndToast();
     }
 
+    public StartupLatencyRecorder.Stats getStartupStats() {
+        return mEngineService.getStartupLatencyStats();
+    }
+
+    public CompiledScriptCache.Stats getScriptCacheStats() {
+        return CompiledScriptCache.INSTANCE.getStats();
+    }
+
+    public ScriptExecutionScheduler.Stats getSchedulerStats() {
+        return mEngineService.getSchedulerStats();
+    }
+
+    public void setEnginePoolSize(int size) {
+        mEngineService.setEnginePoolSize(size);
+    }
+
+    public int getEnginePoolSize() {
+        return mEngineService.getEnginePoolSize();
+    }
+
 
     public void setCurrentEngine(JavaScriptEngine engine) {
         if (mScriptEngine != null)
@@ -19,8 +19,13 @@ import android.view.Gravity;
 
 import com.stardust.autojs.annotation.ScriptVariable;
 import com.stardust.autojs.core.image.ColorFinder;
+import com.stardust.autojs.core.image.DirtyRegionDetector;
+import com.stardust.autojs.core.image.FrameRegions;
+import com.stardust.autojs.core.image.ImagePyramid;
 import com.stardust.autojs.core.image.ImageWrapper;
+import com.stardust.autojs.core.image.MultiScaleTemplateMatching;
 import com.stardust.autojs.core.image.TemplateMatching;
+import com.stardust.autojs.core.image.TemplateRegistry;
 import com.stardust.autojs.core.image.capture.ScreenCaptureRequester;
 import com.stardust.autojs.core.image.capture.ScreenCapturer;
 import com.stardust.autojs.core.opencv.Mat;
@@ -34,7 +39,6 @@ import com.stardust.util.ScreenMetrics;
 
 import org.opencv.core.Point;
 import org.opencv.core.Rect;
-import org.opencv.imgproc.Imgproc;
 
 import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
@@ -43,6 +47,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
@@ -62,6 +67,7 @@ public class Images {
     private ImageWrapper mPreCaptureImage;
     private ScreenMetrics mScreenMetrics;
     private volatile boolean mOpenCvInitialized = false;
+    private final TemplateRegistry mTemplateRegistry = new TemplateRegistry();
 
     @ScriptVariable
     public final ColorFinder colorFinder;
@@ -98,21 +104,81 @@ public class Images {
     }
 
     @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
-    public synchronized ImageWrapper captureScreen() {
+    public ImageWrapper captureScreen() {
+        return captureScreen(-1, false);
+    }
+
+    /**
+     * @param timeout 等待画面的超时时间(毫秒)，小于0表示一直等待
+     * @param latest  为true时直接返回当前最新的画面(可能与上次相同)，否则等待一帧新的画面
+     * @return 超时返回null
+     */
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    public synchronized ImageWrapper captureScreen(long timeout, boolean latest) {
+        Image capture = acquireFrame(timeout, latest);
+        if (capture == null) {
+            return null;
+        }
+        if (mPreCaptureImage == null) {
+            mPreCaptureImage = ImageWrapper.wrapImage(capture);
+        }
+        return mPreCaptureImage;
+    }
+
+    /**
+     * 截取一帧画面，但只转换regions指定的区域，每个区域返回一张独立的图片。
+     */
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    public synchronized ImageWrapper[] captureScreenRegions(Rect[] regions, long timeout, boolean latest) {
+        Image capture = acquireFrame(timeout, latest);
+        if (capture == null) {
+            return null;
+        }
+        Bitmap[] bitmaps = FrameRegions.copyRegions(capture, regions);
+        ImageWrapper[] images = new ImageWrapper[bitmaps.length];
+        for (int i = 0; i < bitmaps.length; i++) {
+            images[i] = ImageWrapper.ofBitmap(bitmaps[i]);
+        }
+        return images;
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    public ImageWrapper captureScreenRegion(Rect region) {
+        ImageWrapper[] images = captureScreenRegions(new Rect[]{region}, -1, false);
+        return images == null ? null : images[0];
+    }
+
+    /**
+     * 截取一帧画面并返回与detector上次检测的画面相比发生变化的图块。
+     *
+     * @return 超时返回null，画面没有变化时返回空列表
+     */
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    public synchronized List<Rect> detectChangedTiles(DirtyRegionDetector detector, long timeout, boolean latest) {
+        Image capture = acquireFrame(timeout, latest);
+        if (capture == null) {
+            return null;
+        }
+        return detector.detect(capture);
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    private Image acquireFrame(long timeout, boolean latest) {
         ScriptRuntime.requiresApi(21);
         if (mScreenCapturer == null) {
             throw new SecurityException("No screen capture permission");
         }
-        Image capture = mScreenCapturer.capture();
-        if (capture == mPreCapture && mPreCaptureImage != null) {
-            return mPreCaptureImage;
+        Image capture = mScreenCapturer.capture(timeout, latest ? ScreenCapturer.FRAME_LATEST : ScreenCapturer.FRAME_FRESH);
+        if (capture == null || capture == mPreCapture) {
+            return capture;
         }
+        // 上一帧已被ScreenCapturer关闭，包装它的图片也随之失效
         mPreCapture = capture;
         if (mPreCaptureImage != null) {
             mPreCaptureImage.recycle();
+            mPreCaptureImage = null;
         }
-        mPreCaptureImage = ImageWrapper.ofImage(capture);
-        return mPreCaptureImage;
+        return capture;
     }
 
     @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
@@ -263,6 +329,21 @@ public class Images {
         return Bitmap.createBitmap(origin, 0, 0, width, height, matrix, false);
     }
 
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    public long getCaptureFrameAge() {
+        return mScreenCapturer == null ? -1 : mScreenCapturer.getFrameAge();
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    public long getCaptureFrameCount() {
+        return mScreenCapturer == null ? 0 : mScreenCapturer.getFrameCount();
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    public long getCaptureDroppedFrameCount() {
+        return mScreenCapturer == null ? 0 : mScreenCapturer.getDroppedFrameCount();
+    }
+
     public void releaseScreenCapturer() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP && mScreenCapturer != null) {
             mScreenCapturer.release();
@@ -282,56 +363,94 @@ public class Images {
     }
 
     public Point findImage(ImageWrapper image, ImageWrapper template, float weakThreshold, float threshold, Rect rect, int maxLevel) {
-        initOpenCvIfNeeded();
-        if (image == null)
-            throw new NullPointerException("image = null");
-        if (template == null)
-            throw new NullPointerException("template = null");
-        Mat src = image.getMat();
-        if (rect != null) {
-            src = new Mat(src, rect);
-        }
-        org.opencv.core.Point point = TemplateMatching.fastTemplateMatching(src, template.getMat(), TemplateMatching.MATCHING_METHOD_DEFAULT,
-                weakThreshold, threshold, maxLevel);
-        if (point != null) {
-            if (rect != null) {
-                point.x += rect.x;
-                point.y += rect.y;
-            }
-            point.x = mScreenMetrics.scaleX((int) point.x);
-            point.y = mScreenMetrics.scaleX((int) point.y);
-        }
-        if (src != image.getMat()) {
-            OpenCVHelper.release(src);
-        }
-        return point;
+        return findImage(image, template, weakThreshold, threshold, rect, maxLevel, null);
+    }
+
+    /**
+     * @param scaleOptions 不为null时进行多尺度匹配，见{@link MultiScaleTemplateMatching}
+     */
+    public Point findImage(ImageWrapper image, ImageWrapper template, float weakThreshold, float threshold, Rect rect, int maxLevel,
+                           MultiScaleTemplateMatching.Options scaleOptions) {
+        List<TemplateMatching.Match> result = matchTemplate(image, template, weakThreshold, threshold, rect, maxLevel, 1, scaleOptions);
+        return result.isEmpty() ? null : result.get(0).point;
     }
 
     public List<TemplateMatching.Match> matchTemplate(ImageWrapper image, ImageWrapper template, float weakThreshold, float threshold, Rect rect, int maxLevel, int limit) {
+        return matchTemplate(image, template, weakThreshold, threshold, rect, maxLevel, limit, null);
+    }
+
+    public List<TemplateMatching.Match> matchTemplate(ImageWrapper image, ImageWrapper template, float weakThreshold, float threshold, Rect rect, int maxLevel, int limit,
+                                                      MultiScaleTemplateMatching.Options scaleOptions) {
+        return matchTemplates(image, new ImageWrapper[]{template}, weakThreshold, threshold, rect, maxLevel, limit, scaleOptions).get(0);
+    }
+
+    public List<List<TemplateMatching.Match>> matchTemplates(ImageWrapper image, ImageWrapper[] templates, float weakThreshold, float threshold, Rect rect, int maxLevel, int limit) {
+        return matchTemplates(image, templates, weakThreshold, threshold, rect, maxLevel, limit, null);
+    }
+
+    /**
+     * 在同一张图片中依次查找多个模板。图片的金字塔只生成一次，在所有模板之间共享；
+     * 模板的金字塔由{@link TemplateRegistry}缓存，之后再次查找同一个模板时不会重新生成。
+     *
+     * @param scaleOptions 不为null时进行多尺度匹配，结果中带有匹配到的缩放比例和旋转角度
+     * @return 与templates一一对应的匹配结果
+     */
+    public List<List<TemplateMatching.Match>> matchTemplates(ImageWrapper image, ImageWrapper[] templates, float weakThreshold, float threshold, Rect rect, int maxLevel, int limit,
+                                                             MultiScaleTemplateMatching.Options scaleOptions) {
         initOpenCvIfNeeded();
         if (image == null)
             throw new NullPointerException("image = null");
-        if (template == null)
-            throw new NullPointerException("template = null");
+        for (ImageWrapper template : templates) {
+            if (template == null)
+                throw new NullPointerException("template = null");
+        }
         Mat src = image.getMat();
         if (rect != null) {
             src = new Mat(src, rect);
         }
-        List<TemplateMatching.Match> result = TemplateMatching.fastTemplateMatching(src, template.getMat(), Imgproc.TM_CCOEFF_NORMED,
-                weakThreshold, threshold, maxLevel, limit);
-        for (TemplateMatching.Match match : result) {
-            Point point = match.point;
-            if (rect != null) {
-                point.x += rect.x;
-                point.y += rect.y;
+        ImagePyramid srcPyramid = new ImagePyramid(src);
+        List<List<TemplateMatching.Match>> results = new ArrayList<>(templates.length);
+        try {
+            for (ImageWrapper template : templates) {
+                List<TemplateMatching.Match> result;
+                if (scaleOptions == null) {
+                    ImagePyramid templatePyramid = mTemplateRegistry.obtain(template);
+                    try {
+                        result = TemplateMatching.fastTemplateMatching(srcPyramid, templatePyramid,
+                                TemplateMatching.MATCHING_METHOD_DEFAULT, weakThreshold, threshold, maxLevel, limit);
+                    } finally {
+                        templatePyramid.release();
+                    }
+                } else {
+                    result = MultiScaleTemplateMatching.fastTemplateMatching(srcPyramid, template.getMat(), scaleOptions,
+                            TemplateMatching.MATCHING_METHOD_DEFAULT, weakThreshold, threshold, maxLevel, limit);
+                }
+                for (TemplateMatching.Match match : result) {
+                    Point point = match.point;
+                    if (rect != null) {
+                        point.x += rect.x;
+                        point.y += rect.y;
+                    }
+                    point.x = mScreenMetrics.scaleX((int) point.x);
+                    point.y = mScreenMetrics.scaleX((int) point.y);
+                }
+                results.add(result);
+            }
+        } finally {
+            srcPyramid.release();
+            if (src != image.getMat()) {
+                OpenCVHelper.release(src);
             }
-            point.x = mScreenMetrics.scaleX((int) point.x);
-            point.y = mScreenMetrics.scaleX((int) point.y);
-        }
-        if (src != image.getMat()) {
-            OpenCVHelper.release(src);
         }
-        return result;
+        return results;
+    }
+
+    public TemplateRegistry getTemplateRegistry() {
+        return mTemplateRegistry;
+    }
+
+    public void clearTemplateCache() {
+        mTemplateRegistry.clear();
     }
 
     public Mat newMat() {
@@ -10,7 +10,8 @@ import com.stardust.autojs.core.looper.Timer;
 import com.stardust.autojs.core.looper.TimerThread;
 import com.stardust.autojs.runtime.ScriptBridges;
 import com.stardust.autojs.runtime.ScriptRuntime;
-import com.stardust.concurrent.VolatileBox;
+
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by Stardust on 2017/7/21.
@@ -20,7 +21,7 @@ public class Timers {
 
     private static final String LOG_TAG = "Timers";
 
-    private VolatileBox<Long> mMaxCallbackUptimeMillisForAllThreads = new VolatileBox<>(0L);
+    private AtomicLong mMaxCallbackUptimeMillisForAllThreads = new AtomicLong();
     private Threads mThreads;
     private Timer mMainTimer;
     private Timer mUiTimer;
@@ -36,7 +37,7 @@ public class Timers {
         return mMainTimer;
     }
 
-    VolatileBox<Long> getMaxCallbackUptimeMillisForAllThreads() {
+    AtomicLong getMaxCallbackUptimeMillisForAllThreads() {
         return mMaxCallbackUptimeMillisForAllThreads;
     }
 
@@ -27,12 +27,17 @@ public abstract class JavaScriptSource extends ScriptSource {
     public static final int EXECUTION_MODE_NORMAL = 0;
     public static final int EXECUTION_MODE_UI = 0x00000001;
     public static final int EXECUTION_MODE_AUTO = 0x00000002;
+    /**
+     * 编译为字节码执行，见{@link com.stardust.autojs.engine.DexScriptCache}
+     */
+    public static final int EXECUTION_MODE_COMPILE = 0x00000004;
 
     private static final String LOG_TAG = "JavaScriptSource";
 
     private static final Map<String, Integer> EXECUTION_MODES = new MapBuilder<String, Integer>()
             .put("ui", EXECUTION_MODE_UI)
             .put("auto", EXECUTION_MODE_AUTO)
+            .put("compile", EXECUTION_MODE_COMPILE)
             .build();
     private static final int PARSING_MAX_TOKEN = 300;
 
@@ -0,0 +1,79 @@
+package com.google.ocr
+
+import com.stardust.util.FnvHash
+
+/**
+ * 识别区域的像素哈希，只使用基本类型数组，可以直接在JVM上测试。
+ *
+ * - [checksum]是所有像素的精确哈希，用于判断区域的像素是否完全没有变化；
+ * - [differenceHash]是感知哈希(dHash)：把区域缩小为[HASH_SIZE]行、[HASH_SIZE]+1列的灰度网格，
+ *   每一位表示同一行中相邻两格的明暗关系，对缩放、压缩和轻微的颜色变化不敏感。
+ */
+object ImageHash {
+
+    const val HASH_SIZE = 16
+    const val HASH_BITS = HASH_SIZE * HASH_SIZE
+
+    /**
+     * 像素(ARGB)的FNV-1a哈希，包含宽高
+     */
+    @JvmStatic
+    fun checksum(pixels: IntArray, width: Int, height: Int): Long {
+        var hash = FnvHash.OFFSET_BASIS
+        hash = FnvHash.hash(hash, width.toLong())
+        hash = FnvHash.hash(hash, height.toLong())
+        for (i in 0 until width * height) {
+            hash = FnvHash.hash(hash, pixels[i].toLong() and 0xffffffffL)
+        }
+        return hash
+    }
+
+    /**
+     * 计算[HASH_BITS]位的差异哈希
+     */
+    @JvmStatic
+    fun differenceHash(pixels: IntArray, width: Int, height: Int): LongArray {
+        val cols = HASH_SIZE + 1
+        val sums = LongArray(cols * HASH_SIZE)
+        val counts = IntArray(cols * HASH_SIZE)
+        val colOf = IntArray(width) { (it.toLong() * cols / width).toInt() }
+        for (y in 0 until height) {
+            val rowOffset = (y.toLong() * HASH_SIZE / height).toInt() * cols
+            val pixelOffset = y * width
+            for (x in 0 until width) {
+                val c = pixels[pixelOffset + x]
+                val luminance = (((c shr 16) and 0xff) * 299 + ((c shr 8) and 0xff) * 587 + (c and 0xff) * 114) / 1000
+                val cell = rowOffset + colOf[x]
+                sums[cell] += luminance.toLong()
+                counts[cell]++
+            }
+        }
+        val hash = LongArray(HASH_BITS / 64)
+        for (row in 0 until HASH_SIZE) {
+            for (col in 0 until HASH_SIZE) {
+                val cell = row * cols + col
+                if (average(sums, counts, cell) < average(sums, counts, cell + 1)) {
+                    val bit = row * HASH_SIZE + col
+                    hash[bit / 64] = hash[bit / 64] or (1L shl (bit % 64))
+                }
+            }
+        }
+        return hash
+    }
+
+    /**
+     * 两个哈希不同的位数
+     */
+    @JvmStatic
+    fun distance(a: LongArray, b: LongArray): Int {
+        var distance = 0
+        for (i in a.indices) {
+            distance += java.lang.Long.bitCount(a[i] xor b[i])
+        }
+        return distance
+    }
+
+    private fun average(sums: LongArray, counts: IntArray, cell: Int): Long {
+        return if (counts[cell] == 0) 0 else sums[cell] * 16 / counts[cell]
+    }
+}
@@ -2,6 +2,7 @@ package com.google.ocr
 
 import android.graphics.Bitmap
 import android.graphics.Rect
+import com.google.android.gms.tasks.Task
 import com.google.android.gms.tasks.Tasks
 import com.google.mlkit.vision.common.InputImage
 import com.google.mlkit.vision.text.Text
@@ -9,12 +10,23 @@ import com.google.mlkit.vision.text.TextRecognition
 import com.google.mlkit.vision.text.chinese.ChineseTextRecognizerOptions
 import com.google.mlkit.vision.text.latin.TextRecognizerOptions
 import com.stardust.autojs.core.image.ImageWrapper
+import com.stardust.autojs.runtime.exception.ScriptInterruptedException
 
 @Suppress("unused")
 class MLKit {
     private lateinit var recognizer: com.google.mlkit.vision.text.TextRecognizer
     private var isLoaded = false
 
+    // 按区域缓存识别结果，区域像素没有变化时不再识别
+    private val cache = OcrCache<Text>()
+    @Volatile
+    private var cacheEnabled = true
+
+    /**
+     * 识别区域的像素和哈希，用于查询缓存
+     */
+    private class Region(val key: String, val checksum: Long, val hash: LongArray)
+
     /**
      * 初始化OCR识别器
      * @param language 语言代码，默认为拉丁字母，"zh"表示中文
@@ -27,6 +39,46 @@ class MLKit {
         }
         recognizer = TextRecognition.getClient(options)
         isLoaded = true
+        cache.clear()
+    }
+
+    /**
+     * 开启或关闭识别结果缓存，默认开启
+     */
+    fun setCacheEnabled(enabled: Boolean) {
+        cacheEnabled = enabled
+        if (!enabled) cache.clear()
+    }
+
+    /**
+     * 设置识别结果缓存
+     * @param maxEntries 最多缓存的结果数
+     * @param ttlMillis 结果的有效期(毫秒)，小于等于0时不过期
+     * @param maxDistance 区域像素变化时，感知哈希相差不超过该位数的缓存结果仍然可以使用；为0时要求完全相同，默认小于0，只在像素完全没有变化时使用缓存
+     */
+    @JvmOverloads
+    fun setCacheOptions(
+        maxEntries: Int,
+        ttlMillis: Long = OcrCache.DEFAULT_TTL_MILLIS,
+        maxDistance: Int = OcrCache.DEFAULT_MAX_DISTANCE
+    ) {
+        cache.configure(maxEntries, ttlMillis, maxDistance)
+    }
+
+    fun clearCache() {
+        cache.clear()
+    }
+
+    /**
+     * 缓存命中和未命中的次数
+     */
+    fun getCacheStats(): Map<String, Long> {
+        return mapOf(
+            "unchanged" to cache.getUnchangedHitCount(),
+            "perceptual" to cache.getPerceptualHitCount(),
+            "misses" to cache.getMissCount(),
+            "size" to cache.size().toLong()
+        )
     }
 
     fun detect(image: ImageWrapper): Results {
@@ -34,15 +86,21 @@ class MLKit {
     }
 
     /**
-     * 执行OCR识别
+     * 执行OCR识别。整张图片的识别不使用缓存，计算哈希要把整张图片的像素读到数组中(1440p约18MB)，
+     * 而整屏截图很少完全不变
      * @param bitmap 要识别的位图
      * @return Results对象包含识别结果
      */
     fun detect(bitmap: Bitmap): Results {
         if (!isLoaded) init()
+        return recognize(bitmap, null)
+    }
+
+    private fun recognize(bitmap: Bitmap, region: Region?): Results {
         val image = InputImage.fromBitmap(bitmap, 0)
         return try {
             val visionText = Tasks.await(recognizer.process(image))
+            region?.let { cache(it, visionText) }
             Results(visionText)
         } catch (e: Exception) {
             Results(error = e.message ?: "未知错误")
@@ -62,18 +120,109 @@ class MLKit {
             return Results(error = "无效的识别区域: $rect,图片尺寸: ${bitmap.width}x${bitmap.height}")
         }
 
+        val region = region(bitmap, rect)
+        region?.let { cached(it) }?.let { return Results(it, rect) }
+
         val croppedBitmap = try {
             Bitmap.createBitmap(bitmap, rect.left, rect.top, rect.width(), rect.height())
         } catch (e: Exception) {
             return Results(error = "区域裁剪失败: ${e.message}")
         }
 
-        val results = detect(croppedBitmap)
+        val results = recognize(croppedBitmap, region)
         croppedBitmap.recycle()
         if (results.hasError()) return results
         return  Results(results.raw, rect, results.error)
     }
 
+    /**
+     * 批量识别多个区域。先查询缓存，未命中的区域同时提交给识别器，全部完成后一起返回
+     * @param rects 识别区域
+     * @return 与rects一一对应的识别结果，单个区域失败时对应的结果带有错误信息
+     */
+    fun detectAll(bitmap: Bitmap, rects: Array<Rect>): Array<Results> {
+        if (!isLoaded) init()
+        val bounds = Rect(0, 0, bitmap.width, bitmap.height)
+        val results = arrayOfNulls<Results>(rects.size)
+        val tasks = ArrayList<Task<Text>>()
+        val pending = ArrayList<Int>()
+        val regions = arrayOfNulls<Region>(rects.size)
+        val croppedBitmaps = ArrayList<Bitmap>()
+        try {
+            for ((i, rect) in rects.withIndex()) {
+                if (rect.isEmpty || !bounds.contains(rect)) {
+                    results[i] = Results(error = "无效的识别区域: $rect,图片尺寸: ${bitmap.width}x${bitmap.height}")
+                    continue
+                }
+                val region = region(bitmap, rect)
+                regions[i] = region
+                val cached = region?.let { cached(it) }
+                if (cached != null) {
+                    results[i] = Results(cached, rect)
+                    continue
+                }
+                val cropped = try {
+                    Bitmap.createBitmap(bitmap, rect.left, rect.top, rect.width(), rect.height())
+                } catch (e: Exception) {
+                    results[i] = Results(error = "区域裁剪失败: ${e.message}")
+                    continue
+                }
+                if (cropped !== bitmap) croppedBitmaps.add(cropped)
+                tasks.add(recognizer.process(InputImage.fromBitmap(cropped, 0)))
+                pending.add(i)
+            }
+            if (tasks.isNotEmpty()) {
+                try {
+                    Tasks.await(Tasks.whenAllComplete(tasks))
+                } catch (e: InterruptedException) {
+                    throw ScriptInterruptedException()
+                } catch (e: Exception) {
+                    // 单个任务的错误在下面分别处理
+                }
+            }
+            for ((n, i) in pending.withIndex()) {
+                val task = tasks[n]
+                results[i] = if (task.isSuccessful) {
+                    regions[i]?.let { cache(it, task.result) }
+                    Results(task.result, rects[i])
+                } else {
+                    Results(error = task.exception?.message ?: "未知错误")
+                }
+            }
+        } finally {
+            croppedBitmaps.forEach { it.recycle() }
+        }
+        return Array(rects.size) { results[it] ?: Results(error = "未知错误") }
+    }
+
+    fun detectAll(image: ImageWrapper, rects: Array<Rect>): Array<Results> {
+        return detectAll(image.bitmap, rects)
+    }
+
+    /**
+     * 读取区域的像素并计算哈希，缓存关闭时返回null
+     */
+    private fun region(bitmap: Bitmap, rect: Rect): Region? {
+        if (!cacheEnabled) return null
+        val width = rect.width()
+        val height = rect.height()
+        val pixels = IntArray(width * height)
+        bitmap.getPixels(pixels, 0, width, rect.left, rect.top, width, height)
+        return Region(
+            "${rect.left},${rect.top},${rect.right},${rect.bottom}",
+            ImageHash.checksum(pixels, width, height),
+            ImageHash.differenceHash(pixels, width, height)
+        )
+    }
+
+    private fun cached(region: Region): Text? {
+        return cache.get(region.key, region.checksum, region.hash, System.currentTimeMillis())
+    }
+
+    private fun cache(region: Region, text: Text) {
+        if (cacheEnabled) cache.put(region.key, region.checksum, region.hash, text, System.currentTimeMillis())
+    }
+
     /**
      * 执行局部区域OCR识别(ImageWrapper版本)
      * @param image 要识别的图像
@@ -88,6 +237,7 @@ class MLKit {
      * 释放识别器资源
      */
     fun recycle() {
+        cache.clear()
         if (!isLoaded) return
         recognizer.close()
         isLoaded = false
@@ -0,0 +1,157 @@
+package com.google.ocr
+
+/**
+ * 按识别区域缓存OCR结果，条数和有效期都有上限，超出条数时淘汰最久未使用的结果。
+ *
+ * 查询时先比较区域上一次识别时的精确哈希，像素没有变化则直接返回上次的结果。
+ * maxDistance不小于0时，还会在该区域缓存的结果中查找感知哈希相差不超过maxDistance位的结果，
+ * 用于区域在几种状态之间来回切换的情况(例如状态栏的图标)，为0时要求感知哈希完全相同。
+ * 感知哈希相同不代表文字相同，因此默认只比较精确哈希，需要时再开启。
+ */
+class OcrCache<V>(
+    maxEntries: Int = DEFAULT_MAX_ENTRIES,
+    ttlMillis: Long = DEFAULT_TTL_MILLIS,
+    maxDistance: Int = DEFAULT_MAX_DISTANCE
+) {
+
+    private class Key(val region: String, val hash: LongArray) {
+        override fun equals(other: Any?): Boolean {
+            return other is Key && other.region == region && other.hash.contentEquals(hash)
+        }
+
+        override fun hashCode(): Int = region.hashCode() * 31 + hash.contentHashCode()
+    }
+
+    private class Entry<V>(val key: Key, val checksum: Long, val value: V, val timeMillis: Long)
+
+    var maxEntries = maxEntries
+        private set
+    var ttlMillis = ttlMillis
+        private set
+    var maxDistance = maxDistance
+        private set
+
+    private val entries = object : LinkedHashMap<Key, Entry<V>>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Key, Entry<V>>): Boolean {
+            return size > this@OcrCache.maxEntries
+        }
+    }
+
+    // 每个区域最后一次识别的结果
+    private val lastEntries = object : LinkedHashMap<String, Entry<V>>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, Entry<V>>): Boolean {
+            return size > this@OcrCache.maxEntries
+        }
+    }
+
+    private var unchangedHits = 0L
+    private var perceptualHits = 0L
+    private var misses = 0L
+
+    @Synchronized
+    fun configure(maxEntries: Int, ttlMillis: Long, maxDistance: Int) {
+        require(maxEntries >= 1) { "缓存条数必须大于0" }
+        this.maxEntries = maxEntries
+        this.ttlMillis = ttlMillis
+        this.maxDistance = maxDistance
+        trim(entries)
+        trim(lastEntries)
+    }
+
+    /**
+     * @param region 区域的标识
+     * @param checksum 区域像素的精确哈希
+     * @param hash 区域像素的感知哈希
+     * @return 缓存的结果，没有时返回null
+     */
+    @Synchronized
+    fun get(region: String, checksum: Long, hash: LongArray, nowMillis: Long): V? {
+        val last = lastEntries[region]
+        if (last != null && !isExpired(last, nowMillis) && last.checksum == checksum) {
+            // 同时更新按感知哈希缓存的LRU顺序
+            entries[last.key]
+            unchangedHits++
+            return last.value
+        }
+        findSimilar(region, hash, nowMillis)?.let {
+            lastEntries[region] = it
+            perceptualHits++
+            return it.value
+        }
+        misses++
+        return null
+    }
+
+    @Synchronized
+    fun put(region: String, checksum: Long, hash: LongArray, value: V, nowMillis: Long) {
+        val entry = Entry(Key(region, hash), checksum, value, nowMillis)
+        entries[entry.key] = entry
+        lastEntries[region] = entry
+    }
+
+    @Synchronized
+    fun clear() {
+        entries.clear()
+        lastEntries.clear()
+    }
+
+    @Synchronized
+    fun size(): Int = entries.size
+
+    @Synchronized
+    fun getUnchangedHitCount(): Long = unchangedHits
+
+    @Synchronized
+    fun getPerceptualHitCount(): Long = perceptualHits
+
+    @Synchronized
+    fun getMissCount(): Long = misses
+
+    private fun findSimilar(region: String, hash: LongArray, nowMillis: Long): Entry<V>? {
+        if (maxDistance < 0) {
+            return null
+        }
+        val exact = entries[Key(region, hash)]
+        if (exact != null) {
+            if (!isExpired(exact, nowMillis)) {
+                return exact
+            }
+            entries.remove(exact.key)
+        }
+        if (maxDistance == 0) {
+            return null
+        }
+        var best: Entry<V>? = null
+        var bestDistance = Int.MAX_VALUE
+        for (entry in entries.values) {
+            if (entry.key.region != region || isExpired(entry, nowMillis)) {
+                continue
+            }
+            val distance = ImageHash.distance(entry.key.hash, hash)
+            if (distance <= maxDistance && distance < bestDistance) {
+                best = entry
+                bestDistance = distance
+            }
+        }
+        // 通过get访问，更新LRU顺序
+        return best?.let { entries[it.key] }
+    }
+
+    private fun isExpired(entry: Entry<V>, nowMillis: Long): Boolean {
+        return ttlMillis > 0 && nowMillis - entry.timeMillis > ttlMillis
+    }
+
+    private fun <K> trim(map: LinkedHashMap<K, Entry<V>>) {
+        val iterator = map.entries.iterator()
+        while (map.size > maxEntries && iterator.hasNext()) {
+            iterator.next()
+            iterator.remove()
+        }
+    }
+
+    companion object {
+        const val DEFAULT_MAX_ENTRIES = 256
+        const val DEFAULT_TTL_MILLIS = 60_000L
+        const val DEFAULT_MAX_DISTANCE = -1
+    }
+}
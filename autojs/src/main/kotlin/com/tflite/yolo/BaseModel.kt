@@ -2,8 +2,10 @@ package org.autojs.autojs.core.yolo
 
 import android.graphics.Bitmap
 import com.stardust.autojs.core.image.ImageWrapper
+import com.stardust.autojs.runtime.exception.ScriptInterruptedException
 import com.tflite.yolo.FileUtil
 import com.tflite.yolo.ImageProcessor
+import com.tflite.yolo.InferenceScheduler
 import org.mozilla.javascript.NativeObject
 import org.tensorflow.lite.DataType
 import org.tensorflow.lite.InterpreterApi
@@ -15,18 +17,42 @@ import java.io.BufferedReader
 import java.io.InputStreamReader
 import java.nio.ByteBuffer
 import java.nio.MappedByteBuffer
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.TimeUnit
 import java.util.concurrent.locks.ReentrantLock
 
 abstract class BaseModel {
 
-    // 线程保护
+    /**
+     * 池中的解释器和它的输出缓冲区
+     */
+    private class PooledInterpreter(val interpreter: InterpreterApi, val output: TensorBuffer)
+
+    // 线程保护，用于加载和关闭模型
     protected val threadLock = ReentrantLock()
 
     // TFLite组件
     protected lateinit var interpreter: InterpreterApi
     private lateinit var metadataExtractor: MetadataExtractor
     private var gpuDelegate: GpuDelegate? = null
-    private lateinit var outputBuffer: TensorBuffer
+    private var useGpu = false
+
+    // 解释器池，多个线程可以同时推理，每个解释器同一时间只被一个线程使用
+    @Volatile
+    private var interpreterPool = ArrayBlockingQueue<PooledInterpreter>(1)
+    private var pooledInterpreters: List<PooledInterpreter> = emptyList()
+    private val pooledDelegates = ArrayList<GpuDelegate>()
+    @Volatile
+    private var lastInterpreter: InterpreterApi? = null
+    @Volatile
+    private var closed = false
+    private var configuredInterpreterCount = 1
+
+    /**
+     * 模型输出的元素个数
+     */
+    protected var outputSize = 0
+        private set
 
     // 图像处理
     protected var inputWidth = 640
@@ -47,6 +73,7 @@ abstract class BaseModel {
             val model = options["model"] as? String
             val labels = options["labels"] as? String
             val isGPU = options["gpu"] as? Boolean == true
+            (options["interpreters"] as? Number)?.let { setInterpreterCount(it.toInt()) }
             if (model.isNullOrBlank()) {
                 throw IllegalArgumentException("模型路径不能为空")
             }
@@ -61,9 +88,20 @@ abstract class BaseModel {
      * 获取最后一次推理的运行时间（毫秒）
      */
     fun runtime(): Long {
-        return interpreter.lastNativeInferenceDurationNanoseconds / 1_000_000
+        return (lastInterpreter ?: interpreter).lastNativeInferenceDurationNanoseconds / 1_000_000
     }
 
+    /**
+     * 设置解释器池的大小，即可以同时推理的线程数，在下次加载模型时生效。
+     * 每个解释器都会占用一份模型的显存/内存
+     */
+    fun setInterpreterCount(count: Int) {
+        require(count in 1..MAX_INTERPRETERS) { "解释器数量必须在1到${MAX_INTERPRETERS}之间" }
+        configuredInterpreterCount = count
+    }
+
+    fun getInterpreterCount(): Int = pooledInterpreters.size
+
     /**
      * 加载模型
      * @param path 模型文件路径
@@ -78,6 +116,7 @@ abstract class BaseModel {
      * @param isGPU 是否使用GPU
      */
     fun loadModel(path: String, isGPU: Boolean) {
+        useGpu = isGPU
         options = getOptions(isGPU)
         loadModel(path, options)
     }
@@ -90,7 +129,22 @@ abstract class BaseModel {
         try {
             val modelBuffer: MappedByteBuffer = FileUtil.loadModel(path)
             metadataExtractor = MetadataExtractor(modelBuffer)
+            releaseInterpreters()
+            closed = false
             interpreter = InterpreterApi.create(modelBuffer, options)
+            val interpreters = arrayListOf(interpreter)
+            for (i in 1 until configuredInterpreterCount) {
+                val extraOptions = getExtraOptions(options) ?: break
+                interpreters.add(InterpreterApi.create(modelBuffer, extraOptions))
+            }
+            val outputShape = interpreter.getOutputTensor(0).shape()
+            outputSize = outputShape.fold(1) { size, dim -> size * dim }
+            pooledInterpreters = interpreters.map {
+                PooledInterpreter(it, TensorBuffer.createFixedSize(outputShape, DataType.FLOAT32))
+            }
+            interpreterPool = ArrayBlockingQueue<PooledInterpreter>(pooledInterpreters.size).apply {
+                addAll(pooledInterpreters)
+            }
             initProcessors()
             loadLabels(null)
         } catch (e: Exception) {
@@ -129,12 +183,11 @@ abstract class BaseModel {
         return labels.toTypedArray()
     }
 
-    fun close() {
+    open fun close() {
         threadLock.lock()
         try {
-            if (::interpreter.isInitialized) {
-                interpreter.close()
-            }
+            closed = true
+            releaseInterpreters()
             gpuDelegate?.close()
             gpuDelegate = null
             if (::imageProcessor.isInitialized) {
@@ -154,6 +207,53 @@ abstract class BaseModel {
         }
     }
 
+    /**
+     * 等待所有解释器归还到池中后关闭它们
+     */
+    private fun releaseInterpreters() {
+        val pool = interpreterPool
+        val interpreters = pooledInterpreters
+        pooledInterpreters = emptyList()
+        interpreterPool = ArrayBlockingQueue(1)
+        var returned = 0
+        var interrupted = false
+        while (returned < interpreters.size) {
+            try {
+                pool.take()
+                returned++
+            } catch (e: InterruptedException) {
+                // 正在使用的解释器不能关闭，继续等待它推理结束
+                interrupted = true
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt()
+        }
+        interpreters.forEach { it.interpreter.close() }
+        pooledDelegates.forEach { it.close() }
+        pooledDelegates.clear()
+        lastInterpreter = null
+    }
+
+    /**
+     * 池中其他解释器的选项。GPU委托不能被多个解释器共用，
+     * 使用GPU时为每个解释器创建各自的委托；带有其他委托的自定义选项无法复制，返回null
+     */
+    private fun getExtraOptions(options: InterpreterApi.Options): InterpreterApi.Options? {
+        if (options.delegates.isEmpty()) {
+            return options
+        }
+        if (options !== this.options || !useGpu || gpuDelegate == null) {
+            return null
+        }
+        val delegate = GpuDelegate()
+        pooledDelegates.add(delegate)
+        return InterpreterApi.Options().apply {
+            useNNAPI = true
+            addDelegate(delegate)
+        }
+    }
+
     private fun getOptions(isGPU: Boolean): InterpreterApi.Options {
         val opts = InterpreterApi.Options().apply {
             useNNAPI = true
@@ -167,10 +267,11 @@ abstract class BaseModel {
 
     protected open fun initProcessors() {
         val inputShape = interpreter.getInputTensor(0).shape()
-        val outputShape = interpreter.getOutputTensor(0).shape()
         inputWidth = inputShape[1]
         inputHeight = inputShape[2]
-        outputBuffer = TensorBuffer.createFixedSize(outputShape, DataType.FLOAT32)
+        if (::imageProcessor.isInitialized) {
+            imageProcessor.release()
+        }
         imageProcessor = ImageProcessor.create()
             .size(inputWidth, inputHeight)
             .normalize()
@@ -182,9 +283,45 @@ abstract class BaseModel {
         return inputBuffer.buffer
     }
 
-    protected fun runInference(image: ByteBuffer): TensorBuffer {
-        interpreter.run(image, outputBuffer.buffer)
-        return outputBuffer
+    /**
+     * 从解释器池中取出一个空闲的解释器进行推理，池中没有空闲的解释器时等待
+     * @param output 用于保存输出的数组，为null时新建
+     */
+    protected fun runInference(image: ByteBuffer, output: FloatArray? = null): FloatArray {
+        val pool = interpreterPool
+        val pooled = acquireInterpreter(pool)
+        try {
+            val outputBuffer = pooled.output.buffer
+            image.rewind()
+            outputBuffer.rewind()
+            try {
+                // 所有模型共用推理并发限制
+                InferenceScheduler.run { pooled.interpreter.run(image, outputBuffer) }
+            } catch (e: InterruptedException) {
+                throw ScriptInterruptedException()
+            }
+            lastInterpreter = pooled.interpreter
+            val result = output ?: FloatArray(outputSize)
+            outputBuffer.rewind()
+            outputBuffer.asFloatBuffer().get(result, 0, outputSize)
+            return result
+        } finally {
+            pool.offer(pooled)
+        }
+    }
+
+    private fun acquireInterpreter(pool: ArrayBlockingQueue<PooledInterpreter>): PooledInterpreter {
+        var current = pool
+        while (true) {
+            check(!closed) { "模型已关闭" }
+            try {
+                current.poll(ACQUIRE_POLL_MILLIS, TimeUnit.MILLISECONDS)?.let { return it }
+            } catch (e: InterruptedException) {
+                throw ScriptInterruptedException()
+            }
+            // 模型被重新加载时换到新的池
+            current = interpreterPool
+        }
     }
 
     private fun hasMetadata(): Boolean = metadataExtractor.hasMetadata()
@@ -197,5 +334,7 @@ abstract class BaseModel {
 
     companion object {
         const val TAG = "BaseModel"
+        private const val MAX_INTERPRETERS = 8
+        private const val ACQUIRE_POLL_MILLIS = 100L
     }
 }
@@ -5,8 +5,60 @@ import android.graphics.Rect
 import android.graphics.RectF
 import com.stardust.autojs.core.image.ImageWrapper
 import org.autojs.autojs.core.yolo.BaseModel
+import com.stardust.autojs.runtime.exception.ScriptInterruptedException
+import org.mozilla.javascript.NativeObject
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.atomic.AtomicInteger
 
 class Detection : BaseModel() {
+
+    /**
+     * 一帧检测用到的缓冲区和各阶段的时间戳，在检测之间复用
+     */
+    internal class Frame(val input: ImageProcessor.Input, val output: FloatArray) {
+        var id = 0L
+        var results: Array<Result> = emptyArray()
+        var error: Throwable? = null
+        var submitNanos = 0L
+        var preprocessEndNanos = 0L
+        var inferenceStartNanos = 0L
+        var inferenceEndNanos = 0L
+        var decodeStartNanos = 0L
+        var decodeEndNanos = 0L
+
+        fun timings(): StageTimings {
+            val total = decodeEndNanos - submitNanos
+            val preprocess = preprocessEndNanos - submitNanos
+            val inference = inferenceEndNanos - inferenceStartNanos
+            val decode = decodeEndNanos - decodeStartNanos
+            return StageTimings(
+                preprocess / 1e6,
+                inference / 1e6,
+                decode / 1e6,
+                (total - preprocess - inference - decode).coerceAtLeast(0) / 1e6,
+                total / 1e6
+            )
+        }
+    }
+
+    // 解码配置和输出形状属于每个检测器
+    private val outputParser = Output()
+    private val framePool = ConcurrentLinkedQueue<Frame>()
+    private val pipelines = CopyOnWriteArrayList<DetectionPipeline>()
+    // 通过create创建的模型，随本检测器一起关闭
+    private val children = CopyOnWriteArrayList<BaseModel>()
+
+    /**
+     * 最后一次detect各阶段的耗时
+     */
+    @Volatile
+    var lastTimings: StageTimings = StageTimings.ZERO
+        private set
+
     fun drawBoxes(imageWrapper: ImageWrapper, results: Array<Result>): ImageWrapper {
         return ImageWrapper.ofBitmap(FileUtil.drawBoxes(imageWrapper.bitmap, results))
     }
@@ -23,20 +75,54 @@ class Detection : BaseModel() {
     fun setThresholds(conf: Float? = null, iou: Float? = null) {
         conf?.let {
             require(it in 0.0F..1.0F) { "置信度阈值必须在0到1之间" }
-            Output.conf = it
         }
         iou?.let {
             require(it in 0.0F..1.0F) { "IoU阈值必须在0到1之间" }
-            Output.iou = it
         }
+        outputParser.setThresholds(conf ?: outputParser.conf, iou ?: outputParser.iou)
     }
 
     /**
      * 重置检测阈值为默认值
      */
     fun resetThresholds() {
-        Output.conf = 0.25F
-        Output.iou = 0.7F
+        outputParser.setThresholds(Output.DEFAULT_CONF, Output.DEFAULT_IOU)
+    }
+
+    fun getConf(): Float = outputParser.conf
+
+    fun getIou(): Float = outputParser.iou
+
+    /**
+     * 创建并加载另一个检测模型，与本检测器的阈值、输出形状和解释器互不影响，可以同时运行。
+     * 创建的模型在本检测器关闭时(例如脚本结束时)一起关闭
+     * @param options 与init的参数相同
+     */
+    fun create(options: NativeObject): Detection {
+        val model = Detection()
+        try {
+            model.init(options)
+        } catch (e: Throwable) {
+            model.close()
+            throw e
+        }
+        children.add(model)
+        return model
+    }
+
+    /**
+     * 创建并加载一个分类模型，用法同[create]
+     */
+    fun createClassifier(options: NativeObject): classify {
+        val model = classify()
+        try {
+            model.init(options)
+        } catch (e: Throwable) {
+            model.close()
+            throw e
+        }
+        children.add(model)
+        return model
     }
 
     fun detect(imageWrapper: ImageWrapper, rect: Rect): Array<Result> {
@@ -70,18 +156,197 @@ class Detection : BaseModel() {
 
     }
 
+    /**
+     * 检测图片。多个线程可以同时调用，同时推理的线程数由解释器池的大小决定
+     */
     fun detect(bitmap: Bitmap): Array<Result> {
-        threadLock.lock()
+        val frame = acquireFrame()
         try {
-            val image = preprocessImage(bitmap)
-            val output = runInference(image)
-            val results = Output.parseOutput(output.floatArray, labels)
-            results.forEach { result ->
-                result.rect = imageProcessor.normToOrig(result.rect)
+            frame.submitNanos = System.nanoTime()
+            preprocess(frame, bitmap)
+            infer(frame)
+            decode(frame)
+            lastTimings = frame.timings()
+            return frame.results
+        } finally {
+            releaseFrame(frame)
+        }
+    }
+
+    @JvmOverloads
+    fun detectTiled(
+        imageWrapper: ImageWrapper,
+        overlap: Float = DEFAULT_TILE_OVERLAP,
+        includeFullImage: Boolean = true,
+        mergeThreshold: Float = DEFAULT_MERGE_THRESHOLD
+    ): Array<Result> {
+        return detectTiled(imageWrapper.bitmap, overlap, includeFullImage, mergeThreshold)
+    }
+
+    /**
+     * 切片检测，用于在大图中检测小目标。
+     *
+     * 把图片切成与模型输入一样大、相互重叠的切片，切片不缩小，小目标保持原来的像素大小。
+     * 各切片由多个线程通过解释器池并行检测，结果映射回原图坐标后，合并切片边界处重复或被截断的框。
+     * @param overlap 相邻切片的重叠比例，应不小于要检测的目标尺寸与切片尺寸之比
+     * @param includeFullImage 是否同时检测缩放后的整张图片，用于检测比切片大的目标
+     * @param mergeThreshold 合并重复框的阈值(交集占较小框面积的比例)
+     */
+    @JvmOverloads
+    fun detectTiled(
+        bitmap: Bitmap,
+        overlap: Float = DEFAULT_TILE_OVERLAP,
+        includeFullImage: Boolean = true,
+        mergeThreshold: Float = DEFAULT_MERGE_THRESHOLD
+    ): Array<Result> {
+        val processor = imageProcessor
+        val tiles = Tiling.layout(bitmap.width, bitmap.height, processor.modelWidth, processor.modelHeight, overlap)
+        val tileCount = tiles.size / 4
+        if (tileCount == 1) {
+            return detect(bitmap)
+        }
+        val jobCount = if (includeFullImage) tileCount + 1 else tileCount
+        val tileResults = arrayOfNulls<Array<Result>>(jobCount)
+        val source = processor.prepare(bitmap)
+        try {
+            val nextJob = AtomicInteger()
+            val worker = Runnable {
+                val frame = acquireFrame()
+                try {
+                    while (true) {
+                        val job = nextJob.getAndIncrement()
+                        if (job >= jobCount) {
+                            break
+                        }
+                        // 最后一个任务为整张图片
+                        val x = if (job < tileCount) tiles[job * 4] else 0
+                        val y = if (job < tileCount) tiles[job * 4 + 1] else 0
+                        val width = if (job < tileCount) tiles[job * 4 + 2] else bitmap.width
+                        val height = if (job < tileCount) tiles[job * 4 + 3] else bitmap.height
+                        frame.submitNanos = System.nanoTime()
+                        processor.process(source, x, y, width, height, frame.input)
+                        frame.preprocessEndNanos = System.nanoTime()
+                        infer(frame)
+                        decode(frame)
+                        frame.results.forEach { it.rect.offset(x.toFloat(), y.toFloat()) }
+                        tileResults[job] = frame.results
+                    }
+                } finally {
+                    releaseFrame(frame)
+                }
+            }
+            // 调用线程也参与检测，线程数比解释器多一个，使预处理和推理可以重叠
+            val helperCount = minOf(jobCount, getInterpreterCount() + 1) - 1
+            val helpers = ArrayList<Future<*>>(helperCount)
+            try {
+                repeat(helperCount) { helpers.add(tileExecutor.submit(worker)) }
+                worker.run()
+                helpers.forEach { it.get() }
+            } catch (e: InterruptedException) {
+                throw ScriptInterruptedException()
+            } catch (e: ExecutionException) {
+                throw e.cause ?: e
+            } finally {
+                helpers.forEach { it.cancel(true) }
             }
-            return results
         } finally {
-            threadLock.unlock()
+            source.release()
+        }
+        return mergeTileResults(tileResults, mergeThreshold)
+    }
+
+    private fun mergeTileResults(tileResults: Array<Array<Result>?>, threshold: Float): Array<Result> {
+        val all = tileResults.flatMap { it?.asList() ?: emptyList() }
+        val boxes = FloatArray(all.size * 4)
+        val scores = FloatArray(all.size)
+        val classes = IntArray(all.size)
+        all.forEachIndexed { i, result ->
+            boxes[i * 4] = result.rect.left
+            boxes[i * 4 + 1] = result.rect.top
+            boxes[i * 4 + 2] = result.rect.right
+            boxes[i * 4 + 3] = result.rect.bottom
+            scores[i] = result.cnf
+            classes[i] = result.id
+        }
+        val merged = Tiling.merge(boxes, scores, classes, all.size, threshold)
+        return Array(merged.count) { i ->
+            val cls = merged.classes[i]
+            Result.fromLTRB(
+                merged.boxes[i * 4], merged.boxes[i * 4 + 1], merged.boxes[i * 4 + 2], merged.boxes[i * 4 + 3],
+                merged.scores[i],
+                cls,
+                labels.getOrElse(cls) { "unknown" }
+            )
+        }
+    }
+
+    /**
+     * 创建检测流水线，连续检测多帧时预处理、推理和解码并行进行
+     * @param depth 同时在处理中的最大帧数
+     */
+    @JvmOverloads
+    fun pipeline(depth: Int = DetectionPipeline.DEFAULT_DEPTH): DetectionPipeline {
+        return DetectionPipeline(this, depth).also { pipelines.add(it) }
+    }
+
+    internal fun removePipeline(pipeline: DetectionPipeline) {
+        pipelines.remove(pipeline)
+    }
+
+    internal fun acquireFrame(): Frame {
+        val processor = imageProcessor
+        while (true) {
+            val frame = framePool.poll() ?: break
+            // 重新加载模型后尺寸可能不同
+            if (frame.input.width == processor.modelWidth && frame.input.height == processor.modelHeight
+                && frame.output.size == outputSize
+            ) {
+                return frame
+            }
+            frame.input.release()
+        }
+        return Frame(processor.newInput(), FloatArray(outputSize))
+    }
+
+    internal fun releaseFrame(frame: Frame) {
+        frame.results = emptyArray()
+        frame.error = null
+        if (framePool.size < MAX_POOLED_FRAMES) {
+            framePool.offer(frame)
+        } else {
+            frame.input.release()
+        }
+    }
+
+    internal fun preprocess(frame: Frame, bitmap: Bitmap) {
+        imageProcessor.process(bitmap, frame.input)
+        frame.preprocessEndNanos = System.nanoTime()
+    }
+
+    internal fun infer(frame: Frame) {
+        frame.inferenceStartNanos = System.nanoTime()
+        runInference(frame.input.buffer, frame.output)
+        frame.inferenceEndNanos = System.nanoTime()
+    }
+
+    internal fun decode(frame: Frame) {
+        frame.decodeStartNanos = System.nanoTime()
+        val results = outputParser.parseOutput(frame.output, labels)
+        results.forEach { result ->
+            result.rect = frame.input.normToOrig(result.rect)
+        }
+        frame.results = results
+        frame.decodeEndNanos = System.nanoTime()
+    }
+
+    override fun close() {
+        pipelines.forEach { it.close() }
+        children.forEach { it.close() }
+        children.clear()
+        super.close()
+        while (true) {
+            val frame = framePool.poll() ?: break
+            frame.input.release()
         }
     }
 
@@ -101,6 +366,17 @@ class Detection : BaseModel() {
     override fun initProcessors() {
         super.initProcessors()
         val outputShape = interpreter.getOutputTensor(0).shape()
-        Output.setShape(outputShape)
+        outputParser.setShape(outputShape)
+    }
+
+    companion object {
+        private const val MAX_POOLED_FRAMES = 8
+        const val DEFAULT_TILE_OVERLAP = 0.2F
+        const val DEFAULT_MERGE_THRESHOLD = 0.5F
+
+        // 切片检测的辅助线程，所有检测器共用，空闲时自动回收
+        private val tileExecutor = Executors.newCachedThreadPool { runnable ->
+            Thread(runnable, "Detection-tile").apply { isDaemon = true }
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,245 @@
+package com.tflite.yolo
+
+import android.graphics.Bitmap
+import android.util.Log
+import com.stardust.autojs.core.image.ImageWrapper
+import com.stardust.autojs.runtime.exception.ScriptInterruptedException
+import java.io.Closeable
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.Semaphore
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * 检测流水线，用于连续检测多帧(例如每次截图后检测)。
+ *
+ * 调用[submit]的线程负责预处理，推理和解码分别在两个后台线程中进行，
+ * 因此第N+1帧的预处理可以与第N帧的推理、第N-1帧的解码同时进行。
+ * 预处理完成后submit即返回，之后可以立即回收传入的图片。
+ * 结果按提交顺序通过[take]或[poll]取出，每帧结果附带各阶段的耗时。
+ */
+class DetectionPipeline internal constructor(
+    private val detection: Detection,
+    val depth: Int
+) : Closeable {
+
+    /**
+     * 一帧的检测结果，推理或解码失败时error不为null，results为空
+     */
+    class FrameResult internal constructor(
+        val id: Long,
+        val results: Array<Result>,
+        val error: Throwable?,
+        val timings: StageTimings
+    ) {
+        override fun toString(): String {
+            return "FrameResult(id=$id, results=${results.size}, error=$error, timings=$timings)"
+        }
+    }
+
+    // 限制同时在处理中的帧数，预处理比推理快时submit在这里等待
+    private val slots = Semaphore(depth)
+    private val inferenceQueue = LinkedBlockingQueue<Detection.Frame>()
+    private val decodeQueue = LinkedBlockingQueue<Detection.Frame>()
+    private val resultQueue = LinkedBlockingQueue<FrameResult>()
+    private val nextId = AtomicLong()
+    private val pending = AtomicInteger()
+
+    // 各阶段耗时的累计值(纳秒)，用于统计平均值
+    private val completedCount = AtomicLong()
+    private val preprocessNanos = AtomicLong()
+    private val inferenceNanos = AtomicLong()
+    private val decodeNanos = AtomicLong()
+    private val totalNanos = AtomicLong()
+    @Volatile
+    private var firstSubmitNanos = 0L
+    @Volatile
+    private var lastCompleteNanos = 0L
+    @Volatile
+    private var closed = false
+
+    private val inferenceThread = Thread({ runStage(inferenceQueue) { infer(it) } }, "DetectionPipeline-inference")
+    private val decodeThread = Thread({ runStage(decodeQueue) { decode(it) } }, "DetectionPipeline-decode")
+
+    init {
+        require(depth >= 1) { "depth必须大于0" }
+        inferenceThread.isDaemon = true
+        decodeThread.isDaemon = true
+        inferenceThread.start()
+        decodeThread.start()
+    }
+
+    /**
+     * 预处理图片并提交检测。处理中的帧数达到depth时等待
+     * @param image 图片(ImageWrapper或Bitmap)
+     * @return 帧的序号，与[FrameResult.id]对应
+     */
+    fun submit(image: Any): Long {
+        val bitmap = when (image) {
+            is Bitmap -> image
+            is ImageWrapper -> image.bitmap
+            else -> throw IllegalArgumentException("不支持的图像类型: ${image.javaClass}")
+        }
+        check(!closed) { "流水线已关闭" }
+        try {
+            slots.acquire()
+        } catch (e: InterruptedException) {
+            throw ScriptInterruptedException()
+        }
+        val frame: Detection.Frame
+        try {
+            frame = detection.acquireFrame()
+            frame.id = nextId.getAndIncrement()
+            frame.submitNanos = System.nanoTime()
+            if (firstSubmitNanos == 0L) {
+                firstSubmitNanos = frame.submitNanos
+            }
+            try {
+                detection.preprocess(frame, bitmap)
+            } catch (e: Throwable) {
+                detection.releaseFrame(frame)
+                throw e
+            }
+        } catch (e: Throwable) {
+            slots.release()
+            throw e
+        }
+        pending.incrementAndGet()
+        inferenceQueue.offer(frame)
+        return frame.id
+    }
+
+    /**
+     * 取出下一帧的结果，没有时等待
+     */
+    fun take(): FrameResult {
+        try {
+            return resultQueue.take().also { pending.decrementAndGet() }
+        } catch (e: InterruptedException) {
+            throw ScriptInterruptedException()
+        }
+    }
+
+    /**
+     * 取出下一帧的结果，超时返回null
+     */
+    @JvmOverloads
+    fun poll(timeoutMillis: Long = 0): FrameResult? {
+        try {
+            return resultQueue.poll(timeoutMillis, TimeUnit.MILLISECONDS)?.also { pending.decrementAndGet() }
+        } catch (e: InterruptedException) {
+            throw ScriptInterruptedException()
+        }
+    }
+
+    /**
+     * 已提交但还没有被取出结果的帧数
+     */
+    fun pending(): Int = pending.get()
+
+    fun getCompletedCount(): Long = completedCount.get()
+
+    /**
+     * 已完成的帧各阶段的平均耗时，wait为平均总耗时减去各阶段的平均耗时
+     */
+    fun getAverageTimings(): StageTimings {
+        val count = completedCount.get()
+        if (count == 0L) {
+            return StageTimings.ZERO
+        }
+        val preprocess = preprocessNanos.get() / 1e6 / count
+        val inference = inferenceNanos.get() / 1e6 / count
+        val decode = decodeNanos.get() / 1e6 / count
+        val total = totalNanos.get() / 1e6 / count
+        return StageTimings(
+            preprocess, inference, decode,
+            (total - preprocess - inference - decode).coerceAtLeast(0.0), total
+        )
+    }
+
+    /**
+     * 每秒完成的帧数，从第一次提交开始计算
+     */
+    fun getThroughput(): Double {
+        val count = completedCount.get()
+        val elapsed = lastCompleteNanos - firstSubmitNanos
+        if (count == 0L || elapsed <= 0) {
+            return 0.0
+        }
+        return count * 1e9 / elapsed
+    }
+
+    fun isClosed(): Boolean = closed
+
+    /**
+     * 停止后台线程，还没有完成的帧被丢弃
+     */
+    override fun close() {
+        if (closed) {
+            return
+        }
+        closed = true
+        inferenceThread.interrupt()
+        decodeThread.interrupt()
+        detection.removePipeline(this)
+    }
+
+    private inline fun runStage(queue: LinkedBlockingQueue<Detection.Frame>, stage: (Detection.Frame) -> Unit) {
+        while (!closed) {
+            val frame = try {
+                queue.take()
+            } catch (e: InterruptedException) {
+                break
+            }
+            stage(frame)
+        }
+        while (true) {
+            detection.releaseFrame(queue.poll() ?: break)
+        }
+    }
+
+    private fun infer(frame: Detection.Frame) {
+        try {
+            detection.infer(frame)
+        } catch (e: Throwable) {
+            Log.w(LOG_TAG, "inference failed", e)
+            frame.error = e
+            frame.inferenceEndNanos = System.nanoTime()
+        }
+        decodeQueue.offer(frame)
+    }
+
+    private fun decode(frame: Detection.Frame) {
+        if (frame.error == null) {
+            try {
+                detection.decode(frame)
+            } catch (e: Throwable) {
+                Log.w(LOG_TAG, "decode failed", e)
+                frame.error = e
+            }
+        }
+        if (frame.error != null) {
+            frame.decodeStartNanos = System.nanoTime()
+            frame.decodeEndNanos = frame.decodeStartNanos
+        }
+        val timings = frame.timings()
+        val result = FrameResult(frame.id, frame.results, frame.error, timings)
+        if (frame.error == null) {
+            preprocessNanos.addAndGet(frame.preprocessEndNanos - frame.submitNanos)
+            inferenceNanos.addAndGet(frame.inferenceEndNanos - frame.inferenceStartNanos)
+            decodeNanos.addAndGet(frame.decodeEndNanos - frame.decodeStartNanos)
+            totalNanos.addAndGet(frame.decodeEndNanos - frame.submitNanos)
+            lastCompleteNanos = frame.decodeEndNanos
+            completedCount.incrementAndGet()
+        }
+        detection.releaseFrame(frame)
+        slots.release()
+        resultQueue.offer(result)
+    }
+
+    companion object {
+        const val DEFAULT_DEPTH = 2
+        private const val LOG_TAG = "DetectionPipeline"
+    }
+}
@@ -38,20 +38,15 @@ class ImageProcessor private constructor() {
     private var stride = 32
 
     private val matPool = MatObjectPool()
-    private val bufferPool = BufferObjectPool()
 
-    private var _opencvBuffer: ByteBuffer = ByteBuffer.allocateDirect(0)
-    private var _opencvBitmap: Bitmap = createBitmap(1, 1)
+    // ofBitmap使用的输入
+    private var defaultInput: Input? = null
     private val _tensorImage = TensorImage(DataType.FLOAT32)
     private val _tfImageProcessor = TfImageProcessor.Builder()
         .add(NormalizeOp(normalizeMean, normalizeStd))
         .build()
     private var _tfImage: TensorImage = TensorImage(DataType.FLOAT32)
 
-    private var scale = 1f
-    private var padX = 0f
-    private var padY = 0f
-
     private val opencvAvailable = run {
         try {
             OpenCVLoader.initLocal()
@@ -62,17 +57,61 @@ class ImageProcessor private constructor() {
     }
 
     val buffer: ByteBuffer
-        get() = when (mode) {
-            Mode.TENSORFLOW -> _tfImage.buffer
-            Mode.OPENCV -> _opencvBuffer
-        }
+        get() = defaultInput().buffer
 
+    /**
+     * 最后一次ofBitmap的预处理结果图片，用于调试，只在读取时生成
+     */
     val bitmap: Bitmap
         get() = when (mode) {
             Mode.TENSORFLOW -> _tensorImage.bitmap
-            Mode.OPENCV -> _opencvBitmap
+            Mode.OPENCV -> toBitmap(defaultInput())
+        }
+
+    /**
+     * 一次预处理的结果：模型输入，以及把检测框还原到原图坐标所需的缩放比例和填充。
+     * 并发预处理时每个线程使用各自的实例，实例可以反复使用
+     */
+    class Input internal constructor(val width: Int, val height: Int) {
+        val buffer: ByteBuffer = ByteBuffer.allocateDirect(width * height * 3 * 4).order(ByteOrder.nativeOrder())
+        var scale = 1f
+            internal set
+        var padX = 0f
+            internal set
+        var padY = 0f
+            internal set
+        private var mat: Mat? = null
+
+        // 与buffer共享内存的Mat，预处理的结果直接写入buffer
+        internal fun asMat(): Mat {
+            return mat ?: Mat(height, width, CvType.CV_32FC3, buffer).also { mat = it }
+        }
+
+        fun normToOrig(normRect: RectF): RectF {
+            val absRect = RectF(
+                normRect.left * width,
+                normRect.top * height,
+                normRect.right * width,
+                normRect.bottom * height
+            )
+            return absToOrig(absRect)
+        }
+
+        fun absToOrig(absRect: RectF): RectF {
+            return RectF(
+                (absRect.left - padX).coerceAtLeast(0f) / scale,
+                (absRect.top - padY).coerceAtLeast(0f) / scale,
+                (absRect.right - padX).coerceAtMost(width.toFloat()) / scale,
+                (absRect.bottom - padY).coerceAtMost(height.toFloat()) / scale
+            )
         }
 
+        fun release() {
+            mat?.release()
+            mat = null
+        }
+    }
+
     companion object {
         private const val GRAY_FILL = 114
 
@@ -103,11 +142,103 @@ class ImageProcessor private constructor() {
     }
 
     fun ofBitmap(bitmap: Bitmap): ImageProcessor {
+        process(bitmap, defaultInput())
+        return this
+    }
+
+    fun newInput(): Input = Input(modelWidth, modelHeight)
+
+    /**
+     * 预处理图片并写入input，不修改处理器自身的状态，OPENCV模式下可以在多个线程中同时调用
+     */
+    fun process(bitmap: Bitmap, input: Input): Input {
+        require(input.width == modelWidth && input.height == modelHeight) {
+            "输入尺寸${input.width}x${input.height}与模型尺寸${modelWidth}x${modelHeight}不一致"
+        }
         when (mode) {
-            Mode.TENSORFLOW -> processTensorFlow(bitmap)
-            Mode.OPENCV -> processOpenCV(bitmap)
+            Mode.TENSORFLOW -> processTensorFlow(bitmap, input)
+            Mode.OPENCV -> processOpenCV(bitmap, input)
+        }
+        return input
+    }
+
+    /**
+     * 切片检测的原图，OPENCV模式下只转换一次，之后各个切片共用
+     */
+    inner class Source internal constructor(val bitmap: Bitmap) {
+        internal var mat: Mat? = null
+
+        fun release() {
+            mat?.release()
+            mat = null
+        }
+    }
+
+    fun prepare(bitmap: Bitmap): Source {
+        val source = Source(bitmap)
+        if (mode == Mode.OPENCV) {
+            val mat = Mat()
+            Utils.bitmapToMat(bitmap, mat)
+            Imgproc.cvtColor(mat, mat, Imgproc.COLOR_RGBA2RGB)
+            source.mat = mat
+        }
+        return source
+    }
+
+    /**
+     * 预处理原图中的一个区域，input中的缩放和填充相对于该区域。OPENCV模式下可以在多个线程中同时调用
+     */
+    fun process(source: Source, x: Int, y: Int, width: Int, height: Int, input: Input): Input {
+        require(input.width == modelWidth && input.height == modelHeight) {
+            "输入尺寸${input.width}x${input.height}与模型尺寸${modelWidth}x${modelHeight}不一致"
+        }
+        val mat = source.mat
+        if (mat == null) {
+            val region = Bitmap.createBitmap(source.bitmap, x, y, width, height)
+            try {
+                processTensorFlow(region, input)
+            } finally {
+                if (region !== source.bitmap) {
+                    region.recycle()
+                }
+            }
+            return input
+        }
+        val region = mat.submat(org.opencv.core.Rect(x, y, width, height))
+        try {
+            processRgbMat(region, input)
+        } finally {
+            region.release()
+        }
+        return input
+    }
+
+    /**
+     * 把预处理结果转换为图片，用于调试
+     */
+    fun toBitmap(input: Input): Bitmap {
+        if (mode == Mode.TENSORFLOW) {
+            val floats = input.buffer.duplicate().order(ByteOrder.nativeOrder()).asFloatBuffer()
+            val pixels = IntArray(input.width * input.height) {
+                val offset = it * 3
+                Color.rgb(
+                    (floats[offset] * 255).toInt().coerceIn(0, 255),
+                    (floats[offset + 1] * 255).toInt().coerceIn(0, 255),
+                    (floats[offset + 2] * 255).toInt().coerceIn(0, 255)
+                )
+            }
+            return Bitmap.createBitmap(pixels, input.width, input.height, Bitmap.Config.ARGB_8888)
+        }
+        val rgbMat = matPool.acquire()
+        try {
+            input.asMat().convertTo(rgbMat, CvType.CV_8UC3, 255.0)
+            Imgproc.cvtColor(rgbMat, rgbMat, Imgproc.COLOR_RGB2RGBA)
+            return createBitmap(rgbMat.cols(), rgbMat.rows(), Bitmap.Config.ARGB_8888).apply {
+                Utils.matToBitmap(rgbMat, this)
+            }
+        } finally {
+            matPool.release(rgbMat)
         }
-        return this
     }
 
     fun save(path: String) {
@@ -115,61 +246,51 @@ class ImageProcessor private constructor() {
     }
 
     fun normToOrig(normRect: RectF): RectF {
-        val absRect = RectF(
-            normRect.left  * modelWidth,
-            normRect.top  * modelHeight,
-            normRect.right  * modelWidth,
-            normRect.bottom  * modelHeight
-        )
-        return absToOrig(absRect)
+        return defaultInput().normToOrig(normRect)
     }
 
     fun absToOrig(absRect: RectF): RectF {
-        return RectF(
-            (absRect.left  - padX).coerceAtLeast(0f) / scale,
-            (absRect.top  - padY).coerceAtLeast(0f) / scale,
-            (absRect.right  - padX).coerceAtMost(modelWidth.toFloat())  / scale,
-            (absRect.bottom  - padY).coerceAtMost(modelHeight.toFloat())  / scale
-        )
+        return defaultInput().absToOrig(absRect)
     }
 
     fun release() {
         matPool.clear()
-        bufferPool.clear()
+        defaultInput?.release()
+        defaultInput = null
+    }
+
+    private fun defaultInput(): Input {
+        val input = defaultInput
+        if (input != null && input.width == modelWidth && input.height == modelHeight) {
+            return input
+        }
+        input?.release()
+        return newInput().also { defaultInput = it }
     }
 
-    private fun processOpenCV(bitmap: Bitmap) {
+    private fun processOpenCV(bitmap: Bitmap, input: Input) {
         val srcMat = matPool.acquire()
-        val paddedMat = matPool.acquire()
-        val normalizedMat = matPool.acquire()
         try {
             Utils.bitmapToMat(bitmap,  srcMat)
             Imgproc.cvtColor(srcMat,  srcMat, Imgproc.COLOR_RGBA2RGB)
+            processRgbMat(srcMat, input)
+        } finally {
+            matPool.release(srcMat)
+        }
+    }
 
+    private fun processRgbMat(srcMat: Mat, input: Input) {
+        val paddedMat = matPool.acquire()
+        try {
             val (r, newUnpaid) = calculateScaleRatio(srcMat)
-            scale = r.toFloat()
-
             val (usedPaddedMat, padding) = padImage(srcMat, newUnpaid, paddedMat)
-            padX = padding.first.toFloat()
-            padY = padding.second.toFloat()
-
-            usedPaddedMat.convertTo(normalizedMat,  CvType.CV_32FC3, 1.0 / 255.0)
-            _opencvBuffer = convertMatToModelInput(normalizedMat)
-
-            val tempMat = matPool.acquire()
-            try {
-                normalizedMat.convertTo(tempMat,  CvType.CV_8UC3, 255.0)
-                Imgproc.cvtColor(tempMat,  tempMat, Imgproc.COLOR_RGB2RGBA)
-                _opencvBitmap = createBitmap(tempMat.cols(),  tempMat.rows(),  Bitmap.Config.ARGB_8888).apply {
-                    Utils.matToBitmap(tempMat,  this)
-                }
-            } finally {
-                matPool.release(tempMat)
-            }
+            // 填充后的尺寸与模型输入一致，convertTo直接写入输入缓冲区，不再经过中间的float数组
+            usedPaddedMat.convertTo(input.asMat(), CvType.CV_32FC3, 1.0 / 255.0)
+            input.scale = r.toFloat()
+            input.padX = padding.first.toFloat()
+            input.padY = padding.second.toFloat()
         } finally {
-            matPool.release(srcMat)
             matPool.release(paddedMat)
-            matPool.release(normalizedMat)
         }
     }
 
@@ -276,13 +397,20 @@ class ImageProcessor private constructor() {
         return slices
     }
 
-    private fun processTensorFlow(bitmap: Bitmap) {
+    // TensorImage不是线程安全的，只能串行处理
+    @Synchronized
+    private fun processTensorFlow(bitmap: Bitmap, input: Input) {
         val (processedBitmap, resizeInfo) = resizeAndPadBitmap(bitmap, modelWidth, modelHeight)
-        scale = resizeInfo[0]
-        padX = resizeInfo[1]
-        padY = resizeInfo[2]
+        input.scale = resizeInfo[0]
+        input.padX = resizeInfo[1]
+        input.padY = resizeInfo[2]
         _tensorImage.load(processedBitmap)
         _tfImage = _tfImageProcessor.process(_tensorImage)
+        val source = _tfImage.buffer
+        source.rewind()
+        input.buffer.clear()
+        input.buffer.put(source)
+        input.buffer.rewind()
     }
 
     private fun calculateScaleRatio(srcMat: Mat): Pair<Double, Size> {
@@ -298,16 +426,6 @@ class ImageProcessor private constructor() {
         return ratio to newUnpaid
     }
 
-    private fun convertMatToModelInput(mat: Mat): ByteBuffer {
-        val floatArray = FloatArray(modelWidth * modelHeight * 3)
-        mat.get(0,  0, floatArray)
-        return bufferPool.acquire(modelWidth  * modelHeight * 3 * 4).apply {
-            order(ByteOrder.nativeOrder())
-            asFloatBuffer().put(floatArray)
-            rewind()
-        }
-    }
-
     private fun resizeAndPadBitmap(
         bitmap: Bitmap,
         targetWidth: Int,
@@ -364,23 +482,4 @@ class ImageProcessor private constructor() {
             pool.clear()
         }
     }
-
-    private class BufferObjectPool {
-        private val pool = ConcurrentLinkedQueue<ByteBuffer>()
-
-        fun acquire(size: Int): ByteBuffer {
-            return pool.poll()?.takeIf  { it.capacity()  >= size }?.also {
-                it.clear()
-            } ?: ByteBuffer.allocateDirect(size)
-        }
-
-        fun release(buffer: ByteBuffer) {
-            buffer.clear()
-            pool.offer(buffer)
-        }
-
-        fun clear() {
-            pool.clear()
-        }
-    }
 }
\ No newline at end of file
@@ -0,0 +1,79 @@
+package com.tflite.yolo
+
+/**
+ * 进程内所有模型共用的推理并发限制。
+ *
+ * TFLite的Java接口无法让多个解释器共用同一个线程池，每个解释器推理时都会使用自己的线程，
+ * 多个模型(例如粗检测模型和精细分类模型)同时推理时线程数会远超CPU核数，互相抢占反而更慢。
+ * 所有解释器的推理都要先在这里取得许可，同时进行的推理数不超过[getMaxConcurrency]。
+ */
+object InferenceScheduler {
+
+    private val lock = Object()
+    private var maxConcurrency = defaultConcurrency()
+    private var active = 0
+    private var waiting = 0
+    private var completed = 0L
+
+    /**
+     * 设置同时进行的推理数上限，立即生效
+     */
+    fun setMaxConcurrency(max: Int) {
+        require(max >= 1) { "推理并发数必须大于0" }
+        synchronized(lock) {
+            maxConcurrency = max
+            lock.notifyAll()
+        }
+    }
+
+    fun getMaxConcurrency(): Int = synchronized(lock) { maxConcurrency }
+
+    fun getActiveCount(): Int = synchronized(lock) { active }
+
+    fun getWaitingCount(): Int = synchronized(lock) { waiting }
+
+    fun getCompletedCount(): Long = synchronized(lock) { completed }
+
+    /**
+     * 取得许可后执行推理，没有许可时等待
+     */
+    @Throws(InterruptedException::class)
+    inline fun <T> run(block: () -> T): T {
+        acquire()
+        try {
+            return block()
+        } finally {
+            release()
+        }
+    }
+
+    @PublishedApi
+    @Throws(InterruptedException::class)
+    internal fun acquire() {
+        synchronized(lock) {
+            waiting++
+            try {
+                while (active >= maxConcurrency) {
+                    lock.wait()
+                }
+            } finally {
+                waiting--
+            }
+            active++
+        }
+    }
+
+    @PublishedApi
+    internal fun release() {
+        synchronized(lock) {
+            active--
+            completed++
+            lock.notify()
+        }
+    }
+
+    private fun defaultConcurrency(): Int {
+        // 每个推理本身也是多线程的，留出一半的核给其他推理和脚本线程
+        return (Runtime.getRuntime().availableProcessors() / 2).coerceAtLeast(1)
+    }
+}
@@ -1,13 +1,44 @@
 package com.tflite.yolo
 
-import android.graphics.RectF
 import android.util.Log
 
-object Output {
-    var conf = 0.25F // 默认置信度阈值
-    var iou = 0.7F // 默认IOU阈值
+/**
+ * YOLO模型输出的解码配置和形状，每个检测器各自持有一个实例，
+ * 同时运行的多个模型互不影响。阈值可以在检测过程中修改，解码时读取的是同一次设置的值
+ */
+class Output {
+
+    /**
+     * 解码阈值，整体替换以保证conf和iou来自同一次设置
+     */
+    private class Thresholds(val conf: Float, val iou: Float)
+
+    @Volatile
+    private var thresholds = Thresholds(DEFAULT_CONF, DEFAULT_IOU)
+
+    @Volatile
     var numDetections = 0 // 预测框数量（如 8400）
+        private set
+
+    @Volatile
     var numClasses = 0 // 类别数量（如 84 - 4 = 80）
+        private set
+
+    // 解码器复用内部缓冲区，每个线程使用各自的实例
+    private val decoder = object : ThreadLocal<YoloDecoder>() {
+        override fun initialValue() = YoloDecoder()
+    }
+
+    val conf: Float
+        get() = thresholds.conf
+
+    val iou: Float
+        get() = thresholds.iou
+
+    @Synchronized
+    fun setThresholds(conf: Float = this.conf, iou: Float = this.iou) {
+        thresholds = Thresholds(conf, iou)
+    }
 
     /**
      * 解析YOLO模型的输出
@@ -16,9 +47,11 @@ object Output {
      * @return 经过NMS处理后的检测结果数组
      */
     fun parseOutput(outputArray: FloatArray, labels: List<String>): Array<Result> {
-        return (if (numDetections == 300) yolo10(outputArray, labels) else yolo(
+        val thresholds = thresholds
+        return (if (numDetections == 300) yolo10(outputArray, labels, thresholds) else yolo(
             outputArray,
-            labels
+            labels,
+            thresholds
         )).toTypedArray()
     }
 
@@ -43,28 +76,11 @@ object Output {
      * @param labels 类别标签列表
      * @return 经过NMS处理后的检测结果数组
      */
-    private fun yolo10(outputArray: FloatArray, labels: List<String>): List<Result> {
-        val results = ArrayList<Result>()
-        val numDet = numDetections
-
-        var i = 0
-        while (i < numDet) {
-            val score = outputArray[i * 6 + 4]
-            if (score >= conf) {
-                results.add(
-                    Result.fromLTRB(
-                        outputArray[i * 6],     // left
-                        outputArray[i * 6 + 1], // top
-                        outputArray[i * 6 + 2], // right
-                        outputArray[i * 6 + 3], // bottom
-                        score,
-                        outputArray[i * 6 + 5].toInt(),
-                        labels.getOrElse(outputArray[i * 6 + 5].toInt()) { "unknown" }
-                    ))
-            }
-            i++
-        }
-        return applyNMS(results)
+    private fun yolo10(outputArray: FloatArray, labels: List<String>, thresholds: Thresholds): List<Result> {
+        return toResults(
+            decoder.get()!!.decodeV10(outputArray, numDetections, thresholds.conf, thresholds.iou),
+            labels
+        )
     }
 
     /**
@@ -73,95 +89,31 @@ object Output {
      * @param labels 类别标签列表
      * @return 经过NMS处理后的检测结果数组
      */
-    private fun yolo(outputArray: FloatArray, labels: List<String>): List<Result> {
-        val results = ArrayList<Result>()
-        val numDet = numDetections
-        val numCls = numClasses
-        val offsets = IntArray(numCls + 4) { i ->
-            when (i) {
-                0 -> 0
-                1 -> numDet
-                2 -> numDet * 2
-                3 -> numDet * 3
-                else -> numDet * (4 + i - 4)
-            }
-        }
-
-        var i = 0
-        while (i < numDet) {
-            val baseOffset = i + numDet * 4
-            var maxScore = 0f
-            var cls = 0
-            var j = 0
-            while (j < numCls) {
-                val score = outputArray[baseOffset + j * numDet]
-                if (score > maxScore) {
-                    maxScore = score
-                    cls = j
-                }
-                j++
-            }
-
-            if (maxScore >= conf) {
-                results.add(
-                    Result.fromXYWH(
-                        outputArray[i + offsets[0]],
-                        outputArray[i + offsets[1]],
-                        outputArray[i + offsets[2]],
-                        outputArray[i + offsets[3]],
-                        maxScore,
-                        cls,
-                        labels.getOrElse(cls) { "unknown" }
-                    ))
-            }
-            i++
-        }
-        return applyNMS(results)
+    private fun yolo(outputArray: FloatArray, labels: List<String>, thresholds: Thresholds): List<Result> {
+        return toResults(
+            decoder.get()!!.decode(outputArray, numClasses, numDetections, thresholds.conf, thresholds.iou),
+            labels
+        )
     }
 
-    /**
-     * 应用非极大值抑制（NMS）处理
-     * @param results 检测结果数组
-     * @return 经过NMS处理后的检测结果数组
-     */
-    private fun applyNMS(results: List<Result>): List<Result> {
-        if (results.isEmpty()) return results
-        val resultsList = results.toMutableList()
-        resultsList.sortWith { r1, r2 -> (r2.cnf - r1.cnf).toInt() }
-        val keep = BooleanArray(results.size) { true }
-
-        for (i in results.indices) {
-            if (!keep[i]) continue
-            val r1 = results[i]
-            for (j in i + 1 until results.size) {
-                if (!keep[j]) continue
-                val r2 = results[j]
-                if (r1.id == r2.id && calculateIoU(r1.rect, r2.rect) > iou) {
-                    keep[j] = false
-                }
-            }
+    private fun toResults(detections: YoloDecoder.Detections, labels: List<String>): List<Result> {
+        val results = ArrayList<Result>(detections.count)
+        val boxes = detections.boxes
+        for (i in 0 until detections.count) {
+            val cls = detections.classes[i]
+            results.add(
+                Result.fromLTRB(
+                    boxes[i * 4], boxes[i * 4 + 1], boxes[i * 4 + 2], boxes[i * 4 + 3],
+                    detections.scores[i],
+                    cls,
+                    labels.getOrElse(cls) { "unknown" }
+                ))
         }
-        return resultsList.filterIndexed { index, _ -> keep[index] }
+        return results
     }
 
-    /**
-     * 计算两个矩形的交并比（IoU）
-     * @param rect1 第一个矩形
-     * @param rect2 第二个矩形
-     * @return 两个矩形的交并比
-     */
-    private fun calculateIoU(rect1: RectF, rect2: RectF): Float {
-        val intersectLeft = maxOf(rect1.left, rect2.left)
-        val intersectTop = maxOf(rect1.top, rect2.top)
-        val intersectRight = minOf(rect1.right, rect2.right)
-        val intersectBottom = minOf(rect1.bottom, rect2.bottom)
-
-        if (intersectLeft >= intersectRight || intersectTop >= intersectBottom) return 0f
-
-        val intersectArea = (intersectRight - intersectLeft) * (intersectBottom - intersectTop)
-        val area1 = rect1.width() * rect1.height()
-        val area2 = rect2.width() * rect2.height()
-
-        return intersectArea / (area1 + area2 - intersectArea)
+    companion object {
+        const val DEFAULT_CONF = 0.25F // 默认置信度阈值
+        const val DEFAULT_IOU = 0.7F // 默认IOU阈值
     }
 }
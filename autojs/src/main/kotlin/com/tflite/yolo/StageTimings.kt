@@ -0,0 +1,28 @@
+package com.tflite.yolo
+
+/**
+ * 一次检测各阶段的耗时(毫秒)
+ * @param preprocess 缩放、填充和归一化
+ * @param inference 推理，包括等待空闲解释器的时间
+ * @param decode 解码和NMS
+ * @param wait 在流水线队列中等待的时间
+ * @param total 从提交到得到结果的总时间
+ */
+class StageTimings(
+    val preprocess: Double,
+    val inference: Double,
+    val decode: Double,
+    val wait: Double,
+    val total: Double
+) {
+    override fun toString(): String {
+        return "StageTimings(preprocess=%.2fms, inference=%.2fms, decode=%.2fms, wait=%.2fms, total=%.2fms)".format(
+            preprocess, inference, decode, wait, total
+        )
+    }
+
+    companion object {
+        @JvmField
+        val ZERO = StageTimings(0.0, 0.0, 0.0, 0.0, 0.0)
+    }
+}
@@ -0,0 +1,102 @@
+package com.tflite.yolo
+
+/**
+ * 切片检测的切片布局和结果合并，只使用基本类型数组，可以直接在JVM上测试。
+ */
+object Tiling {
+
+    /**
+     * 计算覆盖整张图片的相互重叠的切片，最后一行(列)切片与图片边缘对齐
+     * @param overlap 相邻切片的重叠比例，范围[0, 1)
+     * @return 每个切片为[x, y, width, height]
+     */
+    @JvmStatic
+    fun layout(width: Int, height: Int, tileWidth: Int, tileHeight: Int, overlap: Float): IntArray {
+        require(width > 0 && height > 0) { "图片尺寸必须大于0" }
+        require(tileWidth > 0 && tileHeight > 0) { "切片尺寸必须大于0" }
+        require(overlap >= 0f && overlap < 1f) { "重叠比例必须在[0, 1)之间" }
+        val xs = starts(width, tileWidth, overlap)
+        val ys = starts(height, tileHeight, overlap)
+        val w = minOf(tileWidth, width)
+        val h = minOf(tileHeight, height)
+        val tiles = IntArray(xs.size * ys.size * 4)
+        var offset = 0
+        for (y in ys) {
+            for (x in xs) {
+                tiles[offset++] = x
+                tiles[offset++] = y
+                tiles[offset++] = w
+                tiles[offset++] = h
+            }
+        }
+        return tiles
+    }
+
+    private fun starts(length: Int, tile: Int, overlap: Float): IntArray {
+        if (length <= tile) {
+            return intArrayOf(0)
+        }
+        val stride = (tile * (1 - overlap)).toInt().coerceAtLeast(1)
+        val count = (length - tile + stride - 1) / stride + 1
+        return IntArray(count) { minOf(it * stride, length - tile) }
+    }
+
+    /**
+     * 合并各切片的检测结果(贪心的非极大值合并)。
+     *
+     * 按置信度从高到低处理，同类别且交集占较小框面积的比例(IoS)超过阈值的框视为同一物体，
+     * 合并为两者的外接矩形，置信度取较高者。被切片边界截断的物体只有一部分在切片内，
+     * 它与完整的框的IoU很低，但IoS接近1，因此这里用IoS而不是IoU。
+     * @param boxes 每个框为[left, top, right, bottom]
+     */
+    @JvmStatic
+    fun merge(boxes: FloatArray, scores: FloatArray, classes: IntArray, count: Int, threshold: Float): YoloDecoder.Detections {
+        val order = (0 until count).sortedByDescending { scores[it] }
+        val consumed = BooleanArray(count)
+        val mergedBoxes = FloatArray(count * 4)
+        val mergedScores = FloatArray(count)
+        val mergedClasses = IntArray(count)
+        var kept = 0
+        for ((rank, i) in order.withIndex()) {
+            if (consumed[i]) {
+                continue
+            }
+            val offset = kept * 4
+            System.arraycopy(boxes, i * 4, mergedBoxes, offset, 4)
+            for (r in rank + 1 until count) {
+                val j = order[r]
+                if (consumed[j] || classes[j] != classes[i] || intersectionOverSmaller(boxes, i * 4, boxes, j * 4) <= threshold) {
+                    continue
+                }
+                consumed[j] = true
+                mergedBoxes[offset] = minOf(mergedBoxes[offset], boxes[j * 4])
+                mergedBoxes[offset + 1] = minOf(mergedBoxes[offset + 1], boxes[j * 4 + 1])
+                mergedBoxes[offset + 2] = maxOf(mergedBoxes[offset + 2], boxes[j * 4 + 2])
+                mergedBoxes[offset + 3] = maxOf(mergedBoxes[offset + 3], boxes[j * 4 + 3])
+            }
+            mergedScores[kept] = scores[i]
+            mergedClasses[kept] = classes[i]
+            kept++
+        }
+        return YoloDecoder.Detections(kept, mergedBoxes.copyOf(kept * 4), mergedScores.copyOf(kept), mergedClasses.copyOf(kept))
+    }
+
+    /**
+     * 两个框的交集面积与较小框面积之比
+     */
+    @JvmStatic
+    fun intersectionOverSmaller(a: FloatArray, aOffset: Int, b: FloatArray, bOffset: Int): Float {
+        val left = maxOf(a[aOffset], b[bOffset])
+        val top = maxOf(a[aOffset + 1], b[bOffset + 1])
+        val right = minOf(a[aOffset + 2], b[bOffset + 2])
+        val bottom = minOf(a[aOffset + 3], b[bOffset + 3])
+        if (left >= right || top >= bottom) {
+            return 0f
+        }
+        val intersection = (right - left) * (bottom - top)
+        val areaA = (a[aOffset + 2] - a[aOffset]) * (a[aOffset + 3] - a[aOffset + 1])
+        val areaB = (b[bOffset + 2] - b[bOffset]) * (b[bOffset + 3] - b[bOffset + 1])
+        val smaller = minOf(areaA, areaB)
+        return if (smaller <= 0f) 0f else intersection / smaller
+    }
+}
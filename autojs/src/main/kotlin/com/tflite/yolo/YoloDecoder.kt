@@ -0,0 +1,288 @@
+package com.tflite.yolo
+
+/**
+ * YOLO模型输出的解码器，只使用基本类型数组，不依赖Android，可以直接在JVM上测试。
+ *
+ * 解码分为两步：
+ * 1. 按类别逐行扫描输出(内存连续)，求出每个预测框的最大类别概率，再用一次遍历筛掉低于置信度阈值的预测框；
+ * 2. 按置信度从高到低做分类别的NMS，已保留的框按网格分桶，每个候选框只和所在网格中的同类别框计算IoU。
+ *
+ * 解码器会复用内部缓冲区，不是线程安全的，每个线程(或每个检测器)应使用各自的实例。
+ */
+class YoloDecoder {
+
+    /**
+     * 解码结果，第i个框为boxes[4i..4i+3](left, top, right, bottom)，按置信度从高到低排列
+     */
+    class Detections(
+        @JvmField val count: Int,
+        @JvmField val boxes: FloatArray,
+        @JvmField val scores: FloatArray,
+        @JvmField val classes: IntArray
+    )
+
+    private var mBestScores = FloatArray(0)
+    private var mBestClasses = IntArray(0)
+
+    // 通过置信度筛选的候选框
+    private var mCount = 0
+    private var mBoxes = FloatArray(0)
+    private var mScores = FloatArray(0)
+    private var mClasses = IntArray(0)
+    private var mSortKeys = LongArray(0)
+
+    // NMS的网格，每个格子是已保留框的链表
+    private val mCellHeads = IntArray(GRID_SIZE * GRID_SIZE)
+    private var mNodeNext = IntArray(0)
+    private var mNodeKept = IntArray(0)
+    private var mNodeCount = 0
+    private var mLargeKept = IntArray(0)
+    private var mLargeCount = 0
+    private var mKept = IntArray(0)
+    private var mLastVisited = IntArray(0)
+
+    /**
+     * 解码YOLOv8/v9/v11的输出，形状为[4 + numClasses, numDetections]，前4行为中心点坐标和宽高
+     */
+    @JvmOverloads
+    fun decode(
+        output: FloatArray,
+        numClasses: Int,
+        numDetections: Int,
+        conf: Float,
+        iou: Float,
+        maxDetections: Int = Int.MAX_VALUE
+    ): Detections {
+        require(output.size >= (4 + numClasses) * numDetections) {
+            "output size ${output.size} < (4 + $numClasses) * $numDetections"
+        }
+        ensureAnchorCapacity(numDetections)
+        val bestScores = mBestScores
+        val bestClasses = mBestClasses
+        bestScores.fill(Float.NEGATIVE_INFINITY, 0, numDetections)
+        for (cls in 0 until numClasses) {
+            val rowOffset = (4 + cls) * numDetections
+            for (i in 0 until numDetections) {
+                val score = output[rowOffset + i]
+                if (score > bestScores[i]) {
+                    bestScores[i] = score
+                    bestClasses[i] = cls
+                }
+            }
+        }
+        mCount = 0
+        for (i in 0 until numDetections) {
+            val score = bestScores[i]
+            if (!(score >= conf)) {
+                continue
+            }
+            val cx = output[i]
+            val cy = output[numDetections + i]
+            val halfW = output[2 * numDetections + i] / 2f
+            val halfH = output[3 * numDetections + i] / 2f
+            addCandidate(cx - halfW, cy - halfH, cx + halfW, cy + halfH, score, bestClasses[i])
+        }
+        return nms(iou, maxDetections)
+    }
+
+    /**
+     * 解码YOLOv10的输出，形状为[numDetections, 6]，每行为[left, top, right, bottom, score, class]
+     */
+    @JvmOverloads
+    fun decodeV10(
+        output: FloatArray,
+        numDetections: Int,
+        conf: Float,
+        iou: Float,
+        maxDetections: Int = Int.MAX_VALUE
+    ): Detections {
+        require(output.size >= numDetections * 6) { "output size ${output.size} < $numDetections * 6" }
+        ensureAnchorCapacity(numDetections)
+        mCount = 0
+        for (i in 0 until numDetections) {
+            val offset = i * 6
+            val score = output[offset + 4]
+            if (!(score >= conf)) {
+                continue
+            }
+            addCandidate(
+                output[offset], output[offset + 1], output[offset + 2], output[offset + 3],
+                score, output[offset + 5].toInt()
+            )
+        }
+        return nms(iou, maxDetections)
+    }
+
+    private fun addCandidate(left: Float, top: Float, right: Float, bottom: Float, score: Float, cls: Int) {
+        val index = mCount++
+        val boxOffset = index * 4
+        mBoxes[boxOffset] = left
+        mBoxes[boxOffset + 1] = top
+        mBoxes[boxOffset + 2] = right
+        mBoxes[boxOffset + 3] = bottom
+        mScores[index] = score
+        mClasses[index] = cls
+    }
+
+    private fun nms(iouThreshold: Float, maxDetections: Int): Detections {
+        val count = mCount
+        if (count == 0) {
+            return EMPTY
+        }
+        sortByScore(count)
+        // 网格覆盖所有候选框的范围
+        var minX = Float.POSITIVE_INFINITY
+        var minY = Float.POSITIVE_INFINITY
+        var maxX = Float.NEGATIVE_INFINITY
+        var maxY = Float.NEGATIVE_INFINITY
+        for (i in 0 until count) {
+            val offset = i * 4
+            minX = minOf(minX, mBoxes[offset])
+            minY = minOf(minY, mBoxes[offset + 1])
+            maxX = maxOf(maxX, mBoxes[offset + 2])
+            maxY = maxOf(maxY, mBoxes[offset + 3])
+        }
+        val cellWidth = maxOf((maxX - minX) / GRID_SIZE, MIN_CELL_SIZE)
+        val cellHeight = maxOf((maxY - minY) / GRID_SIZE, MIN_CELL_SIZE)
+        mCellHeads.fill(-1)
+        mNodeCount = 0
+        mLargeCount = 0
+        var keptCount = 0
+        val limit = minOf(maxDetections, count)
+        if (mLastVisited.size < count) {
+            mLastVisited = IntArray(count)
+        }
+        mLastVisited.fill(-1, 0, count)
+        for (rank in 0 until count) {
+            if (keptCount >= limit) {
+                break
+            }
+            val candidate = (mSortKeys[rank] and 0xffffffffL).toInt()
+            val offset = candidate * 4
+            val cx0 = cellOf(mBoxes[offset], minX, cellWidth)
+            val cy0 = cellOf(mBoxes[offset + 1], minY, cellHeight)
+            val cx1 = cellOf(mBoxes[offset + 2], minX, cellWidth)
+            val cy1 = cellOf(mBoxes[offset + 3], minY, cellHeight)
+            if (isSuppressed(candidate, rank, cx0, cy0, cx1, cy1, iouThreshold)) {
+                continue
+            }
+            mKept[keptCount++] = candidate
+            if ((cx1 - cx0 + 1) * (cy1 - cy0 + 1) > MAX_CELLS_PER_BOX) {
+                mLargeKept[mLargeCount++] = candidate
+            } else {
+                for (cy in cy0..cy1) {
+                    for (cx in cx0..cx1) {
+                        addNode(cy * GRID_SIZE + cx, candidate)
+                    }
+                }
+            }
+        }
+        val boxes = FloatArray(keptCount * 4)
+        val scores = FloatArray(keptCount)
+        val classes = IntArray(keptCount)
+        for (i in 0 until keptCount) {
+            val index = mKept[i]
+            System.arraycopy(mBoxes, index * 4, boxes, i * 4, 4)
+            scores[i] = mScores[index]
+            classes[i] = mClasses[index]
+        }
+        return Detections(keptCount, boxes, scores, classes)
+    }
+
+    private fun isSuppressed(candidate: Int, rank: Int, cx0: Int, cy0: Int, cx1: Int, cy1: Int, iouThreshold: Float): Boolean {
+        for (i in 0 until mLargeCount) {
+            if (suppresses(mLargeKept[i], candidate, iouThreshold)) {
+                return true
+            }
+        }
+        for (cy in cy0..cy1) {
+            for (cx in cx0..cx1) {
+                var node = mCellHeads[cy * GRID_SIZE + cx]
+                while (node >= 0) {
+                    val kept = mNodeKept[node]
+                    // 跨多个格子的框只比较一次
+                    if (mLastVisited[kept] != rank) {
+                        mLastVisited[kept] = rank
+                        if (suppresses(kept, candidate, iouThreshold)) {
+                            return true
+                        }
+                    }
+                    node = mNodeNext[node]
+                }
+            }
+        }
+        return false
+    }
+
+    private fun suppresses(kept: Int, candidate: Int, iouThreshold: Float): Boolean {
+        return mClasses[kept] == mClasses[candidate] && iou(mBoxes, kept * 4, mBoxes, candidate * 4) > iouThreshold
+    }
+
+    private fun addNode(cell: Int, kept: Int) {
+        if (mNodeCount == mNodeNext.size) {
+            val size = maxOf(64, mNodeCount * 2)
+            mNodeNext = mNodeNext.copyOf(size)
+            mNodeKept = mNodeKept.copyOf(size)
+        }
+        val node = mNodeCount++
+        mNodeKept[node] = kept
+        mNodeNext[node] = mCellHeads[cell]
+        mCellHeads[cell] = node
+    }
+
+    /**
+     * 按置信度从高到低排序，置信度相同时保持原来的顺序。
+     * 排序键的高32位是置信度(非负浮点数的位模式与数值同序)取反，低32位是下标
+     */
+    private fun sortByScore(count: Int) {
+        val keys = mSortKeys
+        for (i in 0 until count) {
+            val bits = java.lang.Float.floatToIntBits(maxOf(mScores[i], 0f))
+            keys[i] = ((Int.MAX_VALUE - bits).toLong() shl 32) or i.toLong()
+        }
+        keys.sort(0, count)
+    }
+
+    private fun ensureAnchorCapacity(numDetections: Int) {
+        if (mBestScores.size < numDetections) {
+            mBestScores = FloatArray(numDetections)
+            mBestClasses = IntArray(numDetections)
+            mBoxes = FloatArray(numDetections * 4)
+            mScores = FloatArray(numDetections)
+            mClasses = IntArray(numDetections)
+            mSortKeys = LongArray(numDetections)
+            mKept = IntArray(numDetections)
+            mLargeKept = IntArray(numDetections)
+        }
+    }
+
+    companion object {
+        private const val GRID_SIZE = 16
+        private const val MAX_CELLS_PER_BOX = 16
+        private const val MIN_CELL_SIZE = 1e-6f
+
+        private val EMPTY = Detections(0, FloatArray(0), FloatArray(0), IntArray(0))
+
+        private fun cellOf(value: Float, min: Float, cellSize: Float): Int {
+            return ((value - min) / cellSize).toInt().coerceIn(0, GRID_SIZE - 1)
+        }
+
+        /**
+         * 计算两个框(left, top, right, bottom)的交并比
+         */
+        @JvmStatic
+        fun iou(a: FloatArray, aOffset: Int, b: FloatArray, bOffset: Int): Float {
+            val left = maxOf(a[aOffset], b[bOffset])
+            val top = maxOf(a[aOffset + 1], b[bOffset + 1])
+            val right = minOf(a[aOffset + 2], b[bOffset + 2])
+            val bottom = minOf(a[aOffset + 3], b[bOffset + 3])
+            if (left >= right || top >= bottom) {
+                return 0f
+            }
+            val intersection = (right - left) * (bottom - top)
+            val areaA = (a[aOffset + 2] - a[aOffset]) * (a[aOffset + 3] - a[aOffset + 1])
+            val areaB = (b[bOffset + 2] - b[bOffset]) * (b[bOffset + 3] - b[bOffset + 1])
+            return intersection / (areaA + areaB - intersection)
+        }
+    }
+}
@@ -15,8 +15,8 @@ class classify : BaseModel() {
             }
 
             val tensorImage = preprocessImage(bitmap)
-            val outputBuffer = runInference(tensorImage)
-            val results = parseOutput(outputBuffer.floatArray, labels)
+            val output = runInference(tensorImage)
+            val results = parseOutput(output, labels)
 
             return results
         } finally {
@@ -0,0 +1,113 @@
+package com.google.ocr;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OcrCacheTest {
+
+    private static final int WIDTH = 200;
+    private static final int HEIGHT = 40;
+
+    @Test
+    public void checksumDetectsSinglePixelChange() {
+        int[] pixels = randomPixels(1);
+        long checksum = ImageHash.checksum(pixels, WIDTH, HEIGHT);
+        assertEquals(checksum, ImageHash.checksum(pixels.clone(), WIDTH, HEIGHT));
+        pixels[WIDTH * HEIGHT / 2] ^= 1;
+        assertNotEquals(checksum, ImageHash.checksum(pixels, WIDTH, HEIGHT));
+    }
+
+    @Test
+    public void differenceHashToleratesSmallChanges() {
+        int[] pixels = gradient();
+        long[] hash = ImageHash.differenceHash(pixels, WIDTH, HEIGHT);
+        assertEquals(ImageHash.HASH_BITS / 64, hash.length);
+        int[] brighter = pixels.clone();
+        for (int i = 0; i < brighter.length; i++) {
+            brighter[i] += 0x030303;
+        }
+        assertEquals(0, ImageHash.distance(hash, ImageHash.differenceHash(brighter, WIDTH, HEIGHT)));
+        long[] other = ImageHash.differenceHash(randomPixels(2), WIDTH, HEIGHT);
+        assertTrue(ImageHash.distance(hash, other) > 32);
+    }
+
+    @Test
+    public void returnsCachedValueWhenPixelsUnchanged() {
+        OcrCache<String> cache = new OcrCache<>(16, 1000, -1);
+        long[] hash = new long[4];
+        assertNull(cache.get("region", 1, hash, 0));
+        cache.put("region", 1, hash, "text", 0);
+        assertEquals("text", cache.get("region", 1, hash, 500));
+        // 像素变化后不使用缓存
+        assertNull(cache.get("region", 2, hash, 500));
+        // 过期
+        assertNull(cache.get("region", 1, hash, 1500));
+        assertNull(cache.get("other", 1, hash, 500));
+        assertEquals(1, cache.getUnchangedHitCount());
+        assertEquals(4, cache.getMissCount());
+    }
+
+    @Test
+    public void matchesPerceptualHashWithinDistance() {
+        OcrCache<String> cache = new OcrCache<>(16, 0, 1);
+        long[] a = {0b1111, 0, 0, 0};
+        long[] b = {0b0000, 0, 0, 0};
+        cache.put("region", 1, a, "a", 0);
+        cache.put("region", 2, b, "b", 0);
+        // 区域在两种状态之间切换时，回到之前的状态可以直接使用缓存
+        assertEquals("a", cache.get("region", 3, new long[]{0b0111, 0, 0, 0}, 100));
+        assertEquals("b", cache.get("region", 4, new long[]{0b1000, 0, 0, 0}, 100));
+        assertNull(cache.get("region", 5, new long[]{0b0011, 0, 0, 0}, 100));
+        assertEquals(2, cache.getPerceptualHitCount());
+    }
+
+    @Test
+    public void ignoresPerceptualHashByDefault() {
+        OcrCache<String> cache = new OcrCache<>();
+        long[] hash = {0b1111, 0, 0, 0};
+        cache.put("region", 1, hash, "a", 0);
+        // 像素变化后即使感知哈希完全相同也重新识别
+        assertNull(cache.get("region", 2, hash.clone(), 100));
+        assertEquals("a", cache.get("region", 1, hash, 100));
+        assertEquals(0, cache.getPerceptualHitCount());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        OcrCache<String> cache = new OcrCache<>(2, 0, 0);
+        cache.put("r1", 1, new long[]{1}, "1", 0);
+        cache.put("r2", 2, new long[]{2}, "2", 0);
+        assertEquals("1", cache.get("r1", 1, new long[]{1}, 0));
+        cache.put("r3", 3, new long[]{3}, "3", 0);
+        assertEquals(2, cache.size());
+        assertNull(cache.get("r2", 2, new long[]{2}, 0));
+        assertEquals("1", cache.get("r1", 1, new long[]{1}, 0));
+        assertEquals("3", cache.get("r3", 3, new long[]{3}, 0));
+    }
+
+    private static int[] randomPixels(long seed) {
+        Random random = new Random(seed);
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xff000000 | random.nextInt(0xffffff);
+        }
+        return pixels;
+    }
+
+    private static int[] gradient() {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int v = ((x * 7 + y * 13) % 200) + 20;
+                pixels[y * WIDTH + x] = 0xff000000 | (v << 16) | (v << 8) | v;
+            }
+        }
+        return pixels;
+    }
+}
@@ -0,0 +1,58 @@
+package com.stardust.autojs.core.console;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LogPipelineTest {
+
+    @Test
+    public void dropOldestDoesNotBlockWhileSinkIsWriting() throws Exception {
+        LogPipeline pipeline = new LogPipeline();
+        // 容量小于一批的大小，写入期间队列中的日志全部被取出
+        pipeline.setCapacity(8);
+        pipeline.setBackpressure(LogPipeline.BACKPRESSURE_DROP_OLDEST);
+        AtomicInteger written = new AtomicInteger();
+        pipeline.addSink(records -> {
+            sleep(20);
+            written.addAndGet(records.size());
+        });
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 2000; i++) {
+                pipeline.enqueue(android.util.Log.INFO, "log " + i);
+            }
+        });
+        writer.start();
+        writer.join(5000);
+        assertTrue(!writer.isAlive());
+        assertTrue(pipeline.flush(5000));
+        assertEquals(pipeline.getEnqueuedCount(), written.get() + pipeline.getDroppedCount());
+        assertEquals(pipeline.getWrittenCount(), written.get());
+    }
+
+    @Test
+    public void flushWaitsForRecordsBeingWritten() {
+        LogPipeline pipeline = new LogPipeline();
+        AtomicInteger written = new AtomicInteger();
+        pipeline.addSink(records -> {
+            sleep(100);
+            written.addAndGet(records.size());
+        });
+        for (int i = 0; i < 10; i++) {
+            pipeline.enqueue(android.util.Log.INFO, "log " + i);
+        }
+        assertTrue(pipeline.flush(5000));
+        assertEquals(10, written.get());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
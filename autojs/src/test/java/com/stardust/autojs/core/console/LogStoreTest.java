@@ -0,0 +1,36 @@
+package com.stardust.autojs.core.console;
+
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+
+public class LogStoreTest {
+
+    @Test
+    public void emptySpillFileDoesNotMoveFirstSeq() throws Exception {
+        LogStore store = new LogStore();
+        store.setMaxEntries(10);
+        for (int i = 0; i < 100; i++) {
+            store.append(android.util.Log.INFO, "log " + i);
+        }
+        assertEquals(90, store.getFirstSeq());
+        File file = File.createTempFile("log-store", ".log");
+        file.deleteOnExit();
+        store.setSpillFile(file, 64 * 1024);
+        try {
+            assertEquals(90, store.getFirstSeq());
+            store.append(android.util.Log.INFO, "log 100");
+            assertEquals(91, store.getFirstSeq());
+            for (int i = 101; i < 120; i++) {
+                store.append(android.util.Log.INFO, "log " + i);
+            }
+            // 开启溢出文件后的日志被淘汰出内存后仍可以从文件中读出
+            assertEquals(100, store.getFirstSeq());
+            assertEquals("log 100", store.get(100).content.toString());
+        } finally {
+            store.disableSpillFile();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.stardust.autojs.core.image;
+
+import org.junit.Test;
+
+import static com.stardust.autojs.core.image.MultiColorImages.POINTS;
+import static com.stardust.autojs.core.image.MultiColorImages.THRESHOLD;
+import static com.stardust.autojs.core.image.MultiColorImages.WHITE;
+
+/**
+ * 多点找色的基准测试(按JMH的方式先预热再计时)。
+ * <p>
+ * legacy为旧实现的算法，见{@link MultiColorImages#findLegacy}。
+ * <p>
+ * 默认的单元测试不运行基准测试，查找结果的正确性由{@link MultiColorFinderTest}检查。
+ * 需要时执行 ./gradlew :autojs:testDebugUnitTest -Pbenchmark --tests '*MultiColorFinderBenchmark'
+ */
+public class MultiColorFinderBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASURE_ITERATIONS = 10;
+
+    @Test
+    public void findMultiColors() {
+        int[] argb = MultiColorImages.generate(42, 700, 1500);
+        MultiColorFinder.PixelBuffer pixels = MultiColorImages.toPixelBuffer(argb);
+        MultiColorFinder finder = new MultiColorFinder(WHITE, THRESHOLD, POINTS);
+        MultiColorFinder sequentialFinder = new MultiColorFinder(WHITE, THRESHOLD, POINTS).setParallel(false);
+
+        report("legacy", measure(() -> MultiColorImages.findLegacy(argb, WHITE, THRESHOLD, POINTS)));
+        report("sequential", measure(() -> sequentialFinder.find(pixels, null)));
+        report("parallel", measure(() -> finder.find(pixels, null)));
+    }
+
+    private static long measure(Runnable runnable) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            runnable.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURE_ITERATIONS; i++) {
+            runnable.run();
+        }
+        return (System.nanoTime() - start) / MEASURE_ITERATIONS;
+    }
+
+    private static void report(String name, long nanosPerOp) {
+        System.out.println(String.format("MultiColorFinderBenchmark.%s: %d ns/op", name, nanosPerOp));
+    }
+}
@@ -0,0 +1,83 @@
+package com.stardust.autojs.core.image;
+
+import org.junit.Test;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static com.stardust.autojs.core.image.MultiColorImages.HEIGHT;
+import static com.stardust.autojs.core.image.MultiColorImages.POINTS;
+import static com.stardust.autojs.core.image.MultiColorImages.THRESHOLD;
+import static com.stardust.autojs.core.image.MultiColorImages.WHITE;
+import static com.stardust.autojs.core.image.MultiColorImages.WIDTH;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class MultiColorFinderTest {
+
+    @Test
+    public void findsSamePointAsLegacy() {
+        int[] argb = MultiColorImages.generate(42, 700, 1500);
+        MultiColorFinder.PixelBuffer pixels = MultiColorImages.toPixelBuffer(argb);
+        Point expected = MultiColorImages.findLegacy(argb, WHITE, THRESHOLD, POINTS);
+        assertNotNull(expected);
+        assertPointEquals(expected, new MultiColorFinder(WHITE, THRESHOLD, POINTS).find(pixels, null));
+        assertPointEquals(expected, new MultiColorFinder(WHITE, THRESHOLD, POINTS).setParallel(false).find(pixels, null));
+    }
+
+    @Test
+    public void parallelMatchesSequentialAcrossSeeds() {
+        for (int seed = 0; seed < 5; seed++) {
+            int[] argb = MultiColorImages.generate(seed, 100 + seed * 150, 200 + seed * 300);
+            MultiColorFinder.PixelBuffer pixels = MultiColorImages.toPixelBuffer(argb);
+            // 并行查找合并各段结果后，仍然返回按行优先顺序的第一个匹配点
+            Point expected = MultiColorImages.findLegacy(argb, WHITE, THRESHOLD, POINTS);
+            assertPointEquals(expected, new MultiColorFinder(WHITE, THRESHOLD, POINTS).find(pixels, null));
+            assertPointEquals(expected, new MultiColorFinder(WHITE, THRESHOLD, POINTS).setParallel(false).find(pixels, null));
+        }
+    }
+
+    @Test
+    public void findsInRegion() {
+        int[] argb = MultiColorImages.generate(42, 700, 1500);
+        MultiColorFinder.PixelBuffer pixels = MultiColorImages.toPixelBuffer(argb);
+        MultiColorFinder finder = new MultiColorFinder(WHITE, THRESHOLD, POINTS);
+        assertPointEquals(new Point(700, 1500), finder.find(pixels, new Rect(600, 1400, 200, 200)));
+        // 偏移点在区域外时仍然按整张图片检查
+        assertPointEquals(new Point(700, 1500), finder.find(pixels, new Rect(700, 1500, 1, 1)));
+    }
+
+    @Test
+    public void returnsNullWhenNotFound() {
+        int[] argb = new int[WIDTH * HEIGHT];
+        Arrays.fill(argb, WHITE);
+        MultiColorFinder finder = new MultiColorFinder(WHITE, THRESHOLD, POINTS);
+        assertNull(finder.find(MultiColorImages.toPixelBuffer(argb), null));
+        assertNull(finder.setParallel(false).find(MultiColorImages.toPixelBuffer(argb), null));
+    }
+
+    @Test
+    public void findAllWithLimit() {
+        int[] argb = new int[WIDTH * HEIGHT];
+        Arrays.fill(argb, WHITE);
+        MultiColorFinder finder = new MultiColorFinder(WHITE, 0, new int[]{1, 1, WHITE});
+        List<Point> points = finder.findAll(MultiColorImages.toPixelBuffer(argb), null, 5);
+        assertEquals(5, points.size());
+        for (int i = 0; i < points.size(); i++) {
+            assertPointEquals(new Point(i, 0), points.get(i));
+        }
+        // 偏移点超出图片的候选点不返回
+        points = finder.findAll(MultiColorImages.toPixelBuffer(argb), new Rect(WIDTH - 2, HEIGHT - 2, 2, 2), 10);
+        assertEquals(1, points.size());
+        assertPointEquals(new Point(WIDTH - 2, HEIGHT - 2), points.get(0));
+    }
+
+    private static void assertPointEquals(Point expected, Point actual) {
+        assertNotNull(actual);
+        assertEquals(expected.x, actual.x, 0);
+        assertEquals(expected.y, actual.y, 0);
+    }
+}
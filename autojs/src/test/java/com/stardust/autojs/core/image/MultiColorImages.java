@@ -0,0 +1,123 @@
+package com.stardust.autojs.core.image;
+
+import org.opencv.core.Point;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 测试用的多点找色图片生成器和旧实现算法的移植。
+ * <p>
+ * 旧实现依赖OpenCV的inRange和Bitmap.getPixel，无法在JVM上运行，
+ * 这里的{@link #findLegacy}按旧实现的算法移植：先求出所有与第一个颜色匹配的点，
+ * 再对每个点逐一读取像素并为每个偏移点新建检测器。
+ * {@link ColorDetector.DifferenceDetector}用到了android.graphics.Color，同样用{@link DifferenceDetector}代替。
+ */
+class MultiColorImages {
+
+    static final int WIDTH = 1080;
+    static final int HEIGHT = 1920;
+    static final int THRESHOLD = 4;
+
+    static final int WHITE = 0xffffffff;
+    static final int[] POINTS = {
+            10, 0, 0xffffffff,
+            0, 10, 0xffff0000,
+            10, 10, 0xff00ff00,
+            20, 5, 0xff0000ff
+    };
+
+    /**
+     * 生成大部分像素是白色的图片，并在(targetX, targetY)处放置{@link #POINTS}，
+     * 最坏情况下旧实现要检查的候选点最多
+     */
+    static int[] generate(long seed, int targetX, int targetY) {
+        int[] argb = new int[WIDTH * HEIGHT];
+        Random random = new Random(seed);
+        for (int i = 0; i < argb.length; i++) {
+            argb[i] = random.nextInt(10) == 0 ? 0xff000000 | random.nextInt(0xffffff) : WHITE;
+        }
+        for (int i = 0; i < POINTS.length; i += 3) {
+            argb[(targetY + POINTS[i + 1]) * WIDTH + targetX + POINTS[i]] = POINTS[i + 2];
+        }
+        argb[targetY * WIDTH + targetX] = WHITE;
+        return argb;
+    }
+
+    static MultiColorFinder.PixelBuffer toPixelBuffer(int[] argb) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(argb.length * 4);
+        for (int c : argb) {
+            // ARGB -> RGBA
+            buffer.putInt((c << 8) | (c >>> 24));
+        }
+        buffer.position(0);
+        return new MultiColorFinder.PixelBuffer(buffer, WIDTH, HEIGHT, WIDTH * 4, 4);
+    }
+
+    static Point findLegacy(int[] argb, int firstColor, int threshold, int[] points) {
+        List<Point> firstPoints = new ArrayList<>();
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int c = argb[y * WIDTH + x];
+                if (Math.abs(red(c) - red(firstColor)) <= threshold
+                        && Math.abs(green(c) - green(firstColor)) <= threshold
+                        && Math.abs(blue(c) - blue(firstColor)) <= threshold) {
+                    firstPoints.add(new Point(x, y));
+                }
+            }
+        }
+        for (Point firstPoint : firstPoints) {
+            if (checksPath(argb, firstPoint, threshold, points)) {
+                return firstPoint;
+            }
+        }
+        return null;
+    }
+
+    private static boolean checksPath(int[] argb, Point startingPoint, int threshold, int[] points) {
+        for (int i = 0; i < points.length; i += 3) {
+            int x = points[i] + (int) startingPoint.x;
+            int y = points[i + 1] + (int) startingPoint.y;
+            DifferenceDetector colorDetector = new DifferenceDetector(points[i + 2], threshold);
+            if (x >= WIDTH || y >= HEIGHT || x < 0 || y < 0) {
+                return false;
+            }
+            int c = argb[y * WIDTH + x];
+            if (!colorDetector.detectsColor(red(c), green(c), blue(c))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int red(int c) {
+        return (c >> 16) & 0xff;
+    }
+
+    private static int green(int c) {
+        return (c >> 8) & 0xff;
+    }
+
+    private static int blue(int c) {
+        return c & 0xff;
+    }
+
+    private static class DifferenceDetector {
+
+        private final int mR, mG, mB;
+        private final int mThreshold;
+
+        DifferenceDetector(int color, int threshold) {
+            mR = red(color);
+            mG = green(color);
+            mB = blue(color);
+            mThreshold = threshold * 3;
+        }
+
+        boolean detectsColor(int r, int g, int b) {
+            return Math.abs(r - mR) + Math.abs(g - mG) + Math.abs(b - mB) <= mThreshold;
+        }
+    }
+}
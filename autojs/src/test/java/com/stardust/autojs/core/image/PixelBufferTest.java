@@ -0,0 +1,38 @@
+package com.stardust.autojs.core.image;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+
+public class PixelBufferTest {
+
+    @Test
+    public void readsArgbFromLittleEndianRgbaBuffer() {
+        int width = 3, height = 2, pixelStride = 4, rowStride = width * pixelStride + 8;
+        int[] argb = {
+                0xff112233, 0x80445566, 0x00778899,
+                0xffaabbcc, 0x7fddeeff, 0xff000001
+        };
+        // 与Image.Plane一样使用本地字节序(小端)，按R、G、B、A的顺序存放字节，每行末尾有填充
+        ByteBuffer buffer = ByteBuffer.allocateDirect(rowStride * height).order(ByteOrder.LITTLE_ENDIAN);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int c = argb[y * width + x];
+                int offset = y * rowStride + x * pixelStride;
+                buffer.put(offset, (byte) (c >> 16));
+                buffer.put(offset + 1, (byte) (c >> 8));
+                buffer.put(offset + 2, (byte) c);
+                buffer.put(offset + 3, (byte) (c >>> 24));
+            }
+        }
+        MultiColorFinder.PixelBuffer pixels = new MultiColorFinder.PixelBuffer(buffer, width, height, rowStride, pixelStride);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                assertEquals(argb[y * width + x], pixels.getPixel(x, y));
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.stardust.autojs.engine.module;
+
+import org.junit.Test;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.commonjs.module.RequireBuilder;
+import org.mozilla.javascript.commonjs.module.provider.SoftCachingModuleScriptProvider;
+import org.mozilla.javascript.commonjs.module.provider.UrlModuleSourceProvider;
+
+import java.io.File;
+import java.net.URI;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 内置模块在每个引擎的作用域中各自执行，返回的数组和对象属于该引擎的标准对象
+ */
+public class BuiltInModulesTest {
+
+    private static final String MODULES_DIR = "src/main/assets/modules/";
+
+    private static final String RUNTIME = "function noop() {}" +
+            "global.__asGlobal__ = noop;" +
+            "var runtime = {automator: {press: noop, gesture: noop, gestureAsync: noop, swipe: noop}, accessibilityBridge: {" +
+            "getService: function() { return {getWindows: function() {" +
+            "var list = new java.util.ArrayList(); list.add('a'); list.add('b'); return list; }}; }" +
+            "}};";
+
+    @Test
+    public void windowsIsEngineArray() {
+        // 两个作用域模拟同时运行的两个引擎
+        for (int i = 0; i < 2; i++) {
+            assertEquals("true,2,removed", eval(RUNTIME +
+                    "require('__automator__.js')(runtime, global);" +
+                    "var windows = auto.windows;" +
+                    "[windows instanceof Array, windows.length, windows.remove()].join()"));
+        }
+    }
+
+    @Test
+    public void utilInspectsEngineObjects() {
+        assertEquals("{ a: 1 }", eval("util.inspect({a: 1})"));
+    }
+
+    @Test
+    public void lodashIsWritable() {
+        assertEquals("ok,1", eval("var _ = require('lodash.js');" +
+                "_.mixin({ok: function() { return 'ok'; }});" +
+                "_.custom = 1;" +
+                "[_.ok(), _.custom].join()"));
+    }
+
+    private static String eval(String source) {
+        Context context = Context.enter();
+        try {
+            context.setLanguageVersion(Context.VERSION_ES6);
+            context.setOptimizationLevel(-1);
+            ScriptableObject scope = context.initStandardObjects();
+            ScriptableObject.putProperty(scope, "global", scope);
+            URI modules = new File(MODULES_DIR).getAbsoluteFile().toURI();
+            new RequireBuilder()
+                    .setModuleScriptProvider(new SoftCachingModuleScriptProvider(
+                            new UrlModuleSourceProvider(Collections.singletonList(modules), null)))
+                    .setSandboxed(true)
+                    .createRequire(context, scope)
+                    .install(scope);
+            context.evaluateString(scope, "global.util = require('__util__.js');" +
+                    "Array.prototype.remove = function() { return 'removed'; };", "init", 1, null);
+            return Context.toString(context.evaluateString(scope, source, "test", 1, null));
+        } finally {
+            Context.exit();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.stardust.autojs.engine.module;
+
+import com.stardust.autojs.engine.CompiledScriptCache;
+
+import org.junit.Test;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ImporterTopLevel;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.commonjs.module.ModuleScript;
+import org.mozilla.javascript.commonjs.module.ModuleScriptProvider;
+import org.mozilla.javascript.commonjs.module.RequireBuilder;
+import org.mozilla.javascript.commonjs.module.provider.ModuleSource;
+import org.mozilla.javascript.commonjs.module.provider.ModuleSourceProvider;
+import org.mozilla.javascript.commonjs.module.provider.UrlModuleSourceProvider;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 每个引擎的作用域(标准对象和内置模块)占用的堆内存。
+ * <p>
+ * 内置模块编译好的脚本通过{@link CompiledScriptCache}在引擎间共享，每个引擎只持有自己的函数对象和模块状态；
+ * shared为当前的做法，separate为每个引擎各自编译一遍模块。
+ * 标准对象和模块导出的对象不能在引擎间共享，否则脚本拿到的数组、对象来自其他引擎的Array、Object，
+ * instanceof和对内置原型的扩展都会失效，见{@link BuiltInModulesTest}。
+ * <p>
+ * 默认的单元测试不运行基准测试，需要时执行 ./gradlew :autojs:testDebugUnitTest -Pbenchmark --tests '*EngineScopeHeapBenchmark'
+ */
+public class EngineScopeHeapBenchmark {
+
+    private static final String MODULES_DIR = "src/main/assets/modules/";
+    private static final String[] MODULES = {"__util__.js", "__json2__.js", "promise.js", "lodash.js"};
+    private static final int ENGINES = 20;
+
+    @Test
+    public void perEngineHeap() {
+        ModuleSourceProvider sources = new UrlModuleSourceProvider(Collections.singletonList(
+                new File(MODULES_DIR).getAbsoluteFile().toURI()), null);
+        report("separate", measure(() -> new CompilingModuleScriptProvider(sources, false)));
+        report("shared", measure(() -> new CompilingModuleScriptProvider(sources, true)));
+    }
+
+    private interface ProviderFactory {
+        ModuleScriptProvider create();
+    }
+
+    private static long measure(ProviderFactory factory) {
+        Context context = Context.enter();
+        try {
+            context.setLanguageVersion(Context.VERSION_ES6);
+            context.setOptimizationLevel(-1);
+            CompiledScriptCache.INSTANCE.clear();
+            // 预热，使共享的编译结果不计入每个引擎的占用
+            createScope(context, factory.create());
+            List<Scriptable> scopes = new ArrayList<>();
+            long before = usedMemory();
+            for (int i = 0; i < ENGINES; i++) {
+                scopes.add(createScope(context, factory.create()));
+            }
+            long after = usedMemory();
+            if (scopes.size() != ENGINES) {
+                throw new AssertionError();
+            }
+            return (after - before) / ENGINES;
+        } finally {
+            Context.exit();
+        }
+    }
+
+    private static Scriptable createScope(Context context, ModuleScriptProvider provider) {
+        ImporterTopLevel scope = new ImporterTopLevel();
+        scope.initStandardObjects(context, false);
+        scope.put("global", scope, scope);
+        context.evaluateString(scope, "function setTimeout() {}", "init", 1, null);
+        new RequireBuilder()
+                .setModuleScriptProvider(provider)
+                .setSandboxed(true)
+                .createRequire(context, scope)
+                .install(scope);
+        for (String module : MODULES) {
+            context.evaluateString(scope, "require('" + module + "')", "init", 1, null);
+        }
+        // 像一般脚本一样使用一些内置对象
+        context.evaluateString(scope, "[1, 2].map(function (x) { return x; }); 'a'.split(''); " +
+                "new Date(); Math.max(1, 2); Object.keys({});", "script", 1, null);
+        return scope;
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void report(String name, long bytesPerEngine) {
+        System.out.println(String.format("EngineScopeHeapBenchmark.%s: %d KB/engine", name, bytesPerEngine / 1024));
+    }
+
+    private static class CompilingModuleScriptProvider implements ModuleScriptProvider {
+
+        private final ModuleSourceProvider mSources;
+        private final boolean mShared;
+
+        CompilingModuleScriptProvider(ModuleSourceProvider sources, boolean shared) {
+            mSources = sources;
+            mShared = shared;
+        }
+
+        @Override
+        public ModuleScript getModuleScript(Context cx, String moduleId, URI uri, URI base, Scriptable paths) throws Exception {
+            ModuleSource source = uri == null
+                    ? mSources.loadSource(moduleId, paths, null)
+                    : mSources.loadSource(uri, base, null);
+            if (source == null) {
+                return null;
+            }
+            String sourceName = source.getUri().toString();
+            Script script = mShared
+                    ? CompiledScriptCache.INSTANCE.compileReader(cx, source.getReader(), sourceName, source.getSecurityDomain())
+                    : cx.compileReader(source.getReader(), sourceName, 1, source.getSecurityDomain());
+            return new ModuleScript(script, source.getUri(), source.getBase());
+        }
+    }
+}
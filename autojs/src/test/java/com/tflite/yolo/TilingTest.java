@@ -0,0 +1,63 @@
+package com.tflite.yolo;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class TilingTest {
+
+    @Test
+    public void layoutCoversImageWithOverlap() {
+        int[] tiles = Tiling.layout(1440, 2560, 640, 640, 0.2f);
+        // 步长512，最后一列(行)与边缘对齐
+        int[] xs = {0, 512, 800};
+        int[] ys = {0, 512, 1024, 1536, 1920};
+        assertEquals(xs.length * ys.length * 4, tiles.length);
+        int offset = 0;
+        for (int y : ys) {
+            for (int x : xs) {
+                assertArrayEquals(new int[]{x, y, 640, 640}, java.util.Arrays.copyOfRange(tiles, offset, offset + 4));
+                offset += 4;
+            }
+        }
+    }
+
+    @Test
+    public void layoutUsesSingleTileForSmallImage() {
+        assertArrayEquals(new int[]{0, 0, 500, 300}, Tiling.layout(500, 300, 640, 640, 0.2f));
+        assertArrayEquals(new int[]{0, 0, 640, 300, 360, 0, 640, 300}, Tiling.layout(1000, 300, 640, 640, 0f));
+    }
+
+    @Test
+    public void mergesBoxesCutBySeam() {
+        float[] boxes = {
+                // 完整的框和在切片边界处被截断的同一物体
+                500, 100, 560, 160,
+                500, 100, 540, 160,
+                // 同一位置的另一类别
+                500, 100, 560, 160,
+                // 远处的同类别物体
+                100, 100, 120, 120,
+        };
+        float[] scores = {0.6f, 0.9f, 0.7f, 0.5f};
+        int[] classes = {0, 0, 1, 0};
+        YoloDecoder.Detections merged = Tiling.merge(boxes, scores, classes, 4, 0.5f);
+        assertEquals(3, merged.count);
+        assertArrayEquals(new float[]{0.9f, 0.7f, 0.5f}, merged.scores, 0);
+        assertArrayEquals(new int[]{0, 1, 0}, merged.classes);
+        // 合并为外接矩形
+        assertArrayEquals(new float[]{500, 100, 560, 160}, java.util.Arrays.copyOfRange(merged.boxes, 0, 4), 0);
+    }
+
+    @Test
+    public void keepsBoxesBelowThreshold() {
+        float[] boxes = {
+                0, 0, 100, 100,
+                60, 0, 160, 100,
+        };
+        YoloDecoder.Detections merged = Tiling.merge(boxes, new float[]{0.8f, 0.7f}, new int[]{2, 2}, 2, 0.5f);
+        assertEquals(2, merged.count);
+        assertEquals(0.4f, Tiling.intersectionOverSmaller(boxes, 0, boxes, 4), 1e-6f);
+    }
+}
@@ -0,0 +1,54 @@
+package com.tflite.yolo;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * YOLO输出解码的基准测试(按JMH的方式先预热再计时)。
+ * <p>
+ * legacy为旧实现的算法：逐个预测框跨行读取类别概率，为每个候选框创建对象，再逐个与已保留的框比较做NMS。
+ * <p>
+ * 默认的单元测试不运行基准测试，解码结果的正确性由{@link YoloDecoderTest}检查。
+ * 需要时执行 ./gradlew :autojs:testDebugUnitTest -Pbenchmark --tests '*YoloDecoderBenchmark'
+ */
+public class YoloDecoderBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASURE_ITERATIONS = 20;
+    private static final float CONF = 0.25f;
+    private static final float IOU = 0.7f;
+
+    @Test
+    public void decode() {
+        // 物体较多时候选框多，NMS的开销更明显
+        float[] output = YoloOutputs.generate(42, 100, 80);
+        YoloDecoder decoder = new YoloDecoder();
+        List<YoloOutputs.Box> expected = YoloOutputs.decodeReference(output,
+                YoloOutputs.NUM_CLASSES, YoloOutputs.NUM_DETECTIONS, CONF, IOU);
+        assertEquals(expected.size(), decoder.decode(output,
+                YoloOutputs.NUM_CLASSES, YoloOutputs.NUM_DETECTIONS, CONF, IOU).count);
+
+        report("legacy", measure(() -> YoloOutputs.decodeReference(output,
+                YoloOutputs.NUM_CLASSES, YoloOutputs.NUM_DETECTIONS, CONF, IOU)));
+        report("decoder", measure(() -> decoder.decode(output,
+                YoloOutputs.NUM_CLASSES, YoloOutputs.NUM_DETECTIONS, CONF, IOU)));
+    }
+
+    private static long measure(Runnable runnable) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            runnable.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURE_ITERATIONS; i++) {
+            runnable.run();
+        }
+        return (System.nanoTime() - start) / MEASURE_ITERATIONS;
+    }
+
+    private static void report(String name, long nanosPerOp) {
+        System.out.println(String.format("YoloDecoderBenchmark.%s: %d ns/op", name, nanosPerOp));
+    }
+}
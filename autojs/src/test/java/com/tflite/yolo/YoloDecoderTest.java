@@ -0,0 +1,109 @@
+package com.tflite.yolo;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class YoloDecoderTest {
+
+    private static final int NUM_DETECTIONS = 6;
+    private static final int NUM_CLASSES = 3;
+
+    @Test
+    public void decodesCenterBoxesWithBestClass() {
+        float[] output = new float[(4 + NUM_CLASSES) * NUM_DETECTIONS];
+        setAnchor(output, 0, 50, 50, 20, 10, 0.1f, 0.8f, 0.3f);
+        YoloDecoder.Detections detections = new YoloDecoder().decode(output, NUM_CLASSES, NUM_DETECTIONS, 0.25f, 0.7f);
+        assertEquals(1, detections.count);
+        assertArrayEquals(new float[]{40, 45, 60, 55}, detections.boxes, 1e-6f);
+        assertEquals(0.8f, detections.scores[0], 0);
+        assertEquals(1, detections.classes[0]);
+    }
+
+    @Test
+    public void filtersByConfidence() {
+        float[] output = new float[(4 + NUM_CLASSES) * NUM_DETECTIONS];
+        setAnchor(output, 0, 50, 50, 20, 20, 0.24f, 0, 0);
+        setAnchor(output, 1, 150, 50, 20, 20, 0, 0.25f, 0);
+        setAnchor(output, 2, 250, 50, 20, 20, 0, 0, Float.NaN);
+        YoloDecoder.Detections detections = new YoloDecoder().decode(output, NUM_CLASSES, NUM_DETECTIONS, 0.25f, 0.7f);
+        assertEquals(1, detections.count);
+        assertEquals(1, detections.classes[0]);
+    }
+
+    @Test
+    public void sortsByScoreAndSuppressesOnlySameClass() {
+        float[] output = new float[(4 + NUM_CLASSES) * NUM_DETECTIONS];
+        // 分数相差不到1，旧实现的比较器会把它们都当作相等
+        setAnchor(output, 0, 50, 50, 20, 20, 0.5f, 0, 0);
+        setAnchor(output, 1, 51, 50, 20, 20, 0.9f, 0, 0);
+        setAnchor(output, 2, 50, 51, 20, 20, 0, 0.7f, 0);
+        setAnchor(output, 3, 300, 300, 20, 20, 0.6f, 0, 0);
+        YoloDecoder.Detections detections = new YoloDecoder().decode(output, NUM_CLASSES, NUM_DETECTIONS, 0.25f, 0.5f);
+        assertEquals(3, detections.count);
+        assertArrayEquals(new float[]{0.9f, 0.7f, 0.6f}, detections.scores, 0);
+        assertArrayEquals(new int[]{0, 1, 0}, detections.classes);
+        assertEquals(41f, detections.boxes[0], 1e-6f);
+    }
+
+    @Test
+    public void limitsMaxDetections() {
+        float[] output = new float[(4 + NUM_CLASSES) * NUM_DETECTIONS];
+        for (int i = 0; i < NUM_DETECTIONS; i++) {
+            setAnchor(output, i, i * 100, 0, 10, 10, 0.3f + i * 0.1f, 0, 0);
+        }
+        YoloDecoder.Detections detections = new YoloDecoder().decode(output, NUM_CLASSES, NUM_DETECTIONS, 0.25f, 0.5f, 2);
+        assertEquals(2, detections.count);
+        assertArrayEquals(new float[]{0.8f, 0.7f}, detections.scores, 1e-6f);
+    }
+
+    @Test
+    public void decodesV10() {
+        float[] output = {
+                10, 10, 30, 30, 0.9f, 2,
+                11, 11, 31, 31, 0.8f, 2,
+                10, 10, 30, 30, 0.1f, 1,
+        };
+        YoloDecoder.Detections detections = new YoloDecoder().decodeV10(output, 3, 0.25f, 0.7f);
+        assertEquals(1, detections.count);
+        assertArrayEquals(new float[]{10, 10, 30, 30}, detections.boxes, 0);
+        assertEquals(2, detections.classes[0]);
+    }
+
+    @Test
+    public void matchesReferenceImplementation() {
+        YoloDecoder decoder = new YoloDecoder();
+        for (long seed = 0; seed < 20; seed++) {
+            float[] output = YoloOutputs.generate(seed, 30, 60);
+            for (float iou : new float[]{0.3f, 0.5f, 0.7f}) {
+                List<YoloOutputs.Box> expected = YoloOutputs.decodeReference(output,
+                        YoloOutputs.NUM_CLASSES, YoloOutputs.NUM_DETECTIONS, 0.25f, iou);
+                YoloDecoder.Detections actual = decoder.decode(output,
+                        YoloOutputs.NUM_CLASSES, YoloOutputs.NUM_DETECTIONS, 0.25f, iou);
+                assertTrue(expected.size() > 0);
+                assertEquals("seed = " + seed + ", iou = " + iou, expected.size(), actual.count);
+                for (int i = 0; i < actual.count; i++) {
+                    YoloOutputs.Box box = expected.get(i);
+                    assertEquals(box.score, actual.scores[i], 0);
+                    assertEquals(box.cls, actual.classes[i]);
+                    assertArrayEquals(new float[]{box.left, box.top, box.right, box.bottom},
+                            java.util.Arrays.copyOfRange(actual.boxes, i * 4, i * 4 + 4), 0);
+                }
+            }
+        }
+    }
+
+    private static void setAnchor(float[] output, int i, float cx, float cy, float w, float h, float... scores) {
+        output[i] = cx;
+        output[NUM_DETECTIONS + i] = cy;
+        output[2 * NUM_DETECTIONS + i] = w;
+        output[3 * NUM_DETECTIONS + i] = h;
+        for (int c = 0; c < scores.length; c++) {
+            output[(4 + c) * NUM_DETECTIONS + i] = scores[c];
+        }
+    }
+}
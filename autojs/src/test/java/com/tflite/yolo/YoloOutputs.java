@@ -0,0 +1,120 @@
+package com.tflite.yolo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 测试用的YOLO输出生成器和按定义实现的参考解码(逐个预测框跨行扫描 + 与所有已保留框比较的NMS)。
+ */
+class YoloOutputs {
+
+    static final int NUM_CLASSES = 80;
+    static final int NUM_DETECTIONS = 8400;
+
+    /**
+     * 生成形状为[4 + numClasses, numDetections]的输出：大部分预测框是低置信度的背景，
+     * 另有若干个物体，每个物体被多个位置略有偏移的预测框命中
+     */
+    static float[] generate(long seed, int numObjects, int boxesPerObject) {
+        Random random = new Random(seed);
+        float[] output = new float[(4 + NUM_CLASSES) * NUM_DETECTIONS];
+        for (int i = 0; i < NUM_DETECTIONS; i++) {
+            setBox(output, i, random.nextFloat() * 640, random.nextFloat() * 640,
+                    10 + random.nextFloat() * 100, 10 + random.nextFloat() * 100);
+            for (int c = 0; c < NUM_CLASSES; c++) {
+                output[(4 + c) * NUM_DETECTIONS + i] = random.nextFloat() * 0.2f;
+            }
+        }
+        for (int o = 0; o < numObjects; o++) {
+            int cls = random.nextInt(NUM_CLASSES);
+            float cx = 50 + random.nextFloat() * 540, cy = 50 + random.nextFloat() * 540;
+            float w = 20 + random.nextFloat() * 150, h = 20 + random.nextFloat() * 150;
+            for (int k = 0; k < boxesPerObject; k++) {
+                int i = random.nextInt(NUM_DETECTIONS);
+                setBox(output, i, cx + random.nextFloat() * 8 - 4, cy + random.nextFloat() * 8 - 4,
+                        w * (0.9f + random.nextFloat() * 0.2f), h * (0.9f + random.nextFloat() * 0.2f));
+                output[(4 + cls) * NUM_DETECTIONS + i] = 0.3f + random.nextFloat() * 0.65f;
+            }
+        }
+        return output;
+    }
+
+    static void setBox(float[] output, int i, float cx, float cy, float w, float h) {
+        output[i] = cx;
+        output[NUM_DETECTIONS + i] = cy;
+        output[2 * NUM_DETECTIONS + i] = w;
+        output[3 * NUM_DETECTIONS + i] = h;
+    }
+
+    static class Box {
+        final float left, top, right, bottom, score;
+        final int cls, index;
+
+        Box(float left, float top, float right, float bottom, float score, int cls, int index) {
+            this.left = left;
+            this.top = top;
+            this.right = right;
+            this.bottom = bottom;
+            this.score = score;
+            this.cls = cls;
+            this.index = index;
+        }
+    }
+
+    static List<Box> decodeReference(float[] output, int numClasses, int numDetections, float conf, float iou) {
+        List<Box> candidates = new ArrayList<>();
+        for (int i = 0; i < numDetections; i++) {
+            float maxScore = Float.NEGATIVE_INFINITY;
+            int cls = 0;
+            for (int c = 0; c < numClasses; c++) {
+                float score = output[(4 + c) * numDetections + i];
+                if (score > maxScore) {
+                    maxScore = score;
+                    cls = c;
+                }
+            }
+            if (maxScore >= conf) {
+                float cx = output[i], cy = output[numDetections + i];
+                float halfW = output[2 * numDetections + i] / 2f, halfH = output[3 * numDetections + i] / 2f;
+                candidates.add(new Box(cx - halfW, cy - halfH, cx + halfW, cy + halfH, maxScore, cls, i));
+            }
+        }
+        return nmsReference(candidates, iou);
+    }
+
+    static List<Box> nmsReference(List<Box> candidates, float iou) {
+        List<Box> sorted = new ArrayList<>(candidates);
+        // 稳定排序，置信度相同时保持原来的顺序
+        Collections.sort(sorted, (b1, b2) -> Float.compare(b2.score, b1.score));
+        List<Box> kept = new ArrayList<>();
+        for (Box candidate : sorted) {
+            boolean suppressed = false;
+            for (Box k : kept) {
+                if (k.cls == candidate.cls && iou(k, candidate) > iou) {
+                    suppressed = true;
+                    break;
+                }
+            }
+            if (!suppressed) {
+                kept.add(candidate);
+            }
+        }
+        return kept;
+    }
+
+    static float iou(Box a, Box b) {
+        float left = Math.max(a.left, b.left);
+        float top = Math.max(a.top, b.top);
+        float right = Math.min(a.right, b.right);
+        float bottom = Math.min(a.bottom, b.bottom);
+        if (left >= right || top >= bottom) {
+            return 0f;
+        }
+        float intersection = (right - left) * (bottom - top);
+        float areaA = (a.right - a.left) * (a.bottom - a.top);
+        float areaB = (b.right - b.left) * (b.bottom - b.top);
+        return intersection / (areaA + areaB - intersection);
+    }
+}
@@ -429,8 +429,16 @@ open class UiGlobalSelector {
         throw IllegalArgumentException("unknown algorithm: $algorithm")
     }
 
+    /**
+     * 将筛选条件编译为按开销排序、正则已预编译的[SelectorPlan]。
+     * 结果会被缓存，在同一选择器上重复查找时复用，添加新的筛选条件后重新编译。
+     */
+    fun compile(): SelectorPlan {
+        return mSelector.compile()
+    }
+
     fun findAndReturnList(node: UiObject, max: Int = Int.MAX_VALUE): List<UiObject> {
-        return mSearchAlgorithm.search(node, mSelector, max)
+        return mSearchAlgorithm.search(node, compile(), max)
     }
 
 
@@ -8,7 +8,7 @@ import com.stardust.automator.UiObject
 
 object ClassNameFilters {
 
-    private val CLASS_NAME_GETTER = object : KeyGetter {
+    internal val CLASS_NAME_GETTER = object : KeyGetter {
         override fun getKey(nodeInfo: UiObject): String? {
             val charSequence = nodeInfo.className
             return charSequence?.toString()
@@ -8,7 +8,7 @@ import com.stardust.automator.UiObject
 
 object PackageNameFilter {
 
-    private val PACKAGE_NAME_GETTER = object : KeyGetter {
+    internal val PACKAGE_NAME_GETTER = object : KeyGetter {
         override fun getKey(nodeInfo: UiObject): String? {
             val charSequence = nodeInfo.packageName
             return charSequence?.toString()
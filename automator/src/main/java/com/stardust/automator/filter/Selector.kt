@@ -5,18 +5,28 @@ import java.util.*
 
 class Selector : Filter {
     private val mFilters = LinkedList<Filter>()
+    @Volatile
+    private var mPlan: SelectorPlan? = null
 
     override fun filter(node: UiObject): Boolean {
-        for (filter in mFilters) {
-            if (!filter.filter(node)) {
-                return false
-            }
-        }
-        return true
+        return compile().filter(node)
     }
 
     fun add(filter: Filter) {
         mFilters.add(filter)
+        mPlan = null
+    }
+
+    /**
+     * 将当前的筛选条件编译为不可变的[SelectorPlan]，编译结果会被缓存，直到再次调用[add]。
+     */
+    fun compile(): SelectorPlan {
+        var plan = mPlan
+        if (plan == null) {
+            plan = SelectorPlan(mFilters)
+            mPlan = plan
+        }
+        return plan
     }
 
     override fun toString(): String {
@@ -30,4 +40,4 @@ class Selector : Filter {
         return str.toString()
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,68 @@
+package com.stardust.automator.filter
+
+import com.stardust.automator.UiObject
+
+/**
+ * 由[Selector]编译得到的不可变筛选计划。
+ *
+ * 筛选条件按开销从低到高排序后保存在数组中：布尔属性、整型属性(如depth)、包名与类名相等判断最先执行，
+ * 其次是其他字符串判断，正则匹配(已预编译)与自定义筛选条件最后执行。同一开销等级内保持添加顺序。
+ */
+class SelectorPlan internal constructor(filters: Collection<Filter>) : Filter {
+
+    private val mFilters: Array<Filter> = filters.sortedBy { costOf(it) }.toTypedArray()
+
+    init {
+        for (filter in mFilters) {
+            if (filter is StringMatchesFilter) {
+                filter.compile()
+            }
+        }
+    }
+
+    val size: Int
+        get() = mFilters.size
+
+    override fun filter(node: UiObject): Boolean {
+        val filters = mFilters
+        for (i in filters.indices) {
+            if (!filters[i].filter(node)) {
+                return false
+            }
+        }
+        return true
+    }
+
+    override fun toString(): String {
+        return mFilters.joinToString(".")
+    }
+
+    companion object {
+
+        private const val COST_BOOLEAN = 0
+        private const val COST_INT = 1
+        private const val COST_NAME_EQUALS = 2
+        private const val COST_BOUNDS = 3
+        private const val COST_STRING = 4
+        private const val COST_REGEX = 5
+        private const val COST_UNKNOWN = 6
+
+        private fun costOf(filter: Filter): Int {
+            return when (filter) {
+                is BooleanFilter -> COST_BOOLEAN
+                is IntFilter -> COST_INT
+                is StringEqualsFilter -> {
+                    val getter = filter.keyGetter
+                    if (getter === PackageNameFilter.PACKAGE_NAME_GETTER || getter === ClassNameFilters.CLASS_NAME_GETTER)
+                        COST_NAME_EQUALS
+                    else
+                        COST_STRING
+                }
+                is BoundsFilter -> COST_BOUNDS
+                is StringContainsFilter, is StringStartsWithFilter, is StringEndsWithFilter -> COST_STRING
+                is StringMatchesFilter -> COST_REGEX
+                else -> COST_UNKNOWN
+            }
+        }
+    }
+}
@@ -8,6 +8,9 @@ import com.stardust.automator.UiObject
 
 class StringEqualsFilter(private val mValue: String, private val mKeyGetter: KeyGetter) : Filter {
 
+    internal val keyGetter: KeyGetter
+        get() = mKeyGetter
+
     override fun filter(node: UiObject): Boolean {
         val key = mKeyGetter.getKey(node)
         return if (key != null) {
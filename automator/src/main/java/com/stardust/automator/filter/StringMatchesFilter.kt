@@ -1,6 +1,7 @@
 package com.stardust.automator.filter
 
 import com.stardust.automator.UiObject
+import java.util.regex.Pattern
 
 /**
  * Created by Stardust on 2017/3/9.
@@ -8,9 +9,15 @@ import com.stardust.automator.UiObject
 
 class StringMatchesFilter internal constructor(private val mRegex: String, private val mKeyGetter: KeyGetter) : Filter {
 
+    private val mPattern: Pattern by lazy { Pattern.compile(mRegex) }
+
     override fun filter(node: UiObject): Boolean {
         val key = mKeyGetter.getKey(node)
-        return key != null && key.matches(mRegex.toRegex())
+        return key != null && mPattern.matcher(key).matches()
+    }
+
+    internal fun compile(): Pattern {
+        return mPattern
     }
 
     override fun toString(): String {
@@ -0,0 +1,29 @@
+package com.stardust.util;
+
+/**
+ * 64位FNV-1a哈希。速度快但不是加密哈希，只用于缓存的键、内容是否变化的判断等。
+ * 每一步把上一次的结果作为种子传入，可以连续累加多个值。
+ */
+public class FnvHash {
+
+    public static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+    public static final long PRIME = 0x100000001b3L;
+
+    public static long hash(long hash, long value) {
+        return (hash ^ value) * PRIME;
+    }
+
+    /**
+     * 按字符(UTF-16)累加
+     */
+    public static long hash(long hash, CharSequence s) {
+        for (int i = 0, length = s.length(); i < length; i++) {
+            hash = (hash ^ s.charAt(i)) * PRIME;
+        }
+        return hash;
+    }
+
+    public static long hash(CharSequence s) {
+        return hash(OFFSET_BASIS, s);
+    }
+}